@@ -7,5 +7,8 @@ public class Constants {
     public static final String UPDATE_ASSET = "UpdateAsset";
     public static final String TRANSFER_ASSET = "TransferAsset";
     public static final String INIT_LEDGER = "InitLedger";
+    public static final String GET_ALL_ORDERS_PROJECTED = "GetAllOrdersProjected";
+    public static final String GET_ORDERS_WITH_PAGINATION_PROJECTED = "GetOrdersWithPaginationProjected";
+    public static final String QUERY_ORDERS_PROJECTED = "QueryOrdersProjected";
 
 }
@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import org.hyperledger.fabric.client.Contract;
+import org.hyperledger.fabric.client.GatewayException;
+
+/**
+ * Evaluates the order queries of the basic chaincode with a projection of the order properties,
+ * such as "ID,status", and a gzip compressed response, which is decompressed here so that callers
+ * get the JSON as if it had been sent as it is. An empty projection returns every property.
+ */
+public final class OrderQueries {
+	private static final String GZIP = "gzip";
+
+	private OrderQueries() {
+	}
+
+	/**
+	 * All orders, at most 1000 of them, as a JSON array.
+	 */
+	public static String getAllOrders(final Contract contract, final String fields) throws GatewayException {
+		return decode(contract.evaluateTransaction(Constants.GET_ALL_ORDERS_PROJECTED, fields, GZIP));
+	}
+
+	/**
+	 * One page of orders, as a JSON object with the orders under "records" and the bookmark of the
+	 * next page under "bookmark".
+	 */
+	public static String getOrdersWithPagination(final Contract contract, final int pageSize, final String bookmark,
+			final String fields) throws GatewayException {
+		return decode(contract.evaluateTransaction(Constants.GET_ORDERS_WITH_PAGINATION_PROJECTED, Integer.toString(pageSize),
+				bookmark, fields, GZIP));
+	}
+
+	/**
+	 * One page of the orders matching a CouchDB selector, in the same form as a page of
+	 * {@link #getOrdersWithPagination}.
+	 */
+	public static String queryOrders(final Contract contract, final String selector, final int pageSize, final String bookmark,
+			final String fields) throws GatewayException {
+		return decode(contract.evaluateTransaction(Constants.QUERY_ORDERS_PROJECTED, selector, Integer.toString(pageSize),
+				bookmark, fields, GZIP));
+	}
+
+	/**
+	 * Decodes a query response. JSON, which starts with '[' or '{', is returned as it is; anything
+	 * else is a gzip compressed response in base64.
+	 */
+	public static String decode(final byte[] response) {
+		if (response.length == 0 || response[0] == '[' || response[0] == '{') {
+			return new String(response, StandardCharsets.UTF_8);
+		}
+		ByteArrayOutputStream json = new ByteArrayOutputStream(response.length * 8);
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(response)))) {
+			byte[] buffer = new byte[8192];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				json.write(buffer, 0, read);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Response is neither JSON nor gzip compressed JSON", e);
+		}
+		return new String(json.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -3,14 +3,15 @@
 # SPDX-License-Identifier: Apache-2.0
 #
 set -euo pipefail
-: ${CORE_PEER_TLS_ENABLED:="false"}
 : ${DEBUG:="false"}
+: ${JAVA_OPTS:=""}
+
+# TLS, the message size limit and the transaction executor are configured through the
+# environment, see OrderChaincodeServer
+SERVER_CLASS=org.hyperledger.fabric.samples.assettransfer.OrderChaincodeServer
 
 if [ "${DEBUG,,}" = "true" ]; then
-   java -agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=0.0.0.0:8000 -jar /chaincode.jar
-elif [ "${CORE_PEER_TLS_ENABLED,,}" = "true" ]; then
-   java -jar /chaincode.jar # todo
+   exec java -agentlib:jdwp=transport=dt_socket,server=y,suspend=n,address=0.0.0.0:8000 ${JAVA_OPTS} -cp /chaincode.jar ${SERVER_CLASS}
 else
-   java -jar /chaincode.jar
+   exec java ${JAVA_OPTS} -cp /chaincode.jar ${SERVER_CLASS}
 fi
-
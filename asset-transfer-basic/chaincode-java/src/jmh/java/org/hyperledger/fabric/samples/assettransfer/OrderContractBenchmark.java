@@ -0,0 +1,145 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates order transactions against an {@link InMemoryLedger} holding the given number of
+ * orders. Each invocation simulates one transaction from context creation to the flush in
+ * {@code afterTransaction}; nothing is committed, so the ledger is the same for every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OrderContractBenchmark {
+    private static final Instant TX_TIMESTAMP = Instant.parse("2022-05-01T10:00:00Z");
+    private static final String DELIVERY_DATE = "2022-07-06";
+    private static final byte[] INDEX_ENTRY_VALUE = {0};
+    private static final String BOOKMARK = "\"bookmark\":\"";
+
+    @Param({"1000", "100000", "1000000"})
+    public int orders;
+
+    private final OrderContract contract = new OrderContract();
+    private final InMemoryLedger ledger = new InMemoryLedger();
+    private final SplittableRandom random = new SplittableRandom(42);
+    private Order currentOrder;
+    private long transactions;
+
+    @Setup(Level.Trial)
+    public void loadOrders() {
+        for (int i = 0; i < orders; i++) {
+            Order order = new Order(orderId(i), "womanPurse", 300, DELIVERY_DATE, "ORDERED", 1000, 0, 0);
+            ledger.put(new CompositeKey(OrderContract.ORDER, order.getID()).toString(), OrderCodec.encodeHeader(order));
+            ledger.put(new CompositeKey(OrderContract.ORDER_PROGRESS, order.getID()).toString(), OrderCodec.encodeProgress(order));
+            ledger.put(new CompositeKey(OrderContract.ORDER_VIEW, order.getID()).toString(), OrderJsonWriter.toQueryView(order));
+            ledger.put(new CompositeKey(OrderContract.STATUS_INDEX, order.getStatus(), EpochDays.toKey(order.getDeliveryEpochDay()),
+                    order.getID()).toString(), INDEX_ENTRY_VALUE);
+            ledger.put(new CompositeKey(OrderContract.DUE_INDEX, EpochDays.toKey(order.getDeliveryEpochDay()), order.getID()).toString(),
+                    INDEX_ENTRY_VALUE);
+        }
+        ledger.put(new CompositeKey(OrderContract.STATUS_COUNT, "ORDERED").toString(),
+                Long.toString(orders).getBytes(StandardCharsets.UTF_8));
+        // updateStatus judges by the system clock, so its order is due relative to today
+        currentOrder = new Order("current", "womanPurse", 300, LocalDate.now(ZoneOffset.UTC).plusDays(60).toString(), "ORDERED",
+                1000, 0, 0);
+    }
+
+    private static String orderId(int i) {
+        return String.format("order%07d", i);
+    }
+
+    private String randomOrderId() {
+        return orderId(random.nextInt(orders));
+    }
+
+    private Context newContext() {
+        return contract.createContext(ledger.newTransaction("tx" + ++transactions, TX_TIMESTAMP));
+    }
+
+    @Benchmark
+    public Order createOrder() {
+        Context ctx = newContext();
+        Order order = contract.CreateOrder(ctx, "new" + transactions, "womanPurse", 300, DELIVERY_DATE, "ORDERED", 1000, 0, 0);
+        contract.afterTransaction(ctx, order);
+        return order;
+    }
+
+    @Benchmark
+    public Order readOrder() {
+        Context ctx = newContext();
+        Order order = contract.ReadOrder(ctx, randomOrderId());
+        contract.afterTransaction(ctx, order);
+        return order;
+    }
+
+    @Benchmark
+    public Order updateOrder() {
+        Context ctx = newContext();
+        Order order = contract.UpdateOrder(ctx, randomOrderId(), "womanPurse", 300, DELIVERY_DATE, "ORDERED", 1000, 0, 0);
+        contract.afterTransaction(ctx, order);
+        return order;
+    }
+
+    @Benchmark
+    public String updateStatus() throws InvalidOrderException {
+        return contract.updateStatus(currentOrder);
+    }
+
+    /**
+     * Reads every order page by page, in pages of {@link OrderContract#MAX_QUERY_RESULTS}, one
+     * transaction per page, as a client has to once the ledger holds more orders than
+     * {@link OrderContract#GetAllOrders} returns. At 1000 orders this is a single page holding
+     * what GetAllOrders returns, so the sizes compare the cost of a full scan as the ledger grows.
+     */
+    @Benchmark
+    public int scanAllOrders() {
+        int pages = 0;
+        String bookmark = "";
+        do {
+            Context ctx = newContext();
+            String page = contract.GetOrdersWithPagination(ctx, OrderContract.MAX_QUERY_RESULTS, bookmark);
+            contract.afterTransaction(ctx, page);
+            bookmark = bookmarkOf(page);
+            pages++;
+        } while (!bookmark.isEmpty());
+        return pages;
+    }
+
+    @Benchmark
+    public String getOrdersWithPagination() {
+        Context ctx = newContext();
+        return contract.GetOrdersWithPagination(ctx, 100, new CompositeKey(OrderContract.ORDER, randomOrderId()).toString());
+    }
+
+    /**
+     * The bookmark at the end of a page. Bookmarks are composite keys, whose only escaped
+     * characters are their U+0000 separators.
+     */
+    private static String bookmarkOf(String page) {
+        int start = page.lastIndexOf(BOOKMARK) + BOOKMARK.length();
+        return page.substring(start, page.length() - 2).replace("\\u0000", "\u0000");
+    }
+}
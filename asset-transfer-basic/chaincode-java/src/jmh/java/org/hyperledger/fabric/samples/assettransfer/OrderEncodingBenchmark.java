@@ -0,0 +1,65 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import com.owlike.genson.Genson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the encodings of an {@link Order}: Genson, which the contract used originally and still
+ * uses for its return values, the reflection-free JSON writer and parser, and the binary world
+ * state codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderEncodingBenchmark {
+    private final Genson genson = new Genson();
+    private final Order order = new Order("order0000001", "womanPurse", 300, "2022-07-06", "COLLECTING_MATERIALS", 1000, 120, 60);
+    private final String gensonJson = genson.serialize(order);
+    private final byte[] json = OrderJsonWriter.toJson(order);
+    private final byte[] header = OrderCodec.encodeHeader(order);
+    private final byte[] progress = OrderCodec.encodeProgress(order);
+
+    @Benchmark
+    public byte[] gensonEncode() {
+        return genson.serialize(order).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Order gensonDecode() {
+        return genson.deserialize(gensonJson, Order.class);
+    }
+
+    @Benchmark
+    public byte[] jsonWriterEncode() {
+        return OrderJsonWriter.toJson(order);
+    }
+
+    @Benchmark
+    public Order jsonParserDecode() {
+        return OrderJsonParser.parse(json);
+    }
+
+    @Benchmark
+    public byte[] binaryEncodeProgress() {
+        return OrderCodec.encodeProgress(order);
+    }
+
+    @Benchmark
+    public Order binaryDecode() {
+        return OrderCodec.decode(header, progress);
+    }
+}
@@ -0,0 +1,126 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads all of a ledger of 100k orders page by page through {@link OrderContract#GetOrdersWithPaginationProjected},
+ * with and without a projection to {@code ID,status} and gzip compression. Each invocation evaluates every page
+ * and decodes the responses the way the gateway application does, so its time is that of evaluating the whole
+ * ledger less the network. The {@code responseBytes} counter is the size of the responses as sent to the client,
+ * and {@code jsonBytes} that of the JSON they decode into, both per invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class OrderResponseBenchmark {
+    private static final int ORDERS = 100_000;
+    private static final Instant TX_TIMESTAMP = Instant.parse("2022-05-01T10:00:00Z");
+    private static final String BOOKMARK = "\"bookmark\":\"";
+
+    @Param({"", "ID,status"})
+    public String fields;
+
+    @Param({"", "gzip"})
+    public String encoding;
+
+    private final OrderContract contract = new OrderContract();
+    private final InMemoryLedger ledger = new InMemoryLedger();
+    private long transactions;
+
+    /**
+     * Sizes of the responses of an invocation, reported by JMH as averages per invocation.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ResponseSizes {
+        public long responseBytes;
+        public long jsonBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            responseBytes = 0;
+            jsonBytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void loadOrders() {
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order(String.format("order%07d", i), "womanPurse", 300, "2022-07-06", "COLLECTING_MATERIALS", 1000,
+                    i % 300, 0);
+            ledger.put(new CompositeKey(OrderContract.ORDER, order.getID()).toString(), OrderCodec.encodeHeader(order));
+            ledger.put(new CompositeKey(OrderContract.ORDER_PROGRESS, order.getID()).toString(), OrderCodec.encodeProgress(order));
+        }
+    }
+
+    @Benchmark
+    public int evaluateAllOrders(ResponseSizes sizes) throws IOException {
+        int pages = 0;
+        String bookmark = "";
+        do {
+            Context ctx = contract.createContext(ledger.newTransaction("tx" + ++transactions, TX_TIMESTAMP));
+            String response = contract.GetOrdersWithPaginationProjected(ctx, OrderContract.MAX_QUERY_RESULTS, bookmark, fields, encoding);
+            contract.afterTransaction(ctx, response);
+            String json = decode(response);
+            sizes.responseBytes += response.length();
+            sizes.jsonBytes += json.length();
+            bookmark = bookmarkOf(json);
+            pages++;
+        } while (!bookmark.isEmpty());
+        return pages;
+    }
+
+    /**
+     * Decodes a response as the gateway application does: JSON is taken as it is, anything else
+     * is a gzip compressed response in base64.
+     */
+    private static String decode(String response) throws IOException {
+        if (response.startsWith("{") || response.startsWith("[")) {
+            return response;
+        }
+        ByteArrayOutputStream json = new ByteArrayOutputStream(response.length() * 8);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(response)))) {
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                json.write(buffer, 0, read);
+            }
+        }
+        return new String(json.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The bookmark at the end of a page. Bookmarks are composite keys, whose only escaped
+     * characters are their U+0000 separators.
+     */
+    private static String bookmarkOf(String page) {
+        int start = page.lastIndexOf(BOOKMARK) + BOOKMARK.length();
+        return page.substring(start, page.length() - 2).replace("\\u0000", "\u0000");
+    }
+}
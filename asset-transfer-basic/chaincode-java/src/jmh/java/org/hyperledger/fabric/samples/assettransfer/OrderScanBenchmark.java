@@ -0,0 +1,79 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes and writes 100k stored orders the way an order scan does, reported per record, so that
+ * {@code gc.alloc.rate.norm} is the allocation per order scanned. Comparing equal orders and
+ * hashing them is measured per record too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderScanBenchmark {
+    private static final int ORDERS = 100_000;
+
+    private final byte[][] headers = new byte[ORDERS][];
+    private final byte[][] progress = new byte[ORDERS][];
+    private final Order[] orders = new Order[ORDERS];
+    private final Order[] copies = new Order[ORDERS];
+
+    @Setup
+    public void encodeOrders() {
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = new Order(String.format("order%07d", i), "womanPurse", 300, "2022-07-06", "COLLECTING_MATERIALS", 1000,
+                    i % 300, 0);
+            headers[i] = OrderCodec.encodeHeader(order);
+            progress[i] = OrderCodec.encodeProgress(order);
+            orders[i] = order;
+            copies[i] = OrderCodec.decode(headers[i], progress[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public int decode() {
+        int quantity = 0;
+        for (int i = 0; i < ORDERS; i++) {
+            quantity += OrderCodec.decode(headers[i], progress[i]).getQuantity();
+        }
+        return quantity;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public int decodeAndWrite() {
+        OrderJsonWriter writer = new OrderJsonWriter().startArray();
+        for (int i = 0; i < ORDERS; i++) {
+            writer.writeRecord(headers[i], progress[i]);
+        }
+        return writer.endArray().getRecordCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS)
+    public int equalsAndHashCode() {
+        int hash = 0;
+        for (int i = 0; i < ORDERS; i++) {
+            if (orders[i].equals(copies[i])) {
+                hash += copies[i].hashCode();
+            }
+        }
+        return hash;
+    }
+}
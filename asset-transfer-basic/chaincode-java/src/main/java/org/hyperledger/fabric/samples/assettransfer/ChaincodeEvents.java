@@ -0,0 +1,78 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the order contract, for a recording of the chaincode process to
+ * show where the time of a slow transaction went. The stub call and serialization events of a
+ * transaction happen within its transaction event, on the same thread. While no recording is
+ * running, the stub is not wrapped and no event is created.
+ */
+final class ChaincodeEvents {
+    static final String CATEGORY = "Chaincode";
+
+    private static final EventType TRANSACTION = EventType.getEventType(TransactionEvent.class);
+
+    private ChaincodeEvents() {
+    }
+
+    /**
+     * Whether a recording is running with the chaincode events enabled.
+     */
+    static boolean isRecording() {
+        return TRANSACTION.isEnabled();
+    }
+
+    @Name("org.hyperledger.fabric.samples.Transaction")
+    @Label("Chaincode Transaction")
+    @Description("A transaction of the order contract, from the creation of its context to the end of afterTransaction, "
+            + "or to the exception of a transaction that failed, whose outcome then names the error.")
+    @Category(CATEGORY)
+    static final class TransactionEvent extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Transaction ID")
+        String txId;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("org.hyperledger.fabric.samples.StubCall")
+    @Label("Chaincode Stub Call")
+    @Description("A world state call that reached the peer. Range and rich queries are recorded up to their first page of results.")
+    @Category(CATEGORY)
+    static final class StubCallEvent extends Event {
+        @Label("Call")
+        String call;
+
+        @Label("Key")
+        String key;
+
+        @Label("Value Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("org.hyperledger.fabric.samples.Serialization")
+    @Label("Chaincode Serialization")
+    @Description("An encoding or decoding of orders: encode and decode of their binary ledger records, writeJson of a "
+            + "query result or query view, parseJson of a request or rich query result, and compress of a compressed response.")
+    @Category(CATEGORY)
+    static final class SerializationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Size")
+        @Description("Size of the binary records or JSON read or written.")
+        @DataAmount
+        long bytes;
+    }
+}
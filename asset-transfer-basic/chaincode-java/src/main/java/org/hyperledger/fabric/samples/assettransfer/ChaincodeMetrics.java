@@ -0,0 +1,323 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import com.sun.net.httpserver.HttpServer;
+import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the transactions executed by this chaincode process, served in the Prometheus text
+ * format on {@code /metrics} of the port set in {@code CHAINCODE_METRICS_PORT}. Without that
+ * variable nothing is measured, and the stub is not wrapped at all.
+ * <ul>
+ *     <li>{@code chaincode_transaction_duration_seconds}, per transaction function and outcome,
+ *     {@code success} or {@code failure}</li>
+ *     <li>{@code chaincode_transaction_failures_total}, per transaction function and error: the
+ *     payload of a {@code ChaincodeException}, which for the order contract is one of its error
+ *     codes, or the simple class name of any other exception</li>
+ *     <li>{@code chaincode_stub_calls_total}, per world state call, and
+ *     {@code chaincode_stub_read_bytes_total} and {@code chaincode_stub_written_bytes_total}</li>
+ *     <li>{@code chaincode_records_scanned}, records returned by range and rich queries, per
+ *     transaction function</li>
+ *     <li>{@code chaincode_serialization_duration_seconds}, time spent encoding and decoding orders,
+ *     per transaction function</li>
+ *     <li>{@code chaincode_executor_active_tasks} and {@code chaincode_executor_queued_tasks} of the
+ *     shim's transaction executor, when started by {@link OrderChaincodeServer}</li>
+ * </ul>
+ * Transactions are observed when they complete. The shim only calls back for transactions that
+ * succeed, so the contract reports those that fail itself, when their transaction function throws.
+ * The function label is one of the transactions of {@link OrderContract}, or {@code unknown} for
+ * any other name a client invokes, so that clients cannot add series of their own.
+ */
+final class ChaincodeMetrics {
+    static final String PORT = "CHAINCODE_METRICS_PORT";
+    static final String UNKNOWN_FUNCTION = "unknown";
+
+    private static final double[] DURATION_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5};
+    private static final double[] SERIALIZATION_BUCKETS = {0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005,
+            0.01, 0.025, 0.05};
+    private static final double[] RECORD_BUCKETS = {1, 10, 100, 1000, 10000, 100000};
+    private static final Set<String> FUNCTIONS = transactionNames(OrderContract.class);
+
+    private static boolean sharedResolved;
+    private static ChaincodeMetrics shared;
+
+    /**
+     * Calls to the world state as they reach the peer, after the {@link StateCache}.
+     */
+    enum StubCall {
+        GET_STATE,
+        PUT_STATE,
+        DEL_STATE,
+        RANGE,
+        QUERY,
+        HISTORY;
+
+        final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final ConcurrentMap<String, Histogram> transactionSeconds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> failedTransactionSeconds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> serializationSeconds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Histogram> recordsScanned = new ConcurrentHashMap<>();
+    private final LongAdder[] stubCalls = new LongAdder[StubCall.values().length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private volatile TaskMetricsCollector executor;
+
+    ChaincodeMetrics() {
+        for (int i = 0; i < stubCalls.length; i++) {
+            stubCalls[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * The metrics of this process, serving them on first use, or null if
+     * {@code CHAINCODE_METRICS_PORT} is not set.
+     */
+    static synchronized ChaincodeMetrics fromEnvironment() {
+        if (!sharedResolved) {
+            String port = System.getenv(PORT);
+            if (port != null && !port.isEmpty()) {
+                shared = new ChaincodeMetrics();
+                shared.serve(Integer.parseInt(port.trim()));
+            }
+            sharedResolved = true;
+        }
+        return shared;
+    }
+
+    HttpServer serve(int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot serve metrics on port " + port, e);
+        }
+    }
+
+    /**
+     * The names clients invoke the transactions of a contract by.
+     */
+    static Set<String> transactionNames(Class<?> contract) {
+        Set<String> names = new HashSet<>();
+        for (Method method : contract.getMethods()) {
+            Transaction transaction = method.getAnnotation(Transaction.class);
+            if (transaction != null) {
+                names.add(transaction.name().isEmpty() ? method.getName() : transaction.name());
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Starts measuring a transaction. The function is the one the client invoked, without the
+     * contract name, or {@link #UNKNOWN_FUNCTION} if the contract has no such transaction.
+     */
+    TransactionMetrics startTransaction(String function) {
+        String name = function == null ? "" : function.substring(function.indexOf(':') + 1);
+        return new TransactionMetrics(FUNCTIONS.contains(name) ? name : UNKNOWN_FUNCTION, System.nanoTime());
+    }
+
+    void finishTransaction(TransactionMetrics transaction) {
+        observe(transaction, transactionSeconds);
+    }
+
+    /**
+     * Observes a transaction whose function threw, counting it under the error it failed with.
+     */
+    void failTransaction(TransactionMetrics transaction, String error) {
+        observe(transaction, failedTransactionSeconds);
+        String labels = "function=\"" + escape(transaction.function) + "\",error=\"" + escape(error) + "\"";
+        failures.computeIfAbsent(labels, l -> new LongAdder()).increment();
+    }
+
+    private void observe(TransactionMetrics transaction, ConcurrentMap<String, Histogram> durations) {
+        String function = transaction.function;
+        histogram(durations, function, DURATION_BUCKETS).observe((System.nanoTime() - transaction.startNanos) / 1e9);
+        histogram(serializationSeconds, function, SERIALIZATION_BUCKETS).observe(transaction.serializationNanos / 1e9);
+        if (transaction.scans > 0) {
+            histogram(recordsScanned, function, RECORD_BUCKETS).observe(transaction.recordsScanned);
+        }
+    }
+
+    void setExecutor(TaskMetricsCollector executor) {
+        this.executor = executor;
+    }
+
+    void countCall(StubCall call) {
+        stubCalls[call.ordinal()].increment();
+    }
+
+    void countRead(byte[] value) {
+        if (value != null) {
+            bytesRead.add(value.length);
+        }
+    }
+
+    void countWritten(byte[] value) {
+        if (value != null) {
+            bytesWritten.add(value.length);
+        }
+    }
+
+    private static Histogram histogram(ConcurrentMap<String, Histogram> histograms, String function, double[] buckets) {
+        Histogram histogram = histograms.get(function);
+        return histogram != null ? histogram : histograms.computeIfAbsent(function, f -> new Histogram(buckets));
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format.
+     */
+    String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        writeHelp(out, "chaincode_transaction_duration_seconds",
+                "Time from the start of a transaction to the end of afterTransaction, or to the failure of its function.", "histogram");
+        writeHistograms(out, "chaincode_transaction_duration_seconds", ",outcome=\"success\"", transactionSeconds);
+        writeHistograms(out, "chaincode_transaction_duration_seconds", ",outcome=\"failure\"", failedTransactionSeconds);
+        writeHelp(out, "chaincode_transaction_failures_total", "Transactions whose function threw, per error.", "counter");
+        for (Map.Entry<String, LongAdder> failure : failures.entrySet()) {
+            out.append("chaincode_transaction_failures_total{").append(failure.getKey()).append("} ").append(failure.getValue().sum())
+                    .append('\n');
+        }
+        writeHelp(out, "chaincode_stub_calls_total", "World state calls that reached the peer.", "counter");
+        for (StubCall call : StubCall.values()) {
+            out.append("chaincode_stub_calls_total{call=\"").append(call.label).append("\"} ").append(stubCalls[call.ordinal()].sum()).append('\n');
+        }
+        writeCounter(out, "chaincode_stub_read_bytes_total", "Bytes of values read from the world state.", bytesRead);
+        writeCounter(out, "chaincode_stub_written_bytes_total", "Bytes of values written to the world state.", bytesWritten);
+        writeHelp(out, "chaincode_records_scanned", "Records returned by range and rich queries in one transaction.", "histogram");
+        writeHistograms(out, "chaincode_records_scanned", "", recordsScanned);
+        writeHelp(out, "chaincode_serialization_duration_seconds", "Time spent encoding and decoding orders in one transaction.",
+                "histogram");
+        writeHistograms(out, "chaincode_serialization_duration_seconds", "", serializationSeconds);
+        TaskMetricsCollector executor = this.executor;
+        if (executor != null) {
+            writeGauge(out, "chaincode_executor_active_tasks", "Transactions being executed.", executor.getActiveCount());
+            writeGauge(out, "chaincode_executor_queued_tasks", "Transactions waiting for an executor thread.", executor.getCurrentQueueCount());
+        }
+        return out.toString();
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, LongAdder counter) {
+        writeHelp(out, name, help, "counter");
+        out.append(name).append(' ').append(counter.sum()).append('\n');
+    }
+
+    private static void writeGauge(StringBuilder out, String name, String help, int value) {
+        writeHelp(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeHelp(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * @param labels labels that follow the function label of every series, each with a leading comma
+     */
+    private static void writeHistograms(StringBuilder out, String name, String labels, Map<String, Histogram> histograms) {
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            entry.getValue().writeTo(out, name, "function=\"" + escape(entry.getKey()) + '"' + labels);
+        }
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * What one transaction has done so far. Only the thread executing the transaction updates it.
+     */
+    static final class TransactionMetrics {
+        private final String function;
+        private final long startNanos;
+        private long serializationNanos;
+        private long recordsScanned;
+        private int scans;
+
+        private TransactionMetrics(String function, long startNanos) {
+            this.function = function;
+            this.startNanos = startNanos;
+        }
+
+        void addSerializationNanos(long nanos) {
+            serializationNanos += nanos;
+        }
+
+        void countScan() {
+            scans++;
+        }
+
+        void countRecordScanned() {
+            recordsScanned++;
+        }
+    }
+
+    private static final class Histogram {
+        private final double[] buckets;
+        private final String[] bucketLabels;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(double[] buckets) {
+            this.buckets = buckets;
+            this.bucketLabels = new String[buckets.length + 1];
+            this.counts = new LongAdder[buckets.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketLabels[i] = BigDecimal.valueOf(buckets[i]).stripTrailingZeros().toPlainString();
+            }
+            bucketLabels[buckets.length] = "+Inf";
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            int bucket = 0;
+            while (bucket < buckets.length && value > buckets[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+            sum.add(value);
+        }
+
+        void writeTo(StringBuilder out, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i].sum();
+                out.append(name).append("_bucket{").append(labels).append(",le=\"").append(bucketLabels[i]).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum{").append(labels).append("} ").append(sum.sum()).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+        }
+    }
+}
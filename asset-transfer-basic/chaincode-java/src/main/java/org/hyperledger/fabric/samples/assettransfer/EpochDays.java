@@ -0,0 +1,113 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Conversions between {@code yyyy-MM-dd} dates and epoch days, the form in which orders keep
+ * their delivery date so that date rules and the due index work on plain integers.
+ */
+final class EpochDays {
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private EpochDays() {
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd} date into days since 1970-01-01.
+     *
+     * @throws IllegalArgumentException if the date is missing, malformed or does not exist
+     */
+    static int parse(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            throw new IllegalArgumentException(String.format("Invalid date %s, expected yyyy-MM-dd", date));
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        try {
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException(String.format("Invalid date %s, expected yyyy-MM-dd", date), e);
+        }
+    }
+
+    /**
+     * Formats days since 1970-01-01 as a {@code yyyy-MM-dd} date.
+     */
+    static String format(int epochDay) {
+        int date = toDigits(epochDay);
+        if (date < 0) {
+            return LocalDate.ofEpochDay(epochDay).toString();
+        }
+        char[] chars = new char[10];
+        for (int i = 9; i >= 0; i--) {
+            if (i == 4 || i == 7) {
+                chars[i] = '-';
+            } else {
+                chars[i] = (char) ('0' + date % 10);
+                date /= 10;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Formats days since 1970-01-01 as the eight digits {@code yyyyMMdd}, for index keys. Unlike
+     * epoch days, which are negative before 1970, these are fixed width over every date
+     * {@link #parse} accepts, so their string order is the order of the days.
+     */
+    static String toKey(int epochDay) {
+        int date = toDigits(epochDay);
+        if (date < 0) {
+            throw new IllegalArgumentException(String.format("Epoch day %d is outside the years 0000 to 9999", epochDay));
+        }
+        char[] chars = new char[8];
+        for (int i = 7; i >= 0; i--) {
+            chars[i] = (char) ('0' + date % 10);
+            date /= 10;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Converts days since 1970-01-01 to the digits of its {@code yyyy-MM-dd} date as the number
+     * {@code yyyyMMdd}, without allocating, or returns -1 for years outside 0000 to 9999.
+     */
+    static int toDigits(int epochDay) {
+        // civil_from_days from Howard Hinnant's date algorithms, on 400-year eras from 0000-03-01
+        long z = epochDay + 719468L;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+        return (int) (year * 10000 + month * 100 + day);
+    }
+
+    /**
+     * The UTC day an instant falls on, as days since 1970-01-01.
+     */
+    static int of(Instant instant) {
+        return (int) Math.floorDiv(instant.getEpochSecond(), SECONDS_PER_DAY);
+    }
+
+    private static int digits(String date, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException(String.format("Invalid date %s, expected yyyy-MM-dd", date));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
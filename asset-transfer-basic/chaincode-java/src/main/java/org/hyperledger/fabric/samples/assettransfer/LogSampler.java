@@ -0,0 +1,33 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs one in every {@code n} of a repeated message, for debug output per record of a scan that
+ * would otherwise flood the log. While the level is disabled, {@link #sample()} only checks it.
+ */
+final class LogSampler {
+    private final Logger logger;
+    private final Level level;
+    private final int n;
+    private final AtomicLong count = new AtomicLong();
+
+    LogSampler(Logger logger, Level level, int n) {
+        this.logger = logger;
+        this.level = level;
+        this.n = n;
+    }
+
+    /**
+     * Whether this occurrence is to be logged. Callers build the message only when it is.
+     */
+    boolean sample() {
+        return logger.isLoggable(level) && count.getAndIncrement() % n == 0;
+    }
+
+    void log(String message, Object parameter) {
+        logger.log(level, message, parameter);
+    }
+}
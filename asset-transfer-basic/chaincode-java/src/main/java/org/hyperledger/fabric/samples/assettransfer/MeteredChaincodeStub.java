@@ -0,0 +1,359 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeEvents.StubCallEvent;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeMetrics.StubCall;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeMetrics.TransactionMetrics;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Stub that counts the world state calls of a transaction, the bytes they move and the records its
+ * queries return into {@link ChaincodeMetrics}, records each call as a {@link StubCallEvent} while
+ * a flight recording is running, and passes everything on to the peer's stub.
+ */
+final class MeteredChaincodeStub implements ChaincodeStub {
+    private final ChaincodeStub stub;
+    private final ChaincodeMetrics metrics;
+    private final TransactionMetrics transaction;
+    private final boolean recording;
+
+    /**
+     * @param metrics where calls are counted, or null to not count them
+     * @param transaction the metrics of the transaction, null when {@code metrics} is
+     * @param recording whether to record calls as flight recorder events
+     */
+    MeteredChaincodeStub(ChaincodeStub stub, ChaincodeMetrics metrics, TransactionMetrics transaction, boolean recording) {
+        this.stub = stub;
+        this.metrics = metrics;
+        this.transaction = transaction;
+        this.recording = recording;
+    }
+
+    @Override
+    public byte[] getState(String key) {
+        StubCallEvent event = startCall();
+        byte[] value = stub.getState(key);
+        finishCall(event, StubCall.GET_STATE, key, value);
+        return value;
+    }
+
+    @Override
+    public void putState(String key, byte[] value) {
+        StubCallEvent event = startCall();
+        stub.putState(key, value);
+        finishCall(event, StubCall.PUT_STATE, key, value);
+    }
+
+    @Override
+    public void delState(String key) {
+        StubCallEvent event = startCall();
+        stub.delState(key);
+        finishCall(event, StubCall.DEL_STATE, key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+        StubCallEvent event = startCall();
+        return scan(event, StubCall.RANGE, startKey, stub.getStateByRange(startKey, endKey));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey, int pageSize,
+                                                                                    String bookmark) {
+        StubCallEvent event = startCall();
+        return scan(event, StubCall.RANGE, startKey, stub.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String compositeKey) {
+        StubCallEvent event = startCall();
+        return scan(event, StubCall.RANGE, compositeKey, stub.getStateByPartialCompositeKey(compositeKey));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+        StubCallEvent event = startCall();
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(objectType, attributes);
+        return scan(event, StubCall.RANGE, recording ? new CompositeKey(objectType, attributes).toString() : null, results);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {
+        StubCallEvent event = startCall();
+        return scan(event, StubCall.RANGE, recording ? compositeKey.toString() : null, stub.getStateByPartialCompositeKey(compositeKey));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(CompositeKey compositeKey, int pageSize,
+                                                                                                 String bookmark) {
+        StubCallEvent event = startCall();
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(compositeKey, pageSize, bookmark);
+        return scan(event, StubCall.RANGE, recording ? compositeKey.toString() : null, results);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(String query) {
+        StubCallEvent event = startCall();
+        return scan(event, StubCall.QUERY, query, stub.getQueryResult(query));
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize, String bookmark) {
+        StubCallEvent event = startCall();
+        return scan(event, StubCall.QUERY, query, stub.getQueryResultWithPagination(query, pageSize, bookmark));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(String key) {
+        StubCallEvent event = startCall();
+        QueryResultsIterator<KeyModification> history = stub.getHistoryForKey(key);
+        finishCall(event, StubCall.HISTORY, key, null);
+        return new MeteredIterator<>(history, KeyModification::getValue);
+    }
+
+    private MeteredIterator<KeyValue> scan(StubCallEvent event, StubCall call, String key, Iterable<KeyValue> results) {
+        finishCall(event, call, key, null);
+        if (transaction != null) {
+            transaction.countScan();
+        }
+        return new MeteredIterator<>(results, KeyValue::getValue);
+    }
+
+    private StubCallEvent startCall() {
+        if (!recording) {
+            return null;
+        }
+        StubCallEvent event = new StubCallEvent();
+        event.begin();
+        return event;
+    }
+
+    private void finishCall(StubCallEvent event, StubCall call, String key, byte[] value) {
+        if (metrics != null) {
+            metrics.countCall(call);
+            if (call == StubCall.PUT_STATE) {
+                metrics.countWritten(value);
+            } else {
+                metrics.countRead(value);
+            }
+        }
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.call = call.label;
+                event.key = key;
+                event.bytes = value == null ? 0 : value.length;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Counts the records and bytes of a query as the contract iterates over them.
+     */
+    private final class MeteredIterator<T> implements QueryResultsIteratorWithMetadata<T>, QueryResultsIterator<T> {
+        private final Iterable<T> results;
+        private final Function<T, byte[]> valueOf;
+
+        MeteredIterator(Iterable<T> results, Function<T, byte[]> valueOf) {
+            this.results = results;
+            this.valueOf = valueOf;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            Iterator<T> iterator = results.iterator();
+            if (metrics == null) {
+                return iterator;
+            }
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    T next = iterator.next();
+                    transaction.countRecordScanned();
+                    metrics.countRead(valueOf.apply(next));
+                    return next;
+                }
+            };
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return ((QueryResultsIteratorWithMetadata<T>) results).getMetadata();
+        }
+
+        @Override
+        public void close() throws Exception {
+            ((AutoCloseable) results).close();
+        }
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return stub.getArgs();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return stub.getStringArgs();
+    }
+
+    @Override
+    public String getFunction() {
+        return stub.getFunction();
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return stub.getParameters();
+    }
+
+    @Override
+    public String getTxId() {
+        return stub.getTxId();
+    }
+
+    @Override
+    public String getChannelId() {
+        return stub.getChannelId();
+    }
+
+    @Override
+    public Response invokeChaincode(String chaincodeName, List<byte[]> args, String channel) {
+        return stub.invokeChaincode(chaincodeName, args, channel);
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(String key) {
+        return stub.getStateValidationParameter(key);
+    }
+
+    @Override
+    public void setStateValidationParameter(String key, byte[] value) {
+        stub.setStateValidationParameter(key, value);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(String objectType, String... attributes) {
+        return stub.createCompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(String compositeKey) {
+        return stub.splitCompositeKey(compositeKey);
+    }
+
+    @Override
+    public byte[] getPrivateData(String collection, String key) {
+        return stub.getPrivateData(collection, key);
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(String collection, String key) {
+        return stub.getPrivateDataHash(collection, key);
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(String collection, String key) {
+        return stub.getPrivateDataValidationParameter(collection, key);
+    }
+
+    @Override
+    public void putPrivateData(String collection, String key, byte[] value) {
+        stub.putPrivateData(collection, key, value);
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(String collection, String key, byte[] value) {
+        stub.setPrivateDataValidationParameter(collection, key, value);
+    }
+
+    @Override
+    public void delPrivateData(String collection, String key) {
+        stub.delPrivateData(collection, key);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(String collection, String startKey, String endKey) {
+        return stub.getPrivateDataByRange(collection, startKey, endKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String compositeKey) {
+        return stub.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, CompositeKey compositeKey) {
+        return stub.getPrivateDataByPartialCompositeKey(collection, compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String objectType, String... attributes) {
+        return stub.getPrivateDataByPartialCompositeKey(collection, objectType, attributes);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(String collection, String query) {
+        return stub.getPrivateDataQueryResult(collection, query);
+    }
+
+    @Override
+    public void setEvent(String name, byte[] payload) {
+        stub.setEvent(name, payload);
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return stub.getEvent();
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return stub.getSignedProposal();
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return stub.getTxTimestamp();
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return stub.getCreator();
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return stub.getTransient();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return stub.getBinding();
+    }
+
+    @Override
+    public String getMspId() {
+        return stub.getMspId();
+    }
+}
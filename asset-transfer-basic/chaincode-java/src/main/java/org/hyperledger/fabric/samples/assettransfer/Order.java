@@ -1,8 +1,11 @@
 package org.hyperledger.fabric.samples.assettransfer;
 
+import com.owlike.genson.annotation.JsonCreator;
+import com.owlike.genson.annotation.JsonIgnore;
 import com.owlike.genson.annotation.JsonProperty;
 import org.hyperledger.fabric.contract.annotation.DataType;
 import org.hyperledger.fabric.contract.annotation.Property;
+import org.hyperledger.fabric.samples.assettransfer.OrderContract.OrderStatuses;
 
 import java.util.Objects;
 
@@ -28,7 +31,7 @@ public final class Order {
     private final int quantity;
 
     @Property()
-    private final String deliveryDate;
+    private String deliveryDate;
 
     @Property()
     private final String status;
@@ -42,18 +45,39 @@ public final class Order {
     @Property()
     private final int metalCount;
 
+    private final int deliveryEpochDay;
+
+    private final OrderStatuses orderStatus;
+
+    private int hash;
+
+    @JsonCreator
     public Order(@JsonProperty(ID_PROP) final String ID, @JsonProperty(PRODUCT_NAME_PROP) final String productName, @JsonProperty(QUANTITY_PROP) final int quantity,
                  @JsonProperty(DELIVERY_DATE_PROP) final String deliveryDate, @JsonProperty(STATUS_PROP) final String status, @JsonProperty(PRICE_PROP) final int price,
                  @JsonProperty(LEATHER_COUNT_PROP) final int leatherCount, @JsonProperty(METAL_COUNT_PROP) final int metalCount) {
         this.ID = ID;
-        this.productName = productName;
+        this.productName = StatusTransitions.canonicalProductName(productName);
         this.quantity = quantity;
         this.deliveryDate = deliveryDate;
-        this.status = status;
+        this.deliveryEpochDay = EpochDays.parse(deliveryDate);
+        this.orderStatus = OrderStatuses.of(status);
+        this.status = orderStatus == null ? status : orderStatus.name();
         this.price = price;
         this.leatherCount = leatherCount;
         this.metalCount = metalCount;
+    }
 
+    Order(final String ID, final String productName, final int quantity, final int deliveryEpochDay, final String status, final int price,
+          final int leatherCount, final int metalCount) {
+        this.ID = ID;
+        this.productName = StatusTransitions.canonicalProductName(productName);
+        this.quantity = quantity;
+        this.deliveryEpochDay = deliveryEpochDay;
+        this.orderStatus = OrderStatuses.of(status);
+        this.status = orderStatus == null ? status : orderStatus.name();
+        this.price = price;
+        this.leatherCount = leatherCount;
+        this.metalCount = metalCount;
     }
 
     public String getID() {
@@ -68,12 +92,36 @@ public final class Order {
         return quantity;
     }
 
-    public String getDeliveryDate() { return deliveryDate; }
+    /**
+     * The delivery date as {@code yyyy-MM-dd}. Orders decoded from the world state only format it
+     * when asked.
+     */
+    public String getDeliveryDate() {
+        String date = deliveryDate;
+        if (date == null) {
+            date = EpochDays.format(deliveryEpochDay);
+            deliveryDate = date;
+        }
+        return date;
+    }
+
+    /**
+     * The delivery date as days since 1970-01-01, parsed once when the order is created.
+     */
+    @JsonIgnore
+    public int getDeliveryEpochDay() { return deliveryEpochDay; }
 
     public String getStatus() {
         return status;
     }
 
+    /**
+     * The status as an {@link OrderStatuses} constant, resolved once when the order is created, or
+     * null if the status is not one of them.
+     */
+    @JsonIgnore
+    public OrderStatuses getOrderStatus() { return orderStatus; }
+
     public int getPrice() {
         return price;
     }
@@ -87,27 +135,43 @@ public final class Order {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Order order = (Order) o;
-        return Objects.deepEquals(
-                new String[] {getID(), getProductName(), getStatus(), getDeliveryDate()},
-                new String[] {order.getID(), order.getProductName(), order.getStatus(), order.getDeliveryDate()})
-                &&
-                Objects.deepEquals(
-                        new int[] {getQuantity(), getPrice(), getLeatherCount(), getMetalCount()},
-                        new int[] {order.getQuantity(), order.getPrice(), order.getLeatherCount(), order.getMetalCount()});
+        return quantity == order.quantity
+                && deliveryEpochDay == order.deliveryEpochDay
+                && price == order.price
+                && leatherCount == order.leatherCount
+                && metalCount == order.metalCount
+                && Objects.equals(ID, order.ID)
+                && Objects.equals(productName, order.productName)
+                && Objects.equals(status, order.status);
     }
 
+    /**
+     * Computed on first use and cached; orders are immutable.
+     */
     @Override
     public int hashCode() {
-        return Objects.hash(getID(), getProductName(), getQuantity(), getDeliveryDate(), getStatus(), getPrice(), getLeatherCount(), getMetalCount());
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hashCode(ID);
+            h = 31 * h + Objects.hashCode(productName);
+            h = 31 * h + quantity;
+            h = 31 * h + deliveryEpochDay;
+            h = 31 * h + Objects.hashCode(status);
+            h = 31 * h + price;
+            h = 31 * h + leatherCount;
+            h = 31 * h + metalCount;
+            hash = h;
+        }
+        return h;
     }
 
     @Override
     public String toString() {
-        return this.getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()) +
+        return this.getClass().getSimpleName() +
                 " [" + ID_PROP + "=" + ID +
                 ", " + PRODUCT_NAME_PROP + "=" + productName +
                 ", " + QUANTITY_PROP + "=" + quantity +
-                ", " + DELIVERY_DATE_PROP + "=" + deliveryDate +
+                ", " + DELIVERY_DATE_PROP + "=" + getDeliveryDate() +
                 ", " + STATUS_PROP + "=" + status +
                 ", " + PRICE_PROP + "=" + price +
                 ", " + LEATHER_COUNT_PROP + "=" + leatherCount +
@@ -0,0 +1,19 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.contract.ContractRouter;
+
+/**
+ * Starts the order contract as a chaincode the peer launches, as the shim's {@link ContractRouter}
+ * does, with the log handlers behind an {@link AsyncLogHandler} so that transactions do not write
+ * to the console themselves. {@link OrderChaincodeServer} starts it as an external service instead.
+ */
+public final class OrderChaincode {
+
+    private OrderChaincode() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        AsyncLogHandler.install();
+        ContractRouter.main(args);
+    }
+}
@@ -0,0 +1,122 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.contract.ContractRouter;
+import org.hyperledger.fabric.metrics.Metrics;
+import org.hyperledger.fabric.shim.ChaincodeServerProperties;
+import org.hyperledger.fabric.shim.NettyChaincodeServer;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runs the order contract as an external chaincode service: the peer connects to this process
+ * instead of launching the chaincode itself. Configured through the environment:
+ * <ul>
+ *     <li>{@code CHAINCODE_SERVER_ADDRESS}, the {@code host:port} to listen on, and
+ *     {@code CORE_CHAINCODE_ID_NAME}, the package ID the chaincode was installed with</li>
+ *     <li>{@code CHAINCODE_TLS_DISABLED}, true unless set to false, with the PEM files
+ *     {@code CHAINCODE_TLS_KEY}, {@code CHAINCODE_TLS_CERT} and optionally
+ *     {@code CHAINCODE_CLIENT_CA_CERT} to require client certificates signed by it</li>
+ *     <li>{@code CHAINCODE_MAX_INBOUND_MESSAGE_SIZE} in bytes</li>
+ *     <li>{@code TP_CORE_POOL_SIZE}, {@code TP_MAX_POOL_SIZE}, {@code TP_QUEUE_SIZE} and
+ *     {@code TP_KEEP_ALIVE_MS} for the shim's transaction executor, and {@code CHAINCODE_EXECUTOR}
+ *     set to {@code virtual} to run its transactions on virtual threads</li>
+ * </ul>
+ */
+public final class OrderChaincodeServer {
+    static final String SERVER_ADDRESS = "CHAINCODE_SERVER_ADDRESS";
+    static final String TLS_DISABLED = "CHAINCODE_TLS_DISABLED";
+    static final String TLS_KEY = "CHAINCODE_TLS_KEY";
+    static final String TLS_CERT = "CHAINCODE_TLS_CERT";
+    static final String CLIENT_CA_CERT = "CHAINCODE_CLIENT_CA_CERT";
+    static final String MAX_INBOUND_MESSAGE_SIZE = "CHAINCODE_MAX_INBOUND_MESSAGE_SIZE";
+    static final String METRICS_ENABLED = "CHAINCODE_METRICS_ENABLED";
+    static final String METRICS_PROVIDER = "CHAINCODE_METRICS_PROVIDER";
+    static final String[] EXECUTOR_PROPERTIES = {"TP_CORE_POOL_SIZE", "TP_MAX_POOL_SIZE", "TP_QUEUE_SIZE", "TP_KEEP_ALIVE_MS"};
+
+    private OrderChaincodeServer() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        AsyncLogHandler.install();
+        Map<String, String> env = System.getenv();
+        ChaincodeServerProperties serverProperties = serverProperties(env);
+        ContractRouter router = new ContractRouter(args);
+        Properties config = router.getChaincodeConfig();
+        configureExecutor(env, config);
+        // the router picked its metrics provider when it was created; pick again with ours
+        Metrics.initialize(config);
+        router.startRouterWithChaincodeServer(new NettyChaincodeServer(router, serverProperties));
+    }
+
+    static ChaincodeServerProperties serverProperties(final Map<String, String> env) {
+        ChaincodeServerProperties properties = new ChaincodeServerProperties();
+        properties.setServerAddress(parseAddress(required(env, SERVER_ADDRESS)));
+        String maxInboundMessageSize = env.get(MAX_INBOUND_MESSAGE_SIZE);
+        if (maxInboundMessageSize != null) {
+            properties.setMaxInboundMessageSize(positiveInt(MAX_INBOUND_MESSAGE_SIZE, maxInboundMessageSize));
+        }
+        if (!Boolean.parseBoolean(env.getOrDefault(TLS_DISABLED, "true"))) {
+            properties.setTlsEnabled(true);
+            properties.setKeyFile(required(env, TLS_KEY));
+            properties.setKeyCertChainFile(required(env, TLS_CERT));
+            properties.setTrustCertCollectionFile(env.get(CLIENT_CA_CERT));
+        }
+        properties.validate();
+        return properties;
+    }
+
+    /**
+     * Copies the executor settings into the chaincode config, where the shim reads the pool and
+     * queue sizes when the peer connects, and installs {@link TransactionExecutorProvider} to set
+     * the executor's threads.
+     */
+    static void configureExecutor(final Map<String, String> env, final Properties config) {
+        for (String property : EXECUTOR_PROPERTIES) {
+            String value = env.get(property);
+            if (value != null) {
+                config.setProperty(property, Integer.toString(positiveInt(property, value)));
+            }
+        }
+        config.setProperty(TransactionExecutorProvider.EXECUTOR, env.getOrDefault(TransactionExecutorProvider.EXECUTOR,
+                TransactionExecutorProvider.PLATFORM));
+        config.setProperty(TransactionExecutorProvider.LOG_METRICS,
+                Boolean.toString(Boolean.parseBoolean(env.get(METRICS_ENABLED))));
+        config.setProperty(METRICS_ENABLED, "true");
+        config.setProperty(METRICS_PROVIDER, TransactionExecutorProvider.class.getName());
+    }
+
+    private static InetSocketAddress parseAddress(final String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException(String.format("%s must be host:port, not %s", SERVER_ADDRESS, address));
+        }
+        int port = positiveInt(SERVER_ADDRESS, address.substring(colon + 1));
+        if (port > 65535) {
+            throw new IllegalArgumentException(String.format("%s has an invalid port %d", SERVER_ADDRESS, port));
+        }
+        return new InetSocketAddress(address.substring(0, colon), port);
+    }
+
+    private static String required(final Map<String, String> env, final String name) {
+        String value = env.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(name + " must be set");
+        }
+        return value;
+    }
+
+    private static int positiveInt(final String name, final String value) {
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("%s must be a number, not %s", name, value), e);
+        }
+        if (parsed <= 0) {
+            throw new IllegalArgumentException(String.format("%s must be positive, not %s", name, value));
+        }
+        return parsed;
+    }
+}
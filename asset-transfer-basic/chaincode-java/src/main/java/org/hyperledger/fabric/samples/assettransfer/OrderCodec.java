@@ -0,0 +1,247 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * World state encoding of orders. Orders are written in a compact binary format whose first byte
+ * is the schema version, followed by the fields in declaration order: strings as a varint length
+ * (0 for null, otherwise length + 1) and UTF-8 bytes, numbers as zigzag varints, and the delivery
+ * date as an epoch day.
+ * <p>
+ * An order is stored as two records: a header with the fields fixed when the order is placed, and
+ * a small progress record with the fields that change as it is worked on, so a status change
+ * rewrites only the progress record. Version 1 records hold the whole order in one record, and
+ * records written before the binary format existed are JSON objects. Both are still read, and
+ * migrate to the split form the next time the order is written.
+ */
+final class OrderCodec {
+    static final byte VERSION_1 = 1;
+    static final byte HEADER_VERSION = 2;
+    static final byte PROGRESS_VERSION = 1;
+
+    /**
+     * Strings that recur across orders, the statuses and the product names of the offer. Decoding
+     * returns these instances instead of allocating a copy for every order.
+     */
+    private static final String[] KNOWN_STRINGS;
+    private static final byte[][] KNOWN_STRING_BYTES;
+
+    static {
+        OrderContract.OrderStatuses[] statuses = OrderContract.OrderStatuses.values();
+        KNOWN_STRINGS = new String[statuses.length + 1];
+        for (int i = 0; i < statuses.length; i++) {
+            KNOWN_STRINGS[i] = statuses[i].name();
+        }
+        KNOWN_STRINGS[statuses.length] = StatusTransitions.PRODUCT_NAME;
+        KNOWN_STRING_BYTES = new byte[KNOWN_STRINGS.length][];
+        for (int i = 0; i < KNOWN_STRINGS.length; i++) {
+            KNOWN_STRING_BYTES[i] = KNOWN_STRINGS[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private OrderCodec() {
+    }
+
+    static byte[] encode(Order order) {
+        Writer writer = new Writer();
+        writer.buffer[writer.size++] = VERSION_1;
+        writer.writeString(order.getID());
+        writer.writeString(order.getProductName());
+        writer.writeInt(order.getQuantity());
+        writer.writeInt(order.getDeliveryEpochDay());
+        writer.writeString(order.getStatus());
+        writer.writeInt(order.getPrice());
+        writer.writeInt(order.getLeatherCount());
+        writer.writeInt(order.getMetalCount());
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    /**
+     * Encodes the fields of an order that are fixed when it is placed: ID, product name, quantity,
+     * delivery date and price.
+     */
+    static byte[] encodeHeader(Order order) {
+        Writer writer = new Writer();
+        writer.buffer[writer.size++] = HEADER_VERSION;
+        writer.writeString(order.getID());
+        writer.writeString(order.getProductName());
+        writer.writeInt(order.getQuantity());
+        writer.writeInt(order.getDeliveryEpochDay());
+        writer.writeInt(order.getPrice());
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    /**
+     * Encodes the fields of an order that change as it is worked on: status and material counts.
+     */
+    static byte[] encodeProgress(Order order) {
+        Writer writer = new Writer();
+        writer.buffer[writer.size++] = PROGRESS_VERSION;
+        writer.writeString(order.getStatus());
+        writer.writeInt(order.getLeatherCount());
+        writer.writeInt(order.getMetalCount());
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    /**
+     * Decodes an order stored in a single record. A header on its own decodes to an order without
+     * status and with no materials.
+     */
+    static Order decode(byte[] value) {
+        if (isJson(value)) {
+            return OrderJsonParser.parse(value);
+        }
+        Reader reader = new Reader(value);
+        if (value[0] == HEADER_VERSION) {
+            return new Order(reader.readString(), reader.readKnownString(), reader.readInt(), reader.readInt(), null,
+                    reader.readInt(), 0, 0);
+        }
+        if (value[0] != VERSION_1) {
+            throw unsupported(value[0]);
+        }
+        return new Order(reader.readString(), reader.readKnownString(), reader.readInt(), reader.readInt(), reader.readKnownString(),
+                reader.readInt(), reader.readInt(), reader.readInt());
+    }
+
+    /**
+     * Decodes an order from its header and progress record. Without a progress record the header
+     * is decoded on its own, which covers orders stored in a single record.
+     */
+    static Order decode(byte[] header, byte[] progress) {
+        if (progress.length == 0) {
+            return decode(header);
+        }
+        if (progress[0] != PROGRESS_VERSION) {
+            throw unsupported(progress[0]);
+        }
+        Reader progressReader = new Reader(progress);
+        String status = progressReader.readKnownString();
+        int leatherCount = progressReader.readInt();
+        int metalCount = progressReader.readInt();
+
+        if (isJson(header) || header[0] != HEADER_VERSION) {
+            Order order = decode(header);
+            return new Order(order.getID(), order.getProductName(), order.getQuantity(), order.getDeliveryEpochDay(), status,
+                    order.getPrice(), leatherCount, metalCount);
+        }
+        Reader reader = new Reader(header);
+        return new Order(reader.readString(), reader.readKnownString(), reader.readInt(), reader.readInt(), status,
+                reader.readInt(), leatherCount, metalCount);
+    }
+
+    private static IllegalStateException unsupported(byte version) {
+        return new IllegalStateException(String.format("Unsupported order encoding version %d", version));
+    }
+
+    /**
+     * Whether a stored value is a legacy JSON record rather than a versioned binary one. Version
+     * bytes are control characters, which can never start a JSON document.
+     */
+    static boolean isJson(byte[] value) {
+        byte first = value[0];
+        return first >= 0x20 || first == '\t' || first == '\n' || first == '\r';
+    }
+
+    private static final class Writer {
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            ensureCapacity(size + bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void writeInt(int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        private void writeVarint(int value) {
+            ensureCapacity(size + 5);
+            while ((value & ~0x7f) != 0) {
+                buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buffer;
+        private int position = 1;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        String readString() {
+            int length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            String value = new String(buffer, position, length - 1, StandardCharsets.UTF_8);
+            position += length - 1;
+            return value;
+        }
+
+        /**
+         * Reads a string, returning the shared instance if it is one of {@link #KNOWN_STRINGS}.
+         */
+        String readKnownString() {
+            int length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            int start = position;
+            position += length - 1;
+            for (int i = 0; i < KNOWN_STRING_BYTES.length; i++) {
+                if (regionEquals(start, length - 1, KNOWN_STRING_BYTES[i])) {
+                    return KNOWN_STRINGS[i];
+                }
+            }
+            return new String(buffer, start, length - 1, StandardCharsets.UTF_8);
+        }
+
+        private boolean regionEquals(int start, int length, byte[] bytes) {
+            if (length != bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (buffer[start + i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int readInt() {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = buffer[position++];
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Malformed order encoding");
+        }
+    }
+}
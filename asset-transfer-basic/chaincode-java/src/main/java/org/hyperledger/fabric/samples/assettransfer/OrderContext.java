@@ -0,0 +1,128 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeEvents.SerializationEvent;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeEvents.TransactionEvent;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeMetrics.TransactionMetrics;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transaction context of the order contract, carrying the {@link StateCache} through which the
+ * contract reads and writes the world state for the duration of one transaction, the changes to
+ * the per-status order counts made so far, the transaction's clock and, when metrics are enabled
+ * or a flight recording is running, what the transaction has done so far.
+ */
+public class OrderContext extends Context {
+    private final StateCache stateCache;
+    private final Map<String, Integer> statusCountDeltas = new LinkedHashMap<>();
+    private final TransactionMetrics metrics;
+    private final TransactionEvent event;
+    private SerializationEvent serialization;
+    private boolean inFunction;
+    private boolean todayResolved;
+    private int today;
+
+    public OrderContext(ChaincodeStub stub) {
+        this(stub, null, null);
+    }
+
+    /**
+     * @param metrics metrics of the transaction, or null if metrics are not enabled
+     * @param event flight recorder event of the transaction, begun, or null if no recording is running
+     */
+    OrderContext(ChaincodeStub stub, TransactionMetrics metrics, TransactionEvent event) {
+        super(stub);
+        this.stateCache = new StateCache(stub);
+        this.metrics = metrics;
+        this.event = event;
+    }
+
+    StateCache getStateCache() {
+        return stateCache;
+    }
+
+    /**
+     * Net change to the number of orders in each status made by this transaction, written as one
+     * delta key per status when the transaction ends.
+     */
+    Map<String, Integer> getStatusCountDeltas() {
+        return statusCountDeltas;
+    }
+
+    /**
+     * The UTC day of the transaction timestamp as an epoch day. The timestamp is set by the client
+     * and is the same on every endorsing peer, so date rules give the same answer everywhere.
+     */
+    int getToday() {
+        if (!todayResolved) {
+            today = EpochDays.of(getStub().getTxTimestamp());
+            todayResolved = true;
+        }
+        return today;
+    }
+
+    /**
+     * Metrics of this transaction, or null if metrics are not enabled.
+     */
+    TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Flight recorder event of this transaction, or null if no recording was running when it
+     * started.
+     */
+    TransactionEvent getEvent() {
+        return event;
+    }
+
+    /**
+     * Marks the start of a transaction function, returning false if one is already running, as
+     * when a transaction function calls another.
+     */
+    boolean startFunction() {
+        if (inFunction) {
+            return false;
+        }
+        inFunction = true;
+        return true;
+    }
+
+    void endFunction() {
+        inFunction = false;
+    }
+
+    /**
+     * Starts timing an encoding or decoding of orders, returning the start to pass to
+     * {@link #stopSerialization}. Reads no clock when neither metrics nor a recording are enabled.
+     */
+    long startSerialization() {
+        if (event != null) {
+            serialization = new SerializationEvent();
+            serialization.begin();
+        }
+        return metrics == null ? 0L : System.nanoTime();
+    }
+
+    /**
+     * @param operation what was encoded or decoded, for the flight recorder event
+     * @param bytes size of the encoded form
+     */
+    void stopSerialization(long started, String operation, int bytes) {
+        if (metrics != null) {
+            metrics.addSerializationNanos(System.nanoTime() - started);
+        }
+        if (serialization != null) {
+            serialization.end();
+            if (serialization.shouldCommit()) {
+                serialization.operation = operation;
+                serialization.bytes = bytes;
+                serialization.commit();
+            }
+            serialization = null;
+        }
+    }
+}
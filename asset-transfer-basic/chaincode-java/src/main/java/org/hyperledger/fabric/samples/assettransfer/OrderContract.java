@@ -1,29 +1,155 @@
 package org.hyperledger.fabric.samples.assettransfer;
 
-import com.owlike.genson.Genson;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.contract.annotation.*;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeEvents.TransactionEvent;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeMetrics.TransactionMetrics;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @Contract(
         name = "basic",
         info = @Info(contact = @Contact( name = "order")))
 @Default
 public class OrderContract implements ContractInterface {
-    private final Genson genson = new Genson();
+    /**
+     * Upper bound on the number of orders a single query transaction will load, so that no query
+     * can pull the whole keyspace into the chaincode heap or past the gRPC message size limit.
+     */
+    static final int MAX_QUERY_RESULTS = 1000;
+
+    /**
+     * Composite key object type of orders. Keeping orders in their own namespace lets order scans
+     * be bounded to orders alone, whatever else the contract stores. Orders written before the
+     * namespace existed are stored under their bare ID until {@link #MigrateOrders} moves them.
+     */
+    static final String ORDER = "order~orderId";
+
+    /**
+     * Key of the marker {@link #MigrateOrders} writes once no order is left under its bare ID, after
+     * which reads of orders no longer fall back to the bare ID.
+     */
+    static final String ORDERS_MIGRATED = new CompositeKey("migration~name", "orderNamespace").toString();
+
+    /**
+     * Composite key object type of the progress records of orders, which hold the fields that
+     * change as an order is worked on. The rest of the order is stored under its {@link #ORDER} key.
+     */
+    static final String ORDER_PROGRESS = "progress~orderId";
+
+    /**
+     * Composite key object type of the JSON documents that {@link #QueryOrders} runs CouchDB rich
+     * queries against. Orders themselves are stored in a binary encoding CouchDB cannot look into,
+     * so their canonical JSON is also written here, marked with {@code "docType":"order"}, which
+     * the packaged CouchDB indexes lead with. The view leaves out the material counts, so it is
+     * only written again when the header or status of an order changes; query results take the
+     * counts from the progress record.
+     */
+    static final String ORDER_VIEW = "view~orderId";
+
+    /**
+     * Composite key object type of the secondary index from order status to order ID. Within a
+     * status, entries are ordered by delivery day, kept as in the {@link #DUE_INDEX}.
+     */
+    static final String STATUS_INDEX = "status~epochDay~orderId";
+
+    /**
+     * Composite key object type of the secondary index from delivery day to order ID. Days are
+     * kept as the fixed-width digits of {@link EpochDays#toKey}, so entries sort by delivery day.
+     */
+    static final String DUE_INDEX = "due~epochDay~orderId";
+
+    /**
+     * Upper bound on the number of days {@link #QueryOrdersDueBetween} scans the due index for,
+     * one partial key query per day.
+     */
+    static final int MAX_DUE_RANGE_DAYS = 366;
+
+    /**
+     * Upper bound on the number of orders a single bulk transaction will create or update.
+     */
+    static final int MAX_BULK_ORDERS = 1000;
+
+    /**
+     * Composite key object type of the per-status order count checkpoints written by
+     * {@link #CompactOrderStats}.
+     */
+    static final String STATUS_COUNT = "count~status";
+
+    /**
+     * Composite key object type of the per-transaction changes to the order count of a status.
+     * Every transaction writes its own keys, so concurrent transactions never conflict on a
+     * shared counter.
+     */
+    static final String STATUS_COUNT_DELTA = "countDelta~status~txId";
+
+    /**
+     * Composite key object type of the material increments reported through {@link #AddMaterials}.
+     * Every transaction writes its own key, so suppliers reporting into the same order do not
+     * conflict with each other.
+     */
+    static final String MATERIALS_DELTA = "materials~orderId~txId";
+
+    /**
+     * Composite key object type of the digests written by {@link #ArchiveOrders}, one per archiving
+     * transaction.
+     */
+    static final String ARCHIVE = "archive~txId";
+
+    /**
+     * Upper bound on the number of count changes a single {@link #CompactOrderStats} call folds.
+     */
+    static final int MAX_COMPACTED_DELTAS = 1000;
+
+    private static final byte[] INDEX_ENTRY_VALUE = {0};
+
+    private static final Logger LOG = Logger.getLogger(OrderContract.class.getName());
+
+    /**
+     * Operations of the serialization flight recorder events.
+     */
+    private static final String ENCODE = "encode";
+    private static final String DECODE = "decode";
+    private static final String WRITE_JSON = "writeJson";
+    private static final String PARSE_JSON = "parseJson";
+    private static final String COMPRESS = "compress";
+
+    /**
+     * Debug output of the orders a scan returns, one in every hundred of them.
+     */
+    private static final LogSampler SCANNED_ORDERS = new LogSampler(LOG, Level.FINE, 100);
 
     private enum Errors {
         ORDER_NOT_FOUND,
-        ORDER_ALREADY_EXISTS
+        ORDER_ALREADY_EXISTS,
+        INVALID_DELIVERY_DATE,
+        INVALID_ORDER,
+        INVALID_MATERIAL_COUNT,
+        MATERIALS_CHANGED,
+        INVALID_BULK_REQUEST,
+        INVALID_PAGE_SIZE,
+        INVALID_QUERY,
+        TOO_MANY_RESULTS
     }
 
     public enum OrderStatuses {
@@ -31,7 +157,131 @@ public class OrderContract implements ContractInterface {
         COLLECTING_MATERIALS,
         MATERIALS_COLLECTED,
         MATERIALS_DELIVERED,
-        PRODUCED
+        PRODUCED;
+
+        private static final OrderStatuses[] VALUES = values();
+
+        /**
+         * Looks up a status by name, returning null instead of throwing for unknown names.
+         */
+        static OrderStatuses of(String name) {
+            for (OrderStatuses status : VALUES) {
+                if (status.name().equals(name)) {
+                    return status;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * How bulk transactions treat an item that fails its checks.
+     */
+    public enum BulkModes {
+        /** Fail the whole transaction, so none of the items are written. */
+        ALL_OR_NOTHING,
+        /** Report the failure for that item and write all the others. */
+        BEST_EFFORT
+    }
+
+    private final ChaincodeMetrics metrics;
+
+    /**
+     * Whether the {@link #ORDERS_MIGRATED} marker has been seen. The marker is never deleted, so
+     * once it has been read this process does not read it again.
+     */
+    private volatile boolean ordersMigrated;
+
+    public OrderContract() {
+        this(ChaincodeMetrics.fromEnvironment());
+    }
+
+    /**
+     * @param metrics where transactions are measured, or null to not measure them
+     */
+    OrderContract(final ChaincodeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Context createContext(final ChaincodeStub stub) {
+        boolean recording = ChaincodeEvents.isRecording();
+        if (metrics == null && !recording) {
+            return new OrderContext(stub);
+        }
+        TransactionMetrics transaction = metrics == null ? null : metrics.startTransaction(stub.getFunction());
+        TransactionEvent event = null;
+        if (recording) {
+            event = new TransactionEvent();
+            event.begin();
+        }
+        return new OrderContext(new MeteredChaincodeStub(stub, metrics, transaction, recording), transaction, event);
+    }
+
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        if (ctx instanceof OrderContext) {
+            OrderContext orderContext = (OrderContext) ctx;
+            for (Map.Entry<String, Integer> delta : orderContext.getStatusCountDeltas().entrySet()) {
+                writeStatusCountDelta(ctx, delta.getKey(), delta.getValue());
+            }
+            orderContext.getStatusCountDeltas().clear();
+            orderContext.getStateCache().flush();
+            if (orderContext.getMetrics() != null) {
+                metrics.finishTransaction(orderContext.getMetrics());
+            }
+            finishEvent(orderContext, "success");
+        }
+    }
+
+    /**
+     * Ends the flight recorder event of a transaction, if a recording was running when it began.
+     */
+    private static void finishEvent(OrderContext ctx, String outcome) {
+        TransactionEvent event = ctx.getEvent();
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                String function = ctx.getStub().getFunction();
+                event.function = function == null ? null : function.substring(function.indexOf(':') + 1);
+                event.txId = ctx.getStub().getTxId();
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Runs the body of a transaction function, reporting the transaction as failed if it throws,
+     * since the shim only calls {@link #afterTransaction} for transactions that succeed. A
+     * transaction function called from another runs as part of it and reports nothing itself.
+     */
+    private <T> T transaction(Context ctx, Supplier<T> body) {
+        if (!(ctx instanceof OrderContext) || !((OrderContext) ctx).startFunction()) {
+            return body.get();
+        }
+        OrderContext orderContext = (OrderContext) ctx;
+        try {
+            return body.get();
+        } catch (RuntimeException e) {
+            String error = failureOf(e);
+            if (orderContext.getMetrics() != null) {
+                metrics.failTransaction(orderContext.getMetrics(), error);
+            }
+            finishEvent(orderContext, "failure: " + error);
+            throw e;
+        } finally {
+            orderContext.endFunction();
+        }
+    }
+
+    /**
+     * What a transaction failed with: the error code of a {@link ChaincodeException}, or the class
+     * of any other exception.
+     */
+    private static String failureOf(RuntimeException e) {
+        String error = e instanceof ChaincodeException ? errorOf((ChaincodeException) e) : null;
+        return error != null ? error : e.getClass().getSimpleName();
     }
 
     /**
@@ -49,18 +299,52 @@ public class OrderContract implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public Order CreateOrder(final Context ctx, final String ID, final String productName, final int quantity, final String deliveryDate, final String status,
                              final int price, final int leatherCount, final int metalCount) {
-        ChaincodeStub stub = ctx.getStub();
+        return transaction(ctx, () -> {
+            checkAssetAlreadyExists(ctx, ID);
+
+            return createOrder(ctx, newOrder(ID, productName, quantity, deliveryDate, status, price, leatherCount, metalCount));
+        });
+    }
+
+    /**
+     * Creates many orders in one transaction, with the same checks as {@link #CreateOrder} for
+     * each of them.
+     *
+     * @param ctx the transaction context
+     * @param ordersJSON JSON array of orders, at most {@link #MAX_BULK_ORDERS} of them
+     * @param mode one of {@link BulkModes}
+     * @return array with the outcome of each order, in request order
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String CreateOrders(final Context ctx, final String ordersJSON, final String mode) {
+        return transaction(ctx, () -> {
+            boolean allOrNothing = parseBulkMode(mode) == BulkModes.ALL_OR_NOTHING;
+            OrderJsonWriter results = new OrderJsonWriter().startArray();
 
-        checkAssetAlreadyExists(ctx, ID);
+            for (Order requested : parseBulkOrders(ctx, ordersJSON)) {
+                try {
+                    checkAssetAlreadyExists(ctx, requested.getID());
+                    results.writeSuccess(createOrder(ctx, requested));
+                } catch (ChaincodeException e) {
+                    if (allOrNothing) {
+                        throw e;
+                    }
+                    results.writeFailure(requested.getID(), errorOf(e), e.getMessage());
+                }
+            }
 
-        Order order = new Order(ID, productName, quantity, deliveryDate, status, price, leatherCount, metalCount);
-        serialize(stub, order, ID);
+            return results.endArray().toString();
+        });
+    }
+
+    private Order createOrder(Context ctx, Order order) {
+        writeOrder(ctx, order, null);
+        indexOrder(ctx, null, order);
         return order;
     }
 
     public LocalDate getDeliveryDate(String deliveryDate) {
-        String[] splittedDate = deliveryDate.split("-");
-        return LocalDate.of(Integer.parseInt(splittedDate[0]), Integer.parseInt(splittedDate[1]), Integer.parseInt(splittedDate[2]));
+        return LocalDate.ofEpochDay(EpochDays.parse(deliveryDate));
     }
 
     /**
@@ -72,16 +356,48 @@ public class OrderContract implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public Order ReadOrder(final Context ctx, final String ID) {
-        ChaincodeStub stub = ctx.getStub();
-        String orderJSON = stub.getStringState(ID);
+        return transaction(ctx, () -> {
+            byte[] orderState = getOrderState(ctx, ID);
+
+            checkIfOrderExists(orderState.length == 0, ID);
+
+            return foldMaterialDeltas(ctx, readOrder(ctx, ID, orderState), null);
+        });
+    }
 
-        checkIfOrderExists(orderJSON == null || orderJSON.isEmpty(), ID);
+    /**
+     * Reports materials delivered for an order. The increment is written as its own key instead of
+     * rewriting the order, so any number of suppliers can report into the same order in the same
+     * block. {@link #ReadOrder} adds the increments to the stored counts, and the next
+     * {@link #UpdateOrder} of the order folds them into it.
+     *
+     * @param ctx the transaction context
+     * @param ID the ID of the order
+     * @param leatherCount leather delivered, not negative
+     * @param metalCount metal delivered, not negative
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public void AddMaterials(final Context ctx, final String ID, final int leatherCount, final int metalCount) {
+        transaction(ctx, () -> {
+            if (leatherCount < 0 || metalCount < 0) {
+                String errorMessage = String.format("Material counts %d and %d must not be negative", leatherCount, metalCount);
+                throw new ChaincodeException(errorMessage, Errors.INVALID_MATERIAL_COUNT.toString());
+            }
+            checkIfOrderExists(getOrderState(ctx, ID).length == 0, ID);
 
-        return genson.deserialize(Objects.requireNonNull(orderJSON), Order.class);
+            String key = new CompositeKey(MATERIALS_DELTA, ID, ctx.getStub().getTxId()).toString();
+            putState(ctx, key, (leatherCount + "," + metalCount).getBytes(StandardCharsets.US_ASCII));
+            return null;
+        });
     }
 
     /**
-     * Updates the properties of an order on the ledger.
+     * Updates the properties of an order on the ledger. The material counts are totals as returned
+     * by {@link #ReadOrder}, and replace the stored counts together with any increments reported
+     * through {@link #AddMaterials}. While increments are pending, the counts must be exactly those
+     * totals, so that no increment reported after the order was read is lost; otherwise the update
+     * fails with {@code MATERIALS_CHANGED} and the order has to be read again. Counts can be
+     * corrected once the increments are folded into the order by such an update.
      *
      * @param ctx the transaction context
      * @param ID the ID of the order being updated
@@ -95,91 +411,128 @@ public class OrderContract implements ContractInterface {
     @Transaction(intent = Transaction.TYPE.SUBMIT)
     public Order UpdateOrder(final Context ctx, final String ID, final String productName, final int quantity, final String deliveryDate, final String status,
                              final int price, final int leatherCount, final int metalCount) {
-        ChaincodeStub stub = ctx.getStub();
+        return transaction(ctx, () -> {
+            Order existing = readExistingOrder(ctx, ID);
+            Order requested = newOrder(ID, productName, quantity, deliveryDate, status, price, leatherCount, metalCount);
 
-        checkIfOrderExists(!OrderExists(ctx, ID), ID);
-        String updatedStatus = null;
-        try {
-            updatedStatus = updateStatus(new Order(ID, productName, quantity, deliveryDate, status, price, leatherCount, metalCount));
-        } catch (InvalidOrderException e) {
-            e.printStackTrace();
-        }
+            return updateOrder(ctx, existing, requested);
+        });
+    }
 
-        Order order = new Order(ID, productName, quantity, deliveryDate, updatedStatus, price, leatherCount, metalCount);
-        serialize(stub, order, ID);
-        return order;
+    /**
+     * Updates many orders in one transaction, with the same existence check and status validation
+     * as {@link #UpdateOrder} for each of them.
+     *
+     * @param ctx the transaction context
+     * @param ordersJSON JSON array of orders, at most {@link #MAX_BULK_ORDERS} of them
+     * @param mode one of {@link BulkModes}
+     * @return array with the outcome of each order, in request order
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String UpdateOrders(final Context ctx, final String ordersJSON, final String mode) {
+        return transaction(ctx, () -> {
+            boolean allOrNothing = parseBulkMode(mode) == BulkModes.ALL_OR_NOTHING;
+            OrderJsonWriter results = new OrderJsonWriter().startArray();
+
+            for (Order requested : parseBulkOrders(ctx, ordersJSON)) {
+                try {
+                    Order existing = readExistingOrder(ctx, requested.getID());
+                    results.writeSuccess(updateOrder(ctx, existing, requested));
+                } catch (ChaincodeException e) {
+                    if (allOrNothing) {
+                        throw e;
+                    }
+                    results.writeFailure(requested.getID(), errorOf(e), e.getMessage());
+                }
+            }
+
+            return results.endArray().toString();
+        });
     }
 
-    public String updateStatus(Order order) throws InvalidOrderException {
-        String updatedStatus = null;
-        if(order.getStatus().equals(OrderStatuses.ORDERED.toString())){
-            validateOrdered(order);
-            updatedStatus = OrderStatuses.COLLECTING_MATERIALS.toString();
-        } else if(order.getStatus().equals(OrderStatuses.COLLECTING_MATERIALS.toString()) && areMaterialsCollected(order)) {
-            //TODO status not updates
-            validateCollecting(order);
-            updatedStatus = OrderStatuses.MATERIALS_COLLECTED.toString();
-        } else if(order.getStatus().equals(OrderStatuses.COLLECTING_MATERIALS.toString()) && !areMaterialsCollected(order)){
-            validateCollecting(order);
-        } else if(order.getStatus().equals(OrderStatuses.MATERIALS_COLLECTED.toString())) {
-            validateCollected(order);
-            updatedStatus = OrderStatuses.MATERIALS_DELIVERED.toString();
-        } else if(order.getStatus().equals(OrderStatuses.MATERIALS_DELIVERED.toString())) {
-            validateDelivered(order);
-            updatedStatus = OrderStatuses.PRODUCED.toString();
-        } else {
-            throw new InvalidOrderException("Invalid status provided");
+    private Order readExistingOrder(Context ctx, String ID) {
+        byte[] existingState = getOrderState(ctx, ID);
+
+        checkIfOrderExists(existingState.length == 0, ID);
+        return readOrder(ctx, ID, existingState);
+    }
+
+    private Order updateOrder(Context ctx, Order existing, Order requested) {
+        String ID = requested.getID();
+        boolean indexed = isIndexed(ctx, ID);
+        List<String> deltas = new ArrayList<>();
+        Order current = foldMaterialDeltas(ctx, existing, deltas);
+        if (!deltas.isEmpty()
+                && (requested.getLeatherCount() != current.getLeatherCount() || requested.getMetalCount() != current.getMetalCount())) {
+            String errorMessage = String.format("Order %s has %d leather and %d metal including materials reported since it was read, not %d and %d",
+                    ID, current.getLeatherCount(), current.getMetalCount(), requested.getLeatherCount(), requested.getMetalCount());
+            throw new ChaincodeException(errorMessage, Errors.MATERIALS_CHANGED.toString());
         }
-        return updatedStatus;
+        String updatedStatus = nextStatus(ctx, requested);
+        // deleted only once the update can no longer fail, so a failed item of a bulk update keeps them
+        deltas.forEach(key -> delState(ctx, key));
+        Order order = new Order(ID, requested.getProductName(), requested.getQuantity(), requested.getDeliveryEpochDay(), updatedStatus,
+                requested.getPrice(), requested.getLeatherCount(), requested.getMetalCount());
+        writeOrder(ctx, order, existing);
+        indexOrder(ctx, indexed ? existing : null, order);
+        return order;
     }
 
-    private boolean areMaterialsCollected(Order order) {
-        return order.getLeatherCount() == order.getQuantity() && order.getMetalCount() == order.getQuantity();
+    /**
+     * Returns the status an order moves to, judging delivery dates against the system clock. Inside
+     * a transaction the transaction timestamp is used instead.
+     */
+    public String updateStatus(Order order) throws InvalidOrderException {
+        return StatusTransitions.next(order, today()).name();
     }
 
-    public boolean validateOrdered(Order order) throws InvalidOrderException {
-        if(!order.getProductName().equals("womanPurse")){
-            throw new InvalidOrderException("We do not have such product in our offer");
-        }
-        if(order.getPrice() != 1000){
-            throw new InvalidOrderException("Price per one product should be 1000$");
-        }
-        long daysToDelivery = getDaysToDelivery(getDeliveryDate(order.getDeliveryDate()));
-        if(order.getQuantity() / daysToDelivery > 100){
-            throw new InvalidOrderException("Quantity/days to delivery should be less than 100");
+    /**
+     * Moves an order to its next status, failing the transaction with {@code INVALID_ORDER} if the
+     * order may not leave its current one.
+     */
+    private String nextStatus(Context ctx, Order order) {
+        try {
+            return StatusTransitions.next(order, today(ctx)).name();
+        } catch (InvalidOrderException e) {
+            throw new ChaincodeException(e.getMessage(), Errors.INVALID_ORDER.toString());
         }
-        return true;
     }
 
-    private long getDaysToDelivery(LocalDate deliveryDate) {
-        return LocalDate.of(deliveryDate.getYear(), deliveryDate.getMonth(), deliveryDate.getDayOfMonth()).toEpochDay() - LocalDate.now().toEpochDay();
+    public boolean validateOrdered(Order order) throws InvalidOrderException {
+        StatusTransitions.check(order, today(), StatusTransitions.KNOWN_PRODUCT, StatusTransitions.LIST_PRICE,
+                StatusTransitions.ORDERED_DAILY_QUANTITY);
+        return true;
     }
 
     public void validateCollecting(Order order) throws InvalidOrderException {
-//        validateOrdered(order);
-        if(order.getQuantity() < 200){
-            throw new InvalidOrderException("Too small order");
-        }
-        if(order.getQuantity() / getDaysToDelivery(getDeliveryDate(order.getDeliveryDate())) > 100){
-            throw new InvalidOrderException("Too big quantity or delivery date too soon");
-        }
+        StatusTransitions.check(order, today(), StatusTransitions.MINIMUM_QUANTITY, StatusTransitions.DAILY_QUANTITY);
     }
 
     public void validateCollected(Order order) throws InvalidOrderException {
-//        validateCollecting(order);
-        if(getDaysToDelivery(getDeliveryDate(order.getDeliveryDate())) < 14){
-            throw new InvalidOrderException("Delivery date too soon");
-        }
+        StatusTransitions.check(order, today(), StatusTransitions.LEAD_TIME);
     }
 
     public void validateDelivered(Order order) throws InvalidOrderException {
-//        validateCollected(order);
-        if(!order.getProductName().equals("womanPurse")){
-            throw new InvalidOrderException("We do not have such product in our offer");
-        }
-        if(order.getQuantity() / getDaysToDelivery(getDeliveryDate(order.getDeliveryDate())) > 100){
-            throw new InvalidOrderException("Too big quantity or delivery date too soon");
+        StatusTransitions.check(order, today(), StatusTransitions.KNOWN_PRODUCT, StatusTransitions.DAILY_QUANTITY);
+    }
+
+    /**
+     * The current UTC day from the system clock, for the checks above when called outside a
+     * transaction.
+     */
+    private static long today() {
+        return LocalDate.now(ZoneOffset.UTC).toEpochDay();
+    }
+
+    /**
+     * The transaction's day, from the transaction timestamp rather than the peer's clock so that
+     * every endorser validates delivery dates against the same day.
+     */
+    private static int today(Context ctx) {
+        if (ctx instanceof OrderContext) {
+            return ((OrderContext) ctx).getToday();
         }
+        return EpochDays.of(ctx.getStub().getTxTimestamp());
     }
 
     /**
@@ -191,33 +544,659 @@ public class OrderContract implements ContractInterface {
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public boolean OrderExists(final Context ctx, final String ID) {
-        ChaincodeStub stub = ctx.getStub();
-        String orderJSON = stub.getStringState(ID);
-
-        return (orderJSON != null && !orderJSON.isEmpty());
+        return transaction(ctx, () -> getOrderState(ctx, ID).length > 0);
     }
 
     /**
-     * Retrieves all orders from the ledger.
+     * Retrieves all orders from the ledger, up to {@link #MAX_QUERY_RESULTS} of them.
+     * Larger ledgers must be read page by page with {@link #GetOrdersWithPagination}. Material
+     * counts are those of the last {@link #UpdateOrder}; increments reported since through
+     * {@link #AddMaterials} are only included by {@link #ReadOrder}.
      *
      * @param ctx the transaction context
      * @return array of all orders found on the ledger
      */
     @Transaction(intent = Transaction.TYPE.EVALUATE)
     public String GetAllOrders(final Context ctx) {
+        return transaction(ctx, () -> getAllOrders(ctx, OrderJsonWriter.ALL_PROPERTIES, ResponseEncoding.IDENTITY));
+    }
+
+    /**
+     * Retrieves the given properties of all orders from the ledger, as {@link #GetAllOrders} does,
+     * optionally compressed.
+     *
+     * @param ctx the transaction context
+     * @param fields comma separated order properties to return, such as {@code ID,status}, or
+     *               empty for all of them
+     * @param encoding {@code gzip} for the response to be gzip compressed and base64 encoded, or
+     *                 empty for plain JSON
+     * @return array of the projected orders, in the requested encoding
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetAllOrdersProjected(final Context ctx, final String fields, final String encoding) {
+        return transaction(ctx, () -> getAllOrders(ctx, parseProjection(fields), parseEncoding(encoding)));
+    }
+
+    private String getAllOrders(Context ctx, int properties, ResponseEncoding encoding) {
+        ChaincodeStub stub = ctx.getStub();
+
+        OrderJsonWriter writer = new OrderJsonWriter().project(properties).startArray();
+
+        QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(ORDER);
+        OrderProgressCursor progress = new OrderProgressCursor(stub.getStateByPartialCompositeKey(ORDER_PROGRESS));
+
+        // headers and progress records are read on this thread while the decoder pool encodes
+        // those already read, so page fetches from the peer overlap with the encoding
+        PrefetchingScan<byte[][], byte[]> records = new PrefetchingScan<>(results, result -> {
+            String orderId = orderIdOf(result);
+            if (SCANNED_ORDERS.sample()) {
+                SCANNED_ORDERS.log("GetAllOrders returned order {0}", orderId);
+            }
+            return new byte[][] {result.getValue(), progress.progressOf(orderId)};
+        }, record -> OrderJsonWriter.toRecordJson(record[0], record[1], properties));
+
+        while (records.hasNext()) {
+            if (writer.getRecordCount() == MAX_QUERY_RESULTS) {
+                String errorMessage = String.format("More than %d orders found, use GetOrdersWithPagination", MAX_QUERY_RESULTS);
+                throw new ChaincodeException(errorMessage, Errors.TOO_MANY_RESULTS.toString());
+            }
+            byte[] json = records.next();
+            long started = startSerialization(ctx);
+            writer.writeEncodedRecord(json);
+            stopSerialization(ctx, started, WRITE_JSON, json.length);
+        }
+
+        return encode(ctx, writer.endArray(), encoding);
+    }
+
+    /**
+     * Retrieves one page of orders from the ledger. Material counts are those of the last
+     * {@link #UpdateOrder}; increments reported since through {@link #AddMaterials} are only
+     * included by {@link #ReadOrder}.
+     *
+     * @param ctx the transaction context
+     * @param pageSize maximum number of orders to return, at most {@link #MAX_QUERY_RESULTS}
+     * @param bookmark bookmark returned with the previous page, or empty for the first page
+     * @return the orders of the page together with the bookmark of the next page
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetOrdersWithPagination(final Context ctx, final int pageSize, final String bookmark) {
+        return transaction(ctx, () -> getOrdersWithPagination(ctx, pageSize, bookmark, OrderJsonWriter.ALL_PROPERTIES, ResponseEncoding.IDENTITY));
+    }
+
+    /**
+     * Retrieves the given properties of one page of orders, as {@link #GetOrdersWithPagination}
+     * does, optionally compressed.
+     *
+     * @param ctx the transaction context
+     * @param pageSize maximum number of orders to return, at most {@link #MAX_QUERY_RESULTS}
+     * @param bookmark bookmark returned with the previous page, or empty for the first page
+     * @param fields comma separated order properties to return, or empty for all of them
+     * @param encoding {@code gzip} for a compressed response, or empty for plain JSON
+     * @return the projected orders of the page together with the bookmark of the next page, in the
+     *         requested encoding
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetOrdersWithPaginationProjected(final Context ctx, final int pageSize, final String bookmark, final String fields,
+                                                   final String encoding) {
+        return transaction(ctx, () -> getOrdersWithPagination(ctx, pageSize, bookmark, parseProjection(fields), parseEncoding(encoding)));
+    }
+
+    private String getOrdersWithPagination(Context ctx, int pageSize, String bookmark, int properties, ResponseEncoding encoding) {
         ChaincodeStub stub = ctx.getStub();
 
-        List<Order> queryResults = new ArrayList<>();
+        checkPageSize(pageSize);
+
+        OrderJsonWriter writer = new OrderJsonWriter().project(properties).startPage();
 
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "");
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getStateByPartialCompositeKeyWithPagination(new CompositeKey(ORDER), pageSize,
+                bookmark == null ? "" : bookmark);
 
         for (KeyValue result : results) {
-            Order order = genson.deserialize(result.getStringValue(), Order.class);
-            System.out.println(order);
-            queryResults.add(order);
+            byte[] progress = getState(ctx, progressKey(orderIdOf(result)));
+            long started = startSerialization(ctx);
+            writer.writeRecord(result.getValue(), progress);
+            stopSerialization(ctx, started, WRITE_JSON, result.getValue().length + progress.length);
         }
 
-        return genson.serialize(queryResults);
+        writer.endPage(results.getMetadata().getFetchedRecordsCount(), results.getMetadata().getBookmark());
+        return encode(ctx, writer, encoding);
+    }
+
+    /**
+     * Retrieves one page of the orders matching a CouchDB selector, such as
+     * {@code {"status":"ORDERED","deliveryDate":{"$lt":"2022-06-01"}}}. Only available with CouchDB
+     * as the state database. The packaged indexes cover {@code status}, {@code productName} and
+     * {@code deliveryDate}. Material counts are those of the last {@link #UpdateOrder}; increments
+     * reported since through {@link #AddMaterials} are only included by {@link #ReadOrder}.
+     *
+     * @param ctx the transaction context
+     * @param selector a CouchDB selector object over the order properties other than the material
+     *                 counts, which the query views do not hold
+     * @param pageSize maximum number of orders to return, at most {@link #MAX_QUERY_RESULTS}
+     * @param bookmark bookmark returned with the previous page, or empty for the first page
+     * @return the orders of the page together with the bookmark of the next page
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryOrders(final Context ctx, final String selector, final int pageSize, final String bookmark) {
+        return transaction(ctx, () -> queryOrders(ctx, selector, pageSize, bookmark, OrderJsonWriter.ALL_PROPERTIES, ResponseEncoding.IDENTITY));
+    }
+
+    /**
+     * Retrieves the given properties of one page of the orders matching a CouchDB selector, as
+     * {@link #QueryOrders} does, optionally compressed.
+     *
+     * @param ctx the transaction context
+     * @param selector a CouchDB selector object over the order properties
+     * @param pageSize maximum number of orders to return, at most {@link #MAX_QUERY_RESULTS}
+     * @param bookmark bookmark returned with the previous page, or empty for the first page
+     * @param fields comma separated order properties to return, or empty for all of them
+     * @param encoding {@code gzip} for a compressed response, or empty for plain JSON
+     * @return the projected orders of the page together with the bookmark of the next page, in the
+     *         requested encoding
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryOrdersProjected(final Context ctx, final String selector, final int pageSize, final String bookmark,
+                                       final String fields, final String encoding) {
+        return transaction(ctx, () -> queryOrders(ctx, selector, pageSize, bookmark, parseProjection(fields), parseEncoding(encoding)));
+    }
+
+    private String queryOrders(Context ctx, String selector, int pageSize, String bookmark, int properties, ResponseEncoding encoding) {
+        ChaincodeStub stub = ctx.getStub();
+
+        checkPageSize(pageSize);
+        if (selector == null || !OrderJsonParser.isObject(selector.getBytes(StandardCharsets.UTF_8))) {
+            throw new ChaincodeException("Selector must be a JSON object", Errors.INVALID_QUERY.toString());
+        }
+        if (selector.contains("\"leatherCount\"") || selector.contains("\"metalCount\"")) {
+            throw new ChaincodeException("Selector cannot match material counts", Errors.INVALID_QUERY.toString());
+        }
+
+        // the selector is nested rather than merged, so it cannot match or override docType
+        String query = "{\"selector\":{\"docType\":\"order\",\"$and\":[" + selector + "]}}";
+
+        OrderJsonWriter writer = new OrderJsonWriter().project(properties).startPage();
+
+        QueryResultsIteratorWithMetadata<KeyValue> results = stub.getQueryResultWithPagination(query, pageSize,
+                bookmark == null ? "" : bookmark);
+
+        for (KeyValue result : results) {
+            byte[] progress = getState(ctx, progressKey(orderIdOf(result)));
+            long started = startSerialization(ctx);
+            writer.writeRecord(OrderCodec.decode(result.getValue(), progress));
+            stopSerialization(ctx, started, PARSE_JSON, result.getValue().length);
+        }
+
+        writer.endPage(results.getMetadata().getFetchedRecordsCount(), results.getMetadata().getBookmark());
+        return encode(ctx, writer, encoding);
+    }
+
+    /**
+     * Retrieves all orders with the given status through the status index, in order of delivery
+     * date. Material counts are
+     * those of the last {@link #UpdateOrder}; increments reported since through
+     * {@link #AddMaterials} are only included by {@link #ReadOrder}.
+     *
+     * @param ctx the transaction context
+     * @param status one of {@link OrderStatuses}
+     * @return array of orders with the given status, at most {@link #MAX_QUERY_RESULTS} of them
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryOrdersByStatus(final Context ctx, final String status) {
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+
+            OrderJsonWriter writer = new OrderJsonWriter().startArray();
+
+            QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey(STATUS_INDEX, status);
+
+            for (KeyValue result : results) {
+                if (writer.getRecordCount() == MAX_QUERY_RESULTS) {
+                    String errorMessage = String.format("More than %d orders found with status %s", MAX_QUERY_RESULTS, status);
+                    throw new ChaincodeException(errorMessage, Errors.TOO_MANY_RESULTS.toString());
+                }
+                String orderId = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(2);
+                writeRecord(ctx, writer, orderId);
+            }
+
+            return writer.endArray().toString();
+        });
+    }
+
+    /**
+     * Retrieves all orders due for delivery between two dates through the due index, read one day
+     * at a time, since the shim only range scans simple keys. Each day is an unpaginated partial
+     * key query, so this can also run as part of a transaction that writes. Material counts are
+     * those of the last {@link #UpdateOrder}; increments reported since through
+     * {@link #AddMaterials} are only included by {@link #ReadOrder}.
+     *
+     * @param ctx the transaction context
+     * @param from first delivery date, inclusive, as yyyy-MM-dd
+     * @param to last delivery date, inclusive, as yyyy-MM-dd, at most {@link #MAX_DUE_RANGE_DAYS}
+     *           days from the first
+     * @return array of orders due in the range, at most {@link #MAX_QUERY_RESULTS} of them
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String QueryOrdersDueBetween(final Context ctx, final String from, final String to) {
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+
+            int fromDay = parseDeliveryDate(from);
+            int toDay = parseDeliveryDate(to);
+            if (toDay < fromDay) {
+                String errorMessage = String.format("Date range %s to %s must be ordered", from, to);
+                throw new ChaincodeException(errorMessage, Errors.INVALID_DELIVERY_DATE.toString());
+            }
+            if (toDay - fromDay >= MAX_DUE_RANGE_DAYS) {
+                String errorMessage = String.format("Date range %s to %s spans more than %d days", from, to, MAX_DUE_RANGE_DAYS);
+                throw new ChaincodeException(errorMessage, Errors.INVALID_DELIVERY_DATE.toString());
+            }
+
+            OrderJsonWriter writer = new OrderJsonWriter().startArray();
+
+            for (int day = fromDay; day <= toDay; day++) {
+                for (KeyValue result : stub.getStateByPartialCompositeKey(DUE_INDEX, EpochDays.toKey(day))) {
+                    if (writer.getRecordCount() == MAX_QUERY_RESULTS) {
+                        String errorMessage = String.format("More than %d orders due between %s and %s", MAX_QUERY_RESULTS, from, to);
+                        throw new ChaincodeException(errorMessage, Errors.TOO_MANY_RESULTS.toString());
+                    }
+                    writeRecord(ctx, writer, CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(1));
+                }
+            }
+
+            return writer.endArray().toString();
+        });
+    }
+
+    /**
+     * Deletes up to {@code limit} produced orders due before the given day from the world state,
+     * with their progress records, index entries and material increments, and records a digest of
+     * them under an {@link #ARCHIVE} key: their IDs and a SHA-256 hash over the canonical JSON of
+     * their final states, one per line. The orders remain auditable through the key history.
+     * <p>
+     * Produced orders are walked in order of delivery date through the status index, so a call
+     * examines only the orders it archives, however many produced orders are not yet due. Calls
+     * that archive {@code limit} orders are repeated until one archives fewer.
+     *
+     * @param ctx the transaction context
+     * @param olderThanEpochDay orders due before this day, in days since 1970-01-01, are archived
+     * @param limit maximum number of orders to archive, at most {@link #MAX_QUERY_RESULTS}
+     * @return the digest written, listing no orders if none were archived
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public String ArchiveOrders(final Context ctx, final int olderThanEpochDay, final int limit) {
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+
+            checkPageSize(limit);
+            String firstKeptDay;
+            try {
+                firstKeptDay = EpochDays.toKey(olderThanEpochDay);
+            } catch (IllegalArgumentException e) {
+                throw new ChaincodeException(e.getMessage(), Errors.INVALID_DELIVERY_DATE.toString());
+            }
+
+            List<String> orderIds = new ArrayList<>();
+            MessageDigest stateHash = sha256();
+            for (KeyValue entry : stub.getStateByPartialCompositeKey(STATUS_INDEX, OrderStatuses.PRODUCED.name())) {
+                List<String> attributes = CompositeKey.parseCompositeKey(entry.getKey()).getAttributes();
+                if (orderIds.size() == limit || attributes.get(1).compareTo(firstKeptDay) >= 0) {
+                    break;
+                }
+                String orderId = attributes.get(2);
+                byte[] header = getOrderState(ctx, orderId);
+                if (header.length == 0) {
+                    continue;
+                }
+                Order order = readOrder(ctx, orderId, header);
+                List<String> deltas = new ArrayList<>();
+                order = foldMaterialDeltas(ctx, order, deltas);
+                deltas.forEach(key -> delState(ctx, key));
+                removeOrder(ctx, order);
+                orderIds.add(orderId);
+                stateHash.update(OrderJsonWriter.toJson(order));
+                stateHash.update((byte) '\n');
+            }
+
+            byte[] digest = new OrderJsonWriter().writeArchiveDigest(orderIds, orderIds.isEmpty() ? null : stateHash.digest()).toBytes();
+            if (!orderIds.isEmpty()) {
+                putState(ctx, new CompositeKey(ARCHIVE, stub.getTxId()).toString(), digest);
+            }
+            return new String(digest, StandardCharsets.UTF_8);
+        });
+    }
+
+    /**
+     * Deletes an order and everything pointing at it from the world state.
+     */
+    private void removeOrder(Context ctx, Order order) {
+        String id = order.getID();
+        boolean indexed = isIndexed(ctx, id);
+        delState(ctx, indexed ? orderKey(id) : id);
+        delState(ctx, progressKey(id));
+        delState(ctx, viewKey(id));
+        if (indexed) {
+            indexOrder(ctx, order, null);
+        }
+    }
+
+    /**
+     * Whether an order is included in the secondary indexes and the status counts. Orders still
+     * stored under their bare ID predate both, and are added to them when they are moved to their
+     * {@link #ORDER} key, by {@link #MigrateOrders} or by an update.
+     */
+    private static boolean isIndexed(Context ctx, String id) {
+        return getState(ctx, orderKey(id)).length > 0;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Moves up to {@code batchSize} orders stored under their bare ID, as they were before orders
+     * had their own key namespace, to their {@link #ORDER} key. Meant to be submitted repeatedly
+     * after installing or upgrading until it returns 0. Individual orders are found under either key
+     * meanwhile, but order scans, the status and due date queries and {@link #GetOrderStats} only
+     * include the orders already moved, which are indexed and counted as they move. The call that finds no order left writes the
+     * {@link #ORDERS_MIGRATED} marker, which saves every later read of an order that does not exist
+     * the lookup of its bare ID.
+     *
+     * @param ctx the transaction context
+     * @param batchSize maximum number of orders to move, at most {@link #MAX_QUERY_RESULTS}
+     * @return the number of orders moved
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int MigrateOrders(final Context ctx, final int batchSize) {
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+
+            checkPageSize(batchSize);
+
+            int migrated = 0;
+            boolean complete = true;
+            for (KeyValue legacy : stub.getStateByRange("", "")) {
+                if (migrated == batchSize) {
+                    complete = false;
+                    break;
+                }
+                Order order = OrderCodec.decode(legacy.getValue());
+                putState(ctx, orderKey(legacy.getKey()), legacy.getValue());
+                putState(ctx, viewKey(legacy.getKey()), OrderJsonWriter.toQueryView(order));
+                delState(ctx, legacy.getKey());
+                indexOrder(ctx, null, order);
+                migrated++;
+            }
+
+            if (complete && getState(ctx, ORDERS_MIGRATED).length == 0) {
+                putState(ctx, ORDERS_MIGRATED, stub.getTxId().getBytes(StandardCharsets.UTF_8));
+            }
+            return migrated;
+        });
+    }
+
+    /**
+     * Counts the orders in each status as the last checkpoint plus all count changes written since.
+     *
+     * @param ctx the transaction context
+     * @return object mapping each status to its number of orders
+     */
+    @Transaction(intent = Transaction.TYPE.EVALUATE)
+    public String GetOrderStats(final Context ctx) {
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (OrderStatuses status : OrderStatuses.values()) {
+                counts.put(status.name(), 0L);
+            }
+            sumCounts(stub.getStateByPartialCompositeKey(STATUS_COUNT), counts);
+            sumCounts(stub.getStateByPartialCompositeKey(STATUS_COUNT_DELTA), counts);
+
+            return new OrderJsonWriter().writeCounts(counts).toString();
+        });
+    }
+
+    /**
+     * Folds up to {@link #MAX_COMPACTED_DELTAS} count changes into the per-status checkpoints and
+     * deletes them, keeping {@link #GetOrderStats} cheap. Meant to be submitted periodically; a run
+     * that races with order transactions fails its phantom read check and can simply be retried,
+     * while the order transactions themselves are never affected.
+     *
+     * @param ctx the transaction context
+     * @return the number of count changes folded
+     */
+    @Transaction(intent = Transaction.TYPE.SUBMIT)
+    public int CompactOrderStats(final Context ctx) {
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+
+            Map<String, Long> folded = new LinkedHashMap<>();
+            int compacted = 0;
+            for (KeyValue delta : stub.getStateByPartialCompositeKey(STATUS_COUNT_DELTA)) {
+                if (compacted == MAX_COMPACTED_DELTAS) {
+                    break;
+                }
+                String status = CompositeKey.parseCompositeKey(delta.getKey()).getAttributes().get(0);
+                folded.merge(status, parseCount(delta.getValue()), Long::sum);
+                delState(ctx, delta.getKey());
+                compacted++;
+            }
+
+            for (Map.Entry<String, Long> change : folded.entrySet()) {
+                String key = new CompositeKey(STATUS_COUNT, change.getKey()).toString();
+                byte[] checkpoint = getState(ctx, key);
+                long count = (checkpoint.length == 0 ? 0 : parseCount(checkpoint)) + change.getValue();
+                putState(ctx, key, Long.toString(count).getBytes(StandardCharsets.US_ASCII));
+            }
+
+            return compacted;
+        });
+    }
+
+    private static void sumCounts(QueryResultsIterator<KeyValue> results, Map<String, Long> counts) {
+        for (KeyValue result : results) {
+            String status = CompositeKey.parseCompositeKey(result.getKey()).getAttributes().get(0);
+            counts.merge(status, parseCount(result.getValue()), Long::sum);
+        }
+    }
+
+    private static long parseCount(byte[] value) {
+        return Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Records that an order left one status and entered another. Within an {@link OrderContext} the
+     * changes are netted per status and written once when the transaction ends.
+     */
+    private static void countStatusChange(Context ctx, String previousStatus, String status) {
+        if (Objects.equals(previousStatus, status)) {
+            return;
+        }
+        if (ctx instanceof OrderContext) {
+            Map<String, Integer> deltas = ((OrderContext) ctx).getStatusCountDeltas();
+            if (previousStatus != null) {
+                deltas.merge(previousStatus, -1, Integer::sum);
+            }
+            if (status != null) {
+                deltas.merge(status, 1, Integer::sum);
+            }
+        } else {
+            if (previousStatus != null) {
+                writeStatusCountDelta(ctx, previousStatus, -1);
+            }
+            if (status != null) {
+                writeStatusCountDelta(ctx, status, 1);
+            }
+        }
+    }
+
+    private static void writeStatusCountDelta(Context ctx, String status, int delta) {
+        if (delta != 0) {
+            String key = new CompositeKey(STATUS_COUNT_DELTA, status, ctx.getStub().getTxId()).toString();
+            putState(ctx, key, Integer.toString(delta).getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Adds the material increments reported for an order to its counts. Transactions that write the
+     * order with its full counts pass a list, to which the keys of the increments are added for them
+     * to delete. Increments already folded and deleted earlier in the transaction, as by an earlier
+     * item of a bulk update of the same order, are skipped, since the range query still returns them.
+     */
+    private static Order foldMaterialDeltas(Context ctx, Order order, List<String> folded) {
+        int leatherCount = order.getLeatherCount();
+        int metalCount = order.getMetalCount();
+        boolean found = false;
+
+        StateCache cache = ctx instanceof OrderContext ? ((OrderContext) ctx).getStateCache() : null;
+        for (KeyValue delta : ctx.getStub().getStateByPartialCompositeKey(MATERIALS_DELTA, order.getID())) {
+            if (cache != null && cache.isDeleted(delta.getKey())) {
+                continue;
+            }
+            String value = new String(delta.getValue(), StandardCharsets.US_ASCII);
+            int separator = value.indexOf(',');
+            leatherCount += Integer.parseInt(value.substring(0, separator));
+            metalCount += Integer.parseInt(value.substring(separator + 1));
+            found = true;
+            if (folded != null) {
+                folded.add(delta.getKey());
+            }
+        }
+
+        if (!found) {
+            return order;
+        }
+        return new Order(order.getID(), order.getProductName(), order.getQuantity(), order.getDeliveryEpochDay(), order.getStatus(),
+                order.getPrice(), leatherCount, metalCount);
+    }
+
+    /**
+     * Moves an order in the secondary indexes and the status counts from its previous state to its
+     * new one, either of which is null for an order being added or removed.
+     */
+    private void indexOrder(Context ctx, Order previous, Order order) {
+        updateIndex(ctx, previous == null ? null : statusIndexKey(previous), order == null ? null : statusIndexKey(order));
+        updateIndex(ctx, previous == null ? null : dueIndexKey(previous), order == null ? null : dueIndexKey(order));
+        countStatusChange(ctx, previous == null ? null : previous.getStatus(), order == null ? null : order.getStatus());
+    }
+
+    /**
+     * Moves the index entry of an order from its previous to its new key. Runs in the same
+     * transaction as the order write, so the index commits or fails together with the order.
+     */
+    private void updateIndex(Context ctx, String previousKey, String key) {
+        if (Objects.equals(previousKey, key)) {
+            return;
+        }
+        if (previousKey != null) {
+            delState(ctx, previousKey);
+        }
+        if (key != null) {
+            putState(ctx, key, INDEX_ENTRY_VALUE);
+        }
+    }
+
+    /**
+     * The status index key of an order, or null for an order without a status, which is not indexed.
+     */
+    private static String statusIndexKey(Order order) {
+        if (order.getStatus() == null) {
+            return null;
+        }
+        return new CompositeKey(STATUS_INDEX, order.getStatus(), EpochDays.toKey(order.getDeliveryEpochDay()), order.getID()).toString();
+    }
+
+    private static String dueIndexKey(Order order) {
+        return new CompositeKey(DUE_INDEX, EpochDays.toKey(order.getDeliveryEpochDay()), order.getID()).toString();
+    }
+
+    private Order newOrder(String ID, String productName, int quantity, String deliveryDate, String status, int price, int leatherCount, int metalCount) {
+        try {
+            return new Order(ID, productName, quantity, deliveryDate, status, price, leatherCount, metalCount);
+        } catch (IllegalArgumentException e) {
+            throw new ChaincodeException(e.getMessage(), Errors.INVALID_DELIVERY_DATE.toString());
+        }
+    }
+
+    private int parseProjection(String fields) {
+        try {
+            return OrderJsonWriter.projectionOf(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ChaincodeException(e.getMessage(), Errors.INVALID_QUERY.toString());
+        }
+    }
+
+    private ResponseEncoding parseEncoding(String encoding) {
+        ResponseEncoding responseEncoding = ResponseEncoding.of(encoding);
+        if (responseEncoding == null) {
+            String errorMessage = String.format("Unknown response encoding %s", encoding);
+            throw new ChaincodeException(errorMessage, Errors.INVALID_QUERY.toString());
+        }
+        return responseEncoding;
+    }
+
+    private static String encode(Context ctx, OrderJsonWriter writer, ResponseEncoding encoding) {
+        if (encoding == ResponseEncoding.IDENTITY) {
+            return writer.toString();
+        }
+        long started = startSerialization(ctx);
+        String response = encoding.encode(writer);
+        stopSerialization(ctx, started, COMPRESS, writer.size());
+        return response;
+    }
+
+    private BulkModes parseBulkMode(String mode) {
+        try {
+            return BulkModes.valueOf(mode);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            String errorMessage = String.format("Unknown bulk mode %s", mode);
+            throw new ChaincodeException(errorMessage, Errors.INVALID_BULK_REQUEST.toString());
+        }
+    }
+
+    /**
+     * Parses the orders of a bulk request. Requests that are malformed, contain an invalid delivery
+     * date or exceed {@link #MAX_BULK_ORDERS} are rejected as a whole.
+     */
+    private List<Order> parseBulkOrders(Context ctx, String ordersJSON) {
+        List<Order> orders;
+        try {
+            byte[] json = ordersJSON.getBytes(StandardCharsets.UTF_8);
+            long started = startSerialization(ctx);
+            orders = OrderJsonParser.parseArray(json);
+            stopSerialization(ctx, started, PARSE_JSON, json.length);
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new ChaincodeException(e.getMessage(), Errors.INVALID_BULK_REQUEST.toString());
+        }
+        if (orders.size() > MAX_BULK_ORDERS) {
+            String errorMessage = String.format("At most %d orders can be sent in one request", MAX_BULK_ORDERS);
+            throw new ChaincodeException(errorMessage, Errors.INVALID_BULK_REQUEST.toString());
+        }
+        return orders;
+    }
+
+    private static String errorOf(ChaincodeException e) {
+        return e.getPayload() == null ? null : new String(e.getPayload(), StandardCharsets.UTF_8);
+    }
+
+    private int parseDeliveryDate(String date) {
+        try {
+            return EpochDays.parse(date);
+        } catch (IllegalArgumentException e) {
+            throw new ChaincodeException(e.getMessage(), Errors.INVALID_DELIVERY_DATE.toString());
+        }
+    }
+
+    private void checkPageSize(int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_QUERY_RESULTS) {
+            String errorMessage = String.format("Page size must be between 1 and %d", MAX_QUERY_RESULTS);
+            throw new ChaincodeException(errorMessage, Errors.INVALID_PAGE_SIZE.toString());
+        }
     }
 
     private void checkAssetAlreadyExists(Context ctx, String assetId) {
@@ -230,13 +1209,142 @@ public class OrderContract implements ContractInterface {
     private void checkIfOrderExists(boolean ctx, String assetId) {
         if (ctx){
             String errorMessage = String.format("Order %s does not exist", assetId);
-            System.out.println(errorMessage);
+            LOG.fine(errorMessage);
             throw new ChaincodeException(errorMessage, Errors.ORDER_NOT_FOUND.toString());
         }
     }
 
-    private void serialize(ChaincodeStub stub, Object obj, String id){
-        String sortedJson = genson.serialize(obj);
-        stub.putStringState(id,sortedJson);
+    /**
+     * Writes an order as its header under its {@link #ORDER} key and its progress record, and
+     * refreshes its {@link #ORDER_VIEW} document. When updating, a record whose encoding has not
+     * changed is not written again, and the view only when the header or status changed, so an
+     * update that only reports materials writes just the small progress record.
+     *
+     * @param previous the order as it was before the update, or null if it is being created
+     */
+    private void writeOrder(Context ctx, Order order, Order previous) {
+        String id = order.getID();
+        String orderKey = orderKey(id);
+        boolean created = previous == null;
+        long started = startSerialization(ctx);
+        byte[] header = OrderCodec.encodeHeader(order);
+        byte[] progress = OrderCodec.encodeProgress(order);
+        stopSerialization(ctx, started, ENCODE, header.length + progress.length);
+        byte[] stored = created ? new byte[0] : getState(ctx, orderKey);
+        boolean viewChanged = created || !Objects.equals(previous.getStatus(), order.getStatus());
+        if (!Arrays.equals(header, stored)) {
+            viewChanged = true;
+            putState(ctx, orderKey, header);
+            if (!created && stored.length == 0) {
+                // the order was read from its bare ID and moves into the namespace
+                delState(ctx, id);
+            }
+        }
+        String progressKey = progressKey(id);
+        if (created || !Arrays.equals(progress, getState(ctx, progressKey))) {
+            putState(ctx, progressKey, progress);
+        }
+        if (viewChanged) {
+            started = startSerialization(ctx);
+            byte[] view = OrderJsonWriter.toQueryView(order);
+            stopSerialization(ctx, started, WRITE_JSON, view.length);
+            putState(ctx, viewKey(id), view);
+        }
+    }
+
+    private Order readOrder(Context ctx, String id, byte[] header) {
+        byte[] progress = getState(ctx, progressKey(id));
+        long started = startSerialization(ctx);
+        Order order = OrderCodec.decode(header, progress);
+        stopSerialization(ctx, started, DECODE, header.length + progress.length);
+        return order;
+    }
+
+    /**
+     * Reads an order and writes it as the next record of a query result.
+     */
+    private void writeRecord(Context ctx, OrderJsonWriter writer, String orderId) {
+        byte[] header = getOrderState(ctx, orderId);
+        byte[] progress = getState(ctx, progressKey(orderId));
+        long started = startSerialization(ctx);
+        writer.writeRecord(header, progress);
+        stopSerialization(ctx, started, WRITE_JSON, header.length + progress.length);
+    }
+
+    private static long startSerialization(Context ctx) {
+        return ctx instanceof OrderContext ? ((OrderContext) ctx).startSerialization() : 0L;
+    }
+
+    private static void stopSerialization(Context ctx, long started, String operation, int bytes) {
+        if (ctx instanceof OrderContext) {
+            ((OrderContext) ctx).stopSerialization(started, operation, bytes);
+        }
+    }
+
+    /**
+     * Reads the header of an order, falling back to the bare ID for orders not yet moved by
+     * {@link #MigrateOrders} until the migration is complete.
+     *
+     * @return the header, or an empty array if the order does not exist
+     */
+    private byte[] getOrderState(Context ctx, String id) {
+        byte[] value = getState(ctx, orderKey(id));
+        if (value.length > 0 || isOrdersMigrated(ctx)) {
+            return value;
+        }
+        return getState(ctx, id);
+    }
+
+    private boolean isOrdersMigrated(Context ctx) {
+        if (!ordersMigrated && getState(ctx, ORDERS_MIGRATED).length > 0) {
+            ordersMigrated = true;
+        }
+        return ordersMigrated;
+    }
+
+    private static String orderKey(String id) {
+        return new CompositeKey(ORDER, id).toString();
+    }
+
+    private static String orderIdOf(KeyValue order) {
+        return CompositeKey.parseCompositeKey(order.getKey()).getAttributes().get(0);
+    }
+
+    private static String progressKey(String id) {
+        return new CompositeKey(ORDER_PROGRESS, id).toString();
+    }
+
+    private static String viewKey(String id) {
+        return new CompositeKey(ORDER_VIEW, id).toString();
+    }
+
+    /**
+     * Reads a key through the {@link StateCache} of an {@link OrderContext}, or straight from the
+     * stub for any other context.
+     *
+     * @return the value, or an empty array if the key does not exist
+     */
+    private static byte[] getState(Context ctx, String key) {
+        if (ctx instanceof OrderContext) {
+            return ((OrderContext) ctx).getStateCache().getState(key);
+        }
+        byte[] value = ctx.getStub().getState(key);
+        return value == null ? new byte[0] : value;
+    }
+
+    private static void putState(Context ctx, String key, byte[] value) {
+        if (ctx instanceof OrderContext) {
+            ((OrderContext) ctx).getStateCache().putState(key, value);
+        } else {
+            ctx.getStub().putState(key, value);
+        }
+    }
+
+    private static void delState(Context ctx, String key) {
+        if (ctx instanceof OrderContext) {
+            ((OrderContext) ctx).getStateCache().delState(key);
+        } else {
+            ctx.getStub().delState(key);
+        }
     }
 }
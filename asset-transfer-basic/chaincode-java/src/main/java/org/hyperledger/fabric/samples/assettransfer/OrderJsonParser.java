@@ -0,0 +1,366 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses the JSON form of an order straight from UTF-8 bytes, without reflection and without
+ * decoding the document into an intermediate {@code String}. Property names are matched in place;
+ * unknown properties are skipped.
+ */
+final class OrderJsonParser {
+    private static final byte[][] PROPERTIES = {
+            ascii("iD"), ascii("productName"), ascii("quantity"), ascii("deliveryDate"),
+            ascii("status"), ascii("price"), ascii("leatherCount"), ascii("metalCount")
+    };
+    private static final int ID = 0;
+    private static final int PRODUCT_NAME = 1;
+    private static final int QUANTITY = 2;
+    private static final int DELIVERY_DATE = 3;
+    private static final int STATUS = 4;
+    private static final int PRICE = 5;
+    private static final int LEATHER_COUNT = 6;
+    private static final int METAL_COUNT = 7;
+
+    private final byte[] json;
+    private int position;
+
+    private OrderJsonParser(byte[] json) {
+        this.json = json;
+    }
+
+    static Order parse(byte[] json) {
+        return new OrderJsonParser(json).parseOrder();
+    }
+
+    /**
+     * Parses a JSON array of orders.
+     *
+     * @throws IllegalStateException if the array is malformed
+     * @throws IllegalArgumentException if an order has an invalid delivery date
+     */
+    static List<Order> parseArray(byte[] json) {
+        return new OrderJsonParser(json).parseOrders();
+    }
+
+    /**
+     * Whether the bytes hold a single JSON object with balanced brackets and terminated strings,
+     * and nothing else but whitespace.
+     */
+    static boolean isObject(byte[] json) {
+        OrderJsonParser parser = new OrderJsonParser(json);
+        try {
+            if (parser.peek() != '{') {
+                return false;
+            }
+            parser.skipValue();
+            parser.skipWhitespace();
+            return parser.position == json.length;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private List<Order> parseOrders() {
+        List<Order> orders = new ArrayList<>();
+        expect('[');
+        if (peek() == ']') {
+            position++;
+            return orders;
+        }
+        do {
+            orders.add(parseOrder());
+        } while (next() == ',');
+        position--;
+        expect(']');
+        return orders;
+    }
+
+    private Order parseOrder() {
+        String id = null;
+        String productName = null;
+        int quantity = 0;
+        String deliveryDate = null;
+        String status = null;
+        int price = 0;
+        int leatherCount = 0;
+        int metalCount = 0;
+
+        expect('{');
+        if (peek() == '}') {
+            position++;
+        } else {
+            do {
+                int property = readPropertyName();
+                expect(':');
+                switch (property) {
+                    case ID:
+                        id = readString();
+                        break;
+                    case PRODUCT_NAME:
+                        productName = readString();
+                        break;
+                    case QUANTITY:
+                        quantity = readInt();
+                        break;
+                    case DELIVERY_DATE:
+                        deliveryDate = readString();
+                        break;
+                    case STATUS:
+                        status = readString();
+                        break;
+                    case PRICE:
+                        price = readInt();
+                        break;
+                    case LEATHER_COUNT:
+                        leatherCount = readInt();
+                        break;
+                    case METAL_COUNT:
+                        metalCount = readInt();
+                        break;
+                    default:
+                        skipValue();
+                }
+            } while (next() == ',');
+            position--;
+            expect('}');
+        }
+
+        return new Order(id, productName, quantity, deliveryDate, status, price, leatherCount, metalCount);
+    }
+
+    /**
+     * Reads a property name and returns its index in {@link #PROPERTIES}, or -1 if it is not an
+     * order property.
+     */
+    private int readPropertyName() {
+        expect('"');
+        int start = position;
+        while (position < json.length && json[position] != '"') {
+            if (json[position] == '\\') {
+                position = start - 1;
+                return indexOf(readString().getBytes(StandardCharsets.UTF_8));
+            }
+            position++;
+        }
+        int end = position;
+        expectRaw('"');
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            if (regionEquals(start, end, PROPERTIES[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String readString() {
+        skipWhitespace();
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return null;
+        }
+        expect('"');
+        int start = position;
+        while (position < json.length && json[position] != '"' && json[position] != '\\') {
+            position++;
+        }
+        if (position < json.length && json[position] == '"') {
+            return new String(json, start, position++ - start, StandardCharsets.UTF_8);
+        }
+        return readEscapedString(start);
+    }
+
+    private String readEscapedString(int start) {
+        StringBuilder value = new StringBuilder(new String(json, start, position - start, StandardCharsets.UTF_8));
+        while (true) {
+            if (position >= json.length) {
+                throw malformed();
+            }
+            byte b = json[position++];
+            if (b == '"') {
+                return value.toString();
+            }
+            if (b != '\\') {
+                int runStart = position - 1;
+                while (position < json.length && json[position] != '"' && json[position] != '\\') {
+                    position++;
+                }
+                value.append(new String(json, runStart, position - runStart, StandardCharsets.UTF_8));
+                continue;
+            }
+            if (position >= json.length) {
+                throw malformed();
+            }
+            byte escape = json[position++];
+            switch (escape) {
+                case '"':
+                case '\\':
+                case '/':
+                    value.append((char) escape);
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'u':
+                    value.append(readHexChar());
+                    break;
+                default:
+                    throw malformed();
+            }
+        }
+    }
+
+    private char readHexChar() {
+        if (position + 4 > json.length) {
+            throw malformed();
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(json[position++], 16);
+            if (digit < 0) {
+                throw malformed();
+            }
+            value = value * 16 + digit;
+        }
+        return (char) value;
+    }
+
+    private int readInt() {
+        skipWhitespace();
+        if (peek() == 'n') {
+            expectLiteral("null");
+            return 0;
+        }
+        boolean negative = peek() == '-';
+        if (negative) {
+            position++;
+        }
+        int start = position;
+        long value = 0;
+        while (position < json.length && json[position] >= '0' && json[position] <= '9') {
+            value = value * 10 + (json[position++] - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw malformed();
+            }
+        }
+        if (position == start) {
+            throw malformed();
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw malformed();
+        }
+        return (int) value;
+    }
+
+    private void skipValue() {
+        skipWhitespace();
+        byte b = peek();
+        if (b == '"') {
+            readString();
+        } else if (b == '{' || b == '[') {
+            int depth = 0;
+            do {
+                b = json[position++];
+                if (b == '"') {
+                    position--;
+                    readString();
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            } while (depth > 0 && position < json.length);
+            if (depth > 0) {
+                throw malformed();
+            }
+        } else {
+            while (position < json.length && json[position] != ',' && json[position] != '}') {
+                position++;
+            }
+        }
+    }
+
+    private int indexOf(byte[] name) {
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            if (Arrays.equals(PROPERTIES[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionEquals(int start, int end, byte[] name) {
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (json[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void expectLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            expectRaw(literal.charAt(i));
+        }
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        expectRaw(c);
+    }
+
+    private void expectRaw(char c) {
+        if (position >= json.length || json[position] != c) {
+            throw malformed();
+        }
+        position++;
+    }
+
+    private byte next() {
+        skipWhitespace();
+        if (position >= json.length) {
+            throw malformed();
+        }
+        return json[position++];
+    }
+
+    private byte peek() {
+        skipWhitespace();
+        if (position >= json.length) {
+            throw malformed();
+        }
+        return json[position];
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length && (json[position] == ' ' || json[position] == '\t' || json[position] == '\n' || json[position] == '\r')) {
+            position++;
+        }
+    }
+
+    private IllegalStateException malformed() {
+        return new IllegalStateException(String.format("Malformed order JSON at offset %d", position));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
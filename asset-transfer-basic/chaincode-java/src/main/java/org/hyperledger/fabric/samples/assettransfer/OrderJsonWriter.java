@@ -0,0 +1,524 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes query results into one growing buffer as the ledger iterator advances, so a query
+ * holds a single copy of its response instead of a list of decoded orders plus their re-encoding.
+ * <p>
+ * Orders are written without reflection in canonical form: properties sorted by name, no
+ * whitespace and explicit nulls, matching what Genson produced for {@link Order}. The output
+ * depends only on the order, so every endorsing peer produces identical bytes.
+ * <p>
+ * A writer can be limited to a projection of the order properties, given as a bit set over
+ * {@link #PROPERTY_NAMES}. Projected orders keep the canonical property order.
+ */
+final class OrderJsonWriter {
+    /**
+     * Names of the order properties in canonical order. Bit {@code i} of a projection selects
+     * property {@code i}.
+     */
+    static final String[] PROPERTY_NAMES = {"deliveryDate", "iD", "leatherCount", "metalCount", "price", "productName",
+            "quantity", "status"};
+
+    /**
+     * The projection of all order properties.
+     */
+    static final int ALL_PROPERTIES = (1 << PROPERTY_NAMES.length) - 1;
+
+    /**
+     * The projection written to query views: every property but leatherCount and metalCount.
+     */
+    static final int VIEW_PROPERTIES = ALL_PROPERTIES & ~(1 << 2 | 1 << 3);
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final byte[] PAGE_START = ascii("{\"records\":[");
+    private static final byte[] FETCHED_RECORDS_COUNT = ascii("],\"fetchedRecordsCount\":");
+    private static final byte[] BOOKMARK = ascii(",\"bookmark\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] DELIVERY_DATE = ascii("\"deliveryDate\":");
+    private static final byte[] VIEW_DOC_TYPE = ascii("{\"docType\":\"order\",");
+    private static final byte[] ID = ascii(",\"iD\":");
+    private static final byte[] LEATHER_COUNT = ascii(",\"leatherCount\":");
+    private static final byte[] METAL_COUNT = ascii(",\"metalCount\":");
+    private static final byte[] PRICE = ascii(",\"price\":");
+    private static final byte[] PRODUCT_NAME = ascii(",\"productName\":");
+    private static final byte[] QUANTITY = ascii(",\"quantity\":");
+    private static final byte[] STATUS = ascii(",\"status\":");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+    private static final byte[] RESULT_ID = ascii("{\"iD\":");
+    private static final byte[] RESULT_ORDER = ascii(",\"order\":");
+    private static final byte[] RESULT_ERROR = ascii(",\"error\":");
+    private static final byte[] RESULT_MESSAGE = ascii(",\"message\":");
+    private static final byte[] DIGEST_ORDER_IDS = ascii("{\"orderIds\":[");
+    private static final byte[] DIGEST_STATE_HASH = ascii("],\"stateHash\":");
+    private static final byte[][] PROPERTIES = new byte[PROPERTY_NAMES.length][];
+
+    static {
+        for (int i = 0; i < PROPERTY_NAMES.length; i++) {
+            PROPERTIES[i] = ascii("\"" + PROPERTY_NAMES[i] + "\":");
+        }
+    }
+
+    private byte[] buffer;
+    private int size;
+    private int recordCount;
+    private int properties = ALL_PROPERTIES;
+
+    OrderJsonWriter() {
+        this(INITIAL_CAPACITY);
+    }
+
+    private OrderJsonWriter(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Encodes a single order as canonical JSON.
+     */
+    static byte[] toJson(Order order) {
+        OrderJsonWriter writer = new OrderJsonWriter(256);
+        writer.writeOrder(order);
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    /**
+     * Encodes an order as the document CouchDB rich queries run against: its canonical JSON
+     * preceded by {@code "docType":"order"}, without the material counts, so that an update that
+     * only reports materials leaves the view as it is.
+     */
+    static byte[] toQueryView(Order order) {
+        OrderJsonWriter writer = new OrderJsonWriter(256).project(VIEW_PROPERTIES);
+        writer.write(VIEW_DOC_TYPE);
+        writer.writeOrderProperties(order);
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    /**
+     * Encodes an order stored as a header and a progress record as {@link #writeRecord(byte[], byte[])}
+     * would append it, for {@link #writeEncodedRecord}.
+     */
+    static byte[] toRecordJson(byte[] header, byte[] progress) {
+        return toRecordJson(header, progress, ALL_PROPERTIES);
+    }
+
+    /**
+     * Encodes the projection of an order stored as a header and a progress record, for
+     * {@link #writeEncodedRecord}.
+     */
+    static byte[] toRecordJson(byte[] header, byte[] progress, int properties) {
+        OrderJsonWriter writer = new OrderJsonWriter(256).project(properties);
+        writer.writeRecord(header, progress);
+        return Arrays.copyOf(writer.buffer, writer.size);
+    }
+
+    /**
+     * Parses a comma separated list of order property names into a projection. Names are matched
+     * ignoring case, so {@code ID} selects {@code iD}. No names at all select every property.
+     *
+     * @throws IllegalArgumentException if a name is not that of an order property
+     */
+    static int projectionOf(String names) {
+        int properties = 0;
+        if (names != null) {
+            for (String name : names.split(",")) {
+                name = name.trim();
+                if (!name.isEmpty()) {
+                    properties |= 1 << propertyIndex(name);
+                }
+            }
+        }
+        return properties == 0 ? ALL_PROPERTIES : properties;
+    }
+
+    private static int propertyIndex(String name) {
+        for (int i = 0; i < PROPERTY_NAMES.length; i++) {
+            if (PROPERTY_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown order property %s", name));
+    }
+
+    /**
+     * Limits the orders written from now on to the given properties.
+     */
+    OrderJsonWriter project(int properties) {
+        this.properties = properties;
+        return this;
+    }
+
+    OrderJsonWriter startArray() {
+        write('[');
+        return this;
+    }
+
+    OrderJsonWriter endArray() {
+        write(']');
+        return this;
+    }
+
+    OrderJsonWriter startPage() {
+        write(PAGE_START);
+        return this;
+    }
+
+    OrderJsonWriter endPage(int fetchedRecordsCount, String bookmark) {
+        write(FETCHED_RECORDS_COUNT);
+        writeInt(fetchedRecordsCount);
+        write(BOOKMARK);
+        writeString(bookmark == null ? "" : bookmark);
+        write('}');
+        return this;
+    }
+
+    /**
+     * Appends an order as stored in the world state. Legacy JSON records are parsed and written
+     * again like any other order, so the response is canonical whatever their layout, and a
+     * record that is not a valid order fails the query instead of being copied into it.
+     */
+    void writeRecord(byte[] value) {
+        writeRecord(OrderCodec.decode(value));
+    }
+
+    /**
+     * Appends an order stored as a header and a progress record. Orders without a progress record
+     * are written as in {@link #writeRecord(byte[])}.
+     */
+    void writeRecord(byte[] header, byte[] progress) {
+        if (progress.length == 0) {
+            writeRecord(header);
+        } else {
+            writeRecord(OrderCodec.decode(header, progress));
+        }
+    }
+
+    /**
+     * Appends a decoded order.
+     */
+    void writeRecord(Order order) {
+        if (recordCount > 0) {
+            write(',');
+        }
+        writeOrder(order);
+        recordCount++;
+    }
+
+    /**
+     * Appends a record encoded by {@link #toRecordJson}.
+     */
+    void writeEncodedRecord(byte[] json) {
+        if (recordCount > 0) {
+            write(',');
+        }
+        write(json);
+        recordCount++;
+    }
+
+    /**
+     * Appends the outcome of a bulk item that succeeded: {@code {"iD":...,"order":{...}}}.
+     */
+    void writeSuccess(Order order) {
+        if (recordCount > 0) {
+            write(',');
+        }
+        write(RESULT_ID);
+        writeString(order.getID());
+        write(RESULT_ORDER);
+        writeOrder(order);
+        write('}');
+        recordCount++;
+    }
+
+    /**
+     * Appends the outcome of a bulk item that failed: {@code {"iD":...,"error":...,"message":...}}.
+     */
+    void writeFailure(String id, String error, String message) {
+        if (recordCount > 0) {
+            write(',');
+        }
+        write(RESULT_ID);
+        writeString(id);
+        write(RESULT_ERROR);
+        writeString(error);
+        write(RESULT_MESSAGE);
+        writeString(message);
+        write('}');
+        recordCount++;
+    }
+
+    /**
+     * Writes a JSON object mapping each name to its count, in the iteration order of the map.
+     */
+    OrderJsonWriter writeCounts(Map<String, Long> counts) {
+        write('{');
+        boolean first = true;
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            if (!first) {
+                write(',');
+            }
+            writeString(count.getKey());
+            write(':');
+            write(ascii(Long.toString(count.getValue())));
+            first = false;
+        }
+        write('}');
+        return this;
+    }
+
+    /**
+     * Writes an archive digest: {@code {"orderIds":[...],"stateHash":...}} with the hash in hex, or
+     * null without one.
+     */
+    OrderJsonWriter writeArchiveDigest(List<String> orderIds, byte[] stateHash) {
+        write(DIGEST_ORDER_IDS);
+        for (int i = 0; i < orderIds.size(); i++) {
+            if (i > 0) {
+                write(',');
+            }
+            writeString(orderIds.get(i));
+        }
+        write(DIGEST_STATE_HASH);
+        if (stateHash == null) {
+            write(NULL);
+        } else {
+            ensureCapacity(size + stateHash.length * 2 + 2);
+            buffer[size++] = '"';
+            for (byte b : stateHash) {
+                buffer[size++] = HEX[(b >> 4) & 0xf];
+                buffer[size++] = HEX[b & 0xf];
+            }
+            buffer[size++] = '"';
+        }
+        write('}');
+        return this;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    byte[] toBytes() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Writes what was written so far to a stream, without copying it first.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private void writeOrder(Order order) {
+        write('{');
+        writeOrderProperties(order);
+    }
+
+    private void writeOrderProperties(Order order) {
+        if (properties != ALL_PROPERTIES) {
+            writeProjectedProperties(order);
+            return;
+        }
+        write(DELIVERY_DATE);
+        writeDate(order);
+        write(ID);
+        writeString(order.getID());
+        write(LEATHER_COUNT);
+        writeInt(order.getLeatherCount());
+        write(METAL_COUNT);
+        writeInt(order.getMetalCount());
+        write(PRICE);
+        writeInt(order.getPrice());
+        write(PRODUCT_NAME);
+        writeString(order.getProductName());
+        write(QUANTITY);
+        writeInt(order.getQuantity());
+        write(STATUS);
+        writeString(order.getStatus());
+        write('}');
+    }
+
+    private void writeProjectedProperties(Order order) {
+        boolean first = true;
+        for (int i = 0; i < PROPERTIES.length; i++) {
+            if ((properties & (1 << i)) == 0) {
+                continue;
+            }
+            if (!first) {
+                write(',');
+            }
+            write(PROPERTIES[i]);
+            writeProperty(order, i);
+            first = false;
+        }
+        write('}');
+    }
+
+    private void writeProperty(Order order, int property) {
+        switch (property) {
+            case 0:
+                writeDate(order);
+                break;
+            case 1:
+                writeString(order.getID());
+                break;
+            case 2:
+                writeInt(order.getLeatherCount());
+                break;
+            case 3:
+                writeInt(order.getMetalCount());
+                break;
+            case 4:
+                writeInt(order.getPrice());
+                break;
+            case 5:
+                writeString(order.getProductName());
+                break;
+            case 6:
+                writeInt(order.getQuantity());
+                break;
+            default:
+                writeString(order.getStatus());
+        }
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            write(NULL);
+            return;
+        }
+        ensureCapacity(size + value.length() * 6 + 2);
+        buffer[size++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[size++] = '\\';
+                buffer[size++] = (byte) c;
+            } else if (c < 0x20) {
+                writeControl(c);
+            } else if (c < 0x80) {
+                buffer[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xc0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                buffer[size++] = (byte) (0xe0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[size++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        buffer[size++] = '"';
+    }
+
+    /**
+     * Writes the delivery date from its epoch day, without formatting it into a string.
+     */
+    private void writeDate(Order order) {
+        int date = EpochDays.toDigits(order.getDeliveryEpochDay());
+        if (date < 0) {
+            writeString(order.getDeliveryDate());
+            return;
+        }
+        ensureCapacity(size + 12);
+        buffer[size] = '"';
+        for (int i = 10; i > 0; i--) {
+            if (i == 5 || i == 8) {
+                buffer[size + i] = '-';
+            } else {
+                buffer[size + i] = (byte) ('0' + date % 10);
+                date /= 10;
+            }
+        }
+        buffer[size + 11] = '"';
+        size += 12;
+    }
+
+    private void writeControl(char c) {
+        buffer[size++] = '\\';
+        switch (c) {
+            case '\b':
+                buffer[size++] = 'b';
+                break;
+            case '\f':
+                buffer[size++] = 'f';
+                break;
+            case '\n':
+                buffer[size++] = 'n';
+                break;
+            case '\r':
+                buffer[size++] = 'r';
+                break;
+            case '\t':
+                buffer[size++] = 't';
+                break;
+            default:
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = HEX[c >> 4];
+                buffer[size++] = HEX[c & 0xf];
+        }
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(size + 11);
+        if (value == Integer.MIN_VALUE) {
+            write(ascii(Integer.toString(value)));
+            return;
+        }
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        size += digits;
+    }
+
+    private void write(int b) {
+        ensureCapacity(size + 1);
+        buffer[size++] = (byte) b;
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(size + bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
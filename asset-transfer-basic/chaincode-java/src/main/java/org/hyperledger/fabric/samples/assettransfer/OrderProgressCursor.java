@@ -0,0 +1,71 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+
+import java.util.Iterator;
+
+/**
+ * Finds the progress records of orders while a range scan walks their headers. Headers and progress
+ * records both come back sorted by order ID, so one scan over the progress records advanced in step
+ * with the headers replaces a lookup per order.
+ */
+final class OrderProgressCursor {
+    private static final byte[] MISSING = new byte[0];
+
+    private final Iterator<KeyValue> progress;
+    private String nextId;
+    private byte[] nextValue;
+
+    OrderProgressCursor(Iterable<KeyValue> progress) {
+        this.progress = progress.iterator();
+        advance();
+    }
+
+    /**
+     * Returns the progress record of an order. Orders must be asked for in ascending ID order.
+     *
+     * @return the record, or an empty array if the order has none
+     */
+    byte[] progressOf(String orderId) {
+        while (nextId != null && compareCodePoints(nextId, orderId) < 0) {
+            advance();
+        }
+        if (nextId == null || !nextId.equals(orderId)) {
+            return MISSING;
+        }
+        byte[] value = nextValue;
+        advance();
+        return value;
+    }
+
+    private void advance() {
+        if (progress.hasNext()) {
+            KeyValue next = progress.next();
+            nextId = CompositeKey.parseCompositeKey(next.getKey()).getAttributes().get(0);
+            nextValue = next.getValue();
+        } else {
+            nextId = null;
+            nextValue = null;
+        }
+    }
+
+    /**
+     * Compares strings by code point, which is the order of their UTF-8 bytes and so the order in
+     * which the ledger returns keys.
+     */
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+}
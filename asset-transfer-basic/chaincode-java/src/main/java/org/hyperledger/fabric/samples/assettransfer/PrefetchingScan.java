@@ -0,0 +1,142 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Range scan that decodes records on a small shared pool while the transaction thread reads ahead,
+ * so that fetching the next page from the peer overlaps with decoding the records already fetched.
+ * <p>
+ * Records are read in batches on the calling thread, which is the only one allowed to call the
+ * stub, and each batch is decoded as one task. Up to {@link #BATCHES_AHEAD} batches are read ahead
+ * of the caller. Results come back in the order of the scan, and as decoding may not depend on
+ * anything but its record, they are the same as decoding the records one after the other.
+ *
+ * @param <R> what is read from a record on the calling thread
+ * @param <T> what a record is decoded into
+ */
+final class PrefetchingScan<R, T> implements Iterator<T> {
+    static final int BATCH_SIZE = 32;
+    static final int BATCHES_AHEAD = 8;
+
+    private static final ExecutorService DECODERS = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), new DecoderThreadFactory());
+
+    private final Iterator<KeyValue> results;
+    private final Function<KeyValue, R> read;
+    private final Function<R, T> decode;
+    private final Executor executor;
+    private final int batchSize;
+    private final int batchesAhead;
+    private final Queue<CompletableFuture<Batch<T>>> pending = new ArrayDeque<>();
+    private Batch<T> batch = new Batch<>(Collections.emptyList());
+    private int index;
+
+    /**
+     * @param read takes what decoding needs from a record; runs on the calling thread, so may
+     *             call the stub
+     * @param decode decodes what was read; runs on the decoder pool, so must not use the stub or
+     *               the transaction context
+     */
+    PrefetchingScan(Iterable<KeyValue> results, Function<KeyValue, R> read, Function<R, T> decode) {
+        this(results, read, decode, DECODERS, BATCH_SIZE, BATCHES_AHEAD);
+    }
+
+    PrefetchingScan(Iterable<KeyValue> results, Function<KeyValue, R> read, Function<R, T> decode, Executor executor,
+                    int batchSize, int batchesAhead) {
+        this.results = results.iterator();
+        this.read = read;
+        this.decode = decode;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.batchesAhead = batchesAhead;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < batch.decoded.size() || batch.failure != null || !pending.isEmpty() || results.hasNext();
+    }
+
+    /**
+     * Returns the next decoded record, rethrowing what its decoding threw.
+     */
+    @Override
+    public T next() {
+        if (index == batch.decoded.size()) {
+            if (batch.failure != null) {
+                throw batch.failure;
+            }
+            readAhead();
+            CompletableFuture<Batch<T>> next = pending.poll();
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            batch = next.join();
+            index = 0;
+            if (batch.decoded.isEmpty() && batch.failure != null) {
+                throw batch.failure;
+            }
+        }
+        return batch.decoded.get(index++);
+    }
+
+    private void readAhead() {
+        while (pending.size() < batchesAhead && results.hasNext()) {
+            List<R> records = new ArrayList<>(batchSize);
+            while (records.size() < batchSize && results.hasNext()) {
+                records.add(read.apply(results.next()));
+            }
+            pending.add(CompletableFuture.supplyAsync(() -> decodeAll(records), executor));
+        }
+    }
+
+    /**
+     * Decodes a batch up to the first record that fails, so that the records before it are still
+     * returned before the failure is rethrown, as when decoding one after the other.
+     */
+    private Batch<T> decodeAll(List<R> records) {
+        Batch<T> decoded = new Batch<>(new ArrayList<>(records.size()));
+        try {
+            for (R record : records) {
+                decoded.decoded.add(decode.apply(record));
+            }
+        } catch (RuntimeException e) {
+            decoded.failure = e;
+        }
+        return decoded;
+    }
+
+    private static final class Batch<T> {
+        private final List<T> decoded;
+        private RuntimeException failure;
+
+        Batch(List<T> decoded) {
+            this.decoded = decoded;
+        }
+    }
+
+    private static final class DecoderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "chaincode-decoder-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
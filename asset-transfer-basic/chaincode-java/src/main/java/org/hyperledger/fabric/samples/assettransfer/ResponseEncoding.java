@@ -0,0 +1,78 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodings a query response can be returned in. Contract transactions return strings, so a
+ * compressed response is returned as base64 text; it can never be taken for JSON, which starts
+ * with {@code [} or {@code {}.
+ */
+enum ResponseEncoding {
+    /**
+     * The JSON as it is.
+     */
+    IDENTITY {
+        @Override
+        String encode(OrderJsonWriter writer) {
+            return writer.toString();
+        }
+    },
+
+    /**
+     * The JSON compressed with gzip at its fastest level, then base64 encoded. Order JSON repeats
+     * the same property names and values on every record, so even the fastest level shrinks it
+     * several times over.
+     */
+    GZIP {
+        @Override
+        String encode(OrderJsonWriter writer) {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(writer.size() / 4 + 64);
+            try (OutputStream out = new FastGZIPOutputStream(Base64.getEncoder().wrap(encoded))) {
+                writer.writeTo(out);
+            } catch (IOException e) {
+                // nothing is written to anything but memory
+                throw new UncheckedIOException(e);
+            }
+            return new String(encoded.toByteArray(), StandardCharsets.US_ASCII);
+        }
+    };
+
+    private static final ResponseEncoding[] VALUES = values();
+
+    /**
+     * Encodes what was written as the response of a transaction.
+     */
+    abstract String encode(OrderJsonWriter writer);
+
+    /**
+     * Looks up an encoding by name, ignoring case, returning null instead of throwing for unknown
+     * names. No name at all is {@link #IDENTITY}.
+     */
+    static ResponseEncoding of(String name) {
+        if (name == null || name.isEmpty()) {
+            return IDENTITY;
+        }
+        for (ResponseEncoding encoding : VALUES) {
+            if (encoding.name().equalsIgnoreCase(name)) {
+                return encoding;
+            }
+        }
+        return null;
+    }
+
+    private static final class FastGZIPOutputStream extends GZIPOutputStream {
+        private static final int BUFFER_SIZE = 8192;
+
+        FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
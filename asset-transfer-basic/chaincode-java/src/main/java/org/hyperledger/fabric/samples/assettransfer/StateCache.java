@@ -0,0 +1,79 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-transaction view of the world state. Reads are cached for the rest of the transaction and
+ * writes are buffered until {@link #flush()}, so each distinct key costs at most one round trip to
+ * the peer and later reads see the writes made earlier in the transaction. Range and composite key
+ * queries are not covered and go to the stub directly, so they still return keys deleted earlier in
+ * the transaction; callers skip those with {@link #isDeleted}.
+ */
+final class StateCache {
+    private static final byte[] MISSING = new byte[0];
+    private static final byte[] DELETED = new byte[0];
+
+    private final Map<String, byte[]> reads = new HashMap<>();
+    private final Map<String, byte[]> writes = new LinkedHashMap<>();
+    private final ChaincodeStub stub;
+
+    StateCache(ChaincodeStub stub) {
+        this.stub = stub;
+    }
+
+    /**
+     * Returns the value of a key, including writes buffered in this transaction.
+     *
+     * @return the value, or an empty array if the key does not exist
+     */
+    byte[] getState(String key) {
+        byte[] written = writes.get(key);
+        if (written != null) {
+            return written == DELETED ? MISSING : written;
+        }
+        byte[] value = reads.get(key);
+        if (value == null) {
+            value = stub.getState(key);
+            if (value == null || value.length == 0) {
+                value = MISSING;
+            }
+            reads.put(key, value);
+        }
+        return value;
+    }
+
+    void putState(String key, byte[] value) {
+        writes.put(key, value);
+    }
+
+    void delState(String key) {
+        writes.put(key, DELETED);
+    }
+
+    /**
+     * Whether this transaction has deleted the key.
+     */
+    boolean isDeleted(String key) {
+        return writes.get(key) == DELETED;
+    }
+
+    /**
+     * Sends the buffered writes to the peer, one per key, in the order the keys were first written.
+     */
+    void flush() {
+        for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+            if (write.getValue() == DELETED) {
+                stub.delState(write.getKey());
+                reads.put(write.getKey(), MISSING);
+            } else {
+                stub.putState(write.getKey(), write.getValue());
+                reads.put(write.getKey(), write.getValue());
+            }
+        }
+        writes.clear();
+    }
+}
@@ -0,0 +1,140 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.samples.assettransfer.OrderContract.OrderStatuses;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The order status state machine as a table from each status to the rules an order must pass to
+ * leave it and the status it moves to. The table and its rules are built once, so a transition is
+ * an {@link EnumMap} lookup and a walk over an array, with no string comparisons or allocation
+ * unless a rule fails.
+ */
+final class StatusTransitions {
+    static final String PRODUCT_NAME = "womanPurse";
+    private static final int PRICE = 1000;
+    private static final int MIN_QUANTITY = 200;
+    private static final int MAX_DAILY_QUANTITY = 100;
+    private static final int MIN_DAYS_BEFORE_DELIVERY = 14;
+
+    /**
+     * A check an order must pass before its status changes.
+     */
+    @FunctionalInterface
+    interface Rule {
+        void check(Order order, long daysToDelivery) throws InvalidOrderException;
+    }
+
+    static final Rule KNOWN_PRODUCT = (order, daysToDelivery) -> {
+        if (!PRODUCT_NAME.equals(order.getProductName())) {
+            throw new InvalidOrderException("We do not have such product in our offer");
+        }
+    };
+
+    static final Rule LIST_PRICE = (order, daysToDelivery) -> {
+        if (order.getPrice() != PRICE) {
+            throw new InvalidOrderException("Price per one product should be 1000$");
+        }
+    };
+
+    static final Rule ORDERED_DAILY_QUANTITY = (order, daysToDelivery) ->
+            checkDailyQuantity(order, daysToDelivery, "Quantity/days to delivery should be less than 100");
+
+    static final Rule MINIMUM_QUANTITY = (order, daysToDelivery) -> {
+        if (order.getQuantity() < MIN_QUANTITY) {
+            throw new InvalidOrderException("Too small order");
+        }
+    };
+
+    static final Rule DAILY_QUANTITY = (order, daysToDelivery) ->
+            checkDailyQuantity(order, daysToDelivery, "Too big quantity or delivery date too soon");
+
+    static final Rule LEAD_TIME = (order, daysToDelivery) -> {
+        if (daysToDelivery < MIN_DAYS_BEFORE_DELIVERY) {
+            throw new InvalidOrderException("Delivery date too soon");
+        }
+    };
+
+    private static final Map<OrderStatuses, Transition> TRANSITIONS = new EnumMap<>(OrderStatuses.class);
+
+    static {
+        TRANSITIONS.put(OrderStatuses.ORDERED,
+                new Transition(OrderStatuses.COLLECTING_MATERIALS, null, KNOWN_PRODUCT, LIST_PRICE, ORDERED_DAILY_QUANTITY));
+        TRANSITIONS.put(OrderStatuses.COLLECTING_MATERIALS,
+                new Transition(OrderStatuses.MATERIALS_COLLECTED, OrderStatuses.COLLECTING_MATERIALS, MINIMUM_QUANTITY, DAILY_QUANTITY));
+        TRANSITIONS.put(OrderStatuses.MATERIALS_COLLECTED,
+                new Transition(OrderStatuses.MATERIALS_DELIVERED, null, LEAD_TIME));
+        TRANSITIONS.put(OrderStatuses.MATERIALS_DELIVERED,
+                new Transition(OrderStatuses.PRODUCED, null, KNOWN_PRODUCT, DAILY_QUANTITY));
+    }
+
+    private StatusTransitions() {
+    }
+
+    /**
+     * Returns the shared instance of a product name from the offer, so that the orders for it do
+     * not each hold a copy, or the name itself for any other product.
+     */
+    static String canonicalProductName(String productName) {
+        return PRODUCT_NAME.equals(productName) ? PRODUCT_NAME : productName;
+    }
+
+    /**
+     * Checks an order against the rules for its current status and returns the status it moves to.
+     *
+     * @param order the order, in its current status
+     * @param today the current date as an epoch day
+     * @throws InvalidOrderException if the status is unknown or final, or a rule fails
+     */
+    static OrderStatuses next(Order order, long today) throws InvalidOrderException {
+        Transition transition = order.getOrderStatus() == null ? null : TRANSITIONS.get(order.getOrderStatus());
+        if (transition == null) {
+            throw new InvalidOrderException("Invalid status provided");
+        }
+        check(order, today, transition.rules);
+        if (transition.whileMaterialsMissing != null && !areMaterialsCollected(order)) {
+            return transition.whileMaterialsMissing;
+        }
+        return transition.next;
+    }
+
+    /**
+     * Checks an order against the given rules.
+     */
+    static void check(Order order, long today, Rule... rules) throws InvalidOrderException {
+        long daysToDelivery = order.getDeliveryEpochDay() - today;
+        for (int i = 0; i < rules.length; i++) {
+            rules[i].check(order, daysToDelivery);
+        }
+    }
+
+    /**
+     * Checks that an order can be produced by its delivery date at no more than the daily quantity.
+     * An order due today or earlier has no days left to produce it in.
+     */
+    private static void checkDailyQuantity(Order order, long daysToDelivery, String message) throws InvalidOrderException {
+        if (daysToDelivery <= 0) {
+            throw new InvalidOrderException("Delivery date should be after today");
+        }
+        if (order.getQuantity() / daysToDelivery > MAX_DAILY_QUANTITY) {
+            throw new InvalidOrderException(message);
+        }
+    }
+
+    private static boolean areMaterialsCollected(Order order) {
+        return order.getLeatherCount() == order.getQuantity() && order.getMetalCount() == order.getQuantity();
+    }
+
+    private static final class Transition {
+        private final OrderStatuses next;
+        private final OrderStatuses whileMaterialsMissing;
+        private final Rule[] rules;
+
+        Transition(OrderStatuses next, OrderStatuses whileMaterialsMissing, Rule... rules) {
+            this.next = next;
+            this.whileMaterialsMissing = whileMaterialsMissing;
+            this.rules = rules;
+        }
+    }
+}
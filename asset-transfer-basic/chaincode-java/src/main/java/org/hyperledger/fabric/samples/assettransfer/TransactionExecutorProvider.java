@@ -0,0 +1,81 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.metrics.MetricsProvider;
+import org.hyperledger.fabric.metrics.TaskMetricsCollector;
+import org.hyperledger.fabric.metrics.impl.DefaultProvider;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Metrics provider the shim hands its transaction executor to when the executor is created, which
+ * is the only point at which the chaincode can reach it. Its pool and queue sizes come from the
+ * {@code TP_*} chaincode config properties; this provider sets the thread factory, running
+ * transactions on virtual threads when {@link #EXECUTOR} is {@code virtual}. The shim's own
+ * performance log is kept when {@link #LOG_METRICS} is true, and the executor's load is added to
+ * the {@link ChaincodeMetrics} when they are enabled.
+ * <p>
+ * Virtual threads are best effort. The executor has already prestarted one core thread on the
+ * shim's factory when it reaches this provider, and that thread stays a platform thread; only the
+ * threads started after it are virtual. They are still pooled, and no more transactions run at
+ * once than {@code TP_MAX_POOL_SIZE} allows, so virtual threads save the memory of a large pool
+ * but do not lift its bound. Raising {@code TP_CORE_POOL_SIZE} and {@code TP_MAX_POOL_SIZE} is
+ * what lets more transactions wait on the peer at once.
+ */
+public final class TransactionExecutorProvider implements MetricsProvider {
+    static final String EXECUTOR = "CHAINCODE_EXECUTOR";
+    static final String LOG_METRICS = "CHAINCODE_EXECUTOR_LOG_METRICS";
+    static final String PLATFORM = "platform";
+    static final String VIRTUAL = "virtual";
+
+    private ThreadFactory threadFactory;
+    private MetricsProvider metrics;
+
+    @Override
+    public void initialize(final Properties props) {
+        threadFactory = threadFactory(props.getProperty(EXECUTOR, PLATFORM));
+        if (Boolean.parseBoolean(props.getProperty(LOG_METRICS))) {
+            metrics = new DefaultProvider();
+            metrics.initialize(props);
+        }
+    }
+
+    @Override
+    public void setTaskMetricsCollector(final TaskMetricsCollector taskService) {
+        // called from the executor's constructor after it has prestarted a core thread, so the
+        // factory only applies to the threads started from here on
+        if (threadFactory != null && taskService instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) taskService).setThreadFactory(threadFactory);
+        }
+        if (metrics != null) {
+            metrics.setTaskMetricsCollector(taskService);
+        }
+        ChaincodeMetrics chaincodeMetrics = ChaincodeMetrics.fromEnvironment();
+        if (chaincodeMetrics != null) {
+            chaincodeMetrics.setExecutor(taskService);
+        }
+    }
+
+    /**
+     * The thread factory for the named executor, or null to keep the shim's own. Virtual threads
+     * are looked up reflectively so the chaincode still builds for, and runs on, Java 11.
+     */
+    static ThreadFactory threadFactory(final String executor) {
+        if (PLATFORM.equalsIgnoreCase(executor)) {
+            return null;
+        }
+        if (!VIRTUAL.equalsIgnoreCase(executor)) {
+            throw new IllegalArgumentException(String.format("%s must be %s or %s, not %s", EXECUTOR, PLATFORM, VIRTUAL, executor));
+        }
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "chaincode-tx-", 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(String.format("%s=%s needs Java 21 or later, running on %s", EXECUTOR, VIRTUAL,
+                    System.getProperty("java.version")), e);
+        }
+    }
+}
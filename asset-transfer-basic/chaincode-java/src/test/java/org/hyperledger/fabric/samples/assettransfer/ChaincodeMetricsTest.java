@@ -0,0 +1,125 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import com.sun.net.httpserver.HttpServer;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeMetrics.StubCall;
+import org.hyperledger.fabric.samples.assettransfer.ChaincodeMetrics.TransactionMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChaincodeMetricsTest {
+    private final ChaincodeMetrics metrics = new ChaincodeMetrics();
+
+    @Test
+    public void writesHistogramsPerFunctionWithoutContractName() {
+        TransactionMetrics transaction = metrics.startTransaction("basic:GetAllOrders");
+        transaction.countScan();
+        for (int i = 0; i < 42; i++) {
+            transaction.countRecordScanned();
+        }
+        metrics.finishTransaction(transaction);
+        metrics.finishTransaction(metrics.startTransaction("CreateOrder"));
+
+        String scrape = metrics.scrape();
+
+        assertThat(scrape).contains("# TYPE chaincode_transaction_duration_seconds histogram\n",
+                "chaincode_transaction_duration_seconds_bucket{function=\"GetAllOrders\",outcome=\"success\",le=\"+Inf\"} 1\n",
+                "chaincode_transaction_duration_seconds_count{function=\"CreateOrder\",outcome=\"success\"} 1\n",
+                "chaincode_records_scanned_bucket{function=\"GetAllOrders\",le=\"10\"} 0\n",
+                "chaincode_records_scanned_bucket{function=\"GetAllOrders\",le=\"100\"} 1\n",
+                "chaincode_records_scanned_sum{function=\"GetAllOrders\"} 42.0\n",
+                "chaincode_serialization_duration_seconds_bucket{function=\"CreateOrder\",le=\"0.00001\"} 1\n");
+        assertThat(scrape).doesNotContain("chaincode_records_scanned_count{function=\"CreateOrder\"}");
+    }
+
+    @Test
+    public void countsStubCallsAndBytes() {
+        metrics.countCall(StubCall.GET_STATE);
+        metrics.countCall(StubCall.GET_STATE);
+        metrics.countCall(StubCall.PUT_STATE);
+        metrics.countRead(new byte[10]);
+        metrics.countRead(null);
+        metrics.countWritten(new byte[3]);
+
+        assertThat(metrics.scrape()).contains("chaincode_stub_calls_total{call=\"get_state\"} 2\n",
+                "chaincode_stub_calls_total{call=\"put_state\"} 1\n", "chaincode_stub_calls_total{call=\"range\"} 0\n",
+                "chaincode_stub_read_bytes_total 10\n", "chaincode_stub_written_bytes_total 3\n");
+    }
+
+    @Test
+    public void labelsFunctionsTheContractDoesNotDeclareAsUnknown() {
+        metrics.finishTransaction(metrics.startTransaction("Order\"s\\"));
+        metrics.finishTransaction(metrics.startTransaction("basic:NoSuchTransaction"));
+        metrics.finishTransaction(metrics.startTransaction(null));
+        metrics.finishTransaction(metrics.startTransaction("basic:ReadOrder"));
+
+        String scrape = metrics.scrape();
+
+        assertThat(scrape).contains("chaincode_transaction_duration_seconds_count{function=\"unknown\",outcome=\"success\"} 3\n",
+                "chaincode_transaction_duration_seconds_count{function=\"ReadOrder\",outcome=\"success\"} 1\n");
+        assertThat(scrape).doesNotContain("Order\\\"s", "NoSuchTransaction");
+    }
+
+    @Test
+    public void escapesErrorLabels() {
+        metrics.failTransaction(metrics.startTransaction("ReadOrder"), "Order\"s\\");
+
+        assertThat(metrics.scrape()).contains("chaincode_transaction_failures_total{function=\"ReadOrder\",error=\"Order\\\"s\\\\\"} 1\n");
+    }
+
+    @Test
+    public void namesTransactionsAsTheyAreInvoked() {
+        assertThat(ChaincodeMetrics.transactionNames(OrderContract.class)).contains("CreateOrder", "GetAllOrders", "ReadOrder")
+                .doesNotContain("createContext", "afterTransaction", "updateStatus");
+    }
+
+    @Test
+    public void timesAndCountsFailedTransactionsPerError() {
+        metrics.failTransaction(metrics.startTransaction("ReadOrder"), "ORDER_NOT_FOUND");
+        metrics.failTransaction(metrics.startTransaction("ReadOrder"), "ORDER_NOT_FOUND");
+        metrics.failTransaction(metrics.startTransaction("ReadOrder"), "NullPointerException");
+        metrics.finishTransaction(metrics.startTransaction("ReadOrder"));
+
+        String scrape = metrics.scrape();
+
+        assertThat(scrape).contains("# TYPE chaincode_transaction_failures_total counter\n",
+                "chaincode_transaction_failures_total{function=\"ReadOrder\",error=\"ORDER_NOT_FOUND\"} 2\n",
+                "chaincode_transaction_failures_total{function=\"ReadOrder\",error=\"NullPointerException\"} 1\n",
+                "chaincode_transaction_duration_seconds_count{function=\"ReadOrder\",outcome=\"failure\"} 3\n",
+                "chaincode_transaction_duration_seconds_count{function=\"ReadOrder\",outcome=\"success\"} 1\n");
+        assertThat(scrape.split("# TYPE chaincode_transaction_duration_seconds ", -1)).hasSize(2);
+    }
+
+    @Test
+    public void servesMetricsOverHttp() throws Exception {
+        metrics.countCall(StubCall.DEL_STATE);
+        HttpServer server = metrics.serve(0);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getAddress().getPort() + "/metrics")
+                    .openConnection();
+
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            assertThat(connection.getContentType()).isEqualTo("text/plain; version=0.0.4; charset=utf-8");
+            assertThat(read(connection.getInputStream())).contains("chaincode_stub_calls_total{call=\"del_state\"} 1\n");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String read(InputStream in) throws Exception {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = input.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
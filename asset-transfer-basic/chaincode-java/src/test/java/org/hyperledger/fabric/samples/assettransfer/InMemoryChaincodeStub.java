@@ -0,0 +1,531 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import com.google.protobuf.ByteString;
+import org.hyperledger.fabric.protos.peer.ChaincodeEventPackage.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.msp.Identities.SerializedIdentity;
+import org.hyperledger.fabric.protos.peer.ProposalPackage.SignedProposal;
+import org.hyperledger.fabric.samples.assettransfer.InMemoryLedger.Version;
+import org.hyperledger.fabric.samples.assettransfer.InMemoryLedger.Versioned;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link ChaincodeStub} simulating one transaction against an {@link InMemoryLedger}. As on a
+ * peer, reads see the committed state only, never the transaction's own writes, and the versions
+ * of the keys read, the keys and versions seen by range scans and the writes are recorded for
+ * {@link InMemoryLedger#commit} to validate.
+ * <p>
+ * Rich queries are evaluated with a {@link SelectorEvaluator} over JSON values and, as on a
+ * peer, are not checked for phantoms. Private data, validation parameters and chaincode to
+ * chaincode calls are not supported.
+ */
+final class InMemoryChaincodeStub implements ChaincodeStub {
+    private static final String UNSPECIFIED_START_KEY = "\u0001";
+    private static final String MAX_UNICODE_RUNE = new String(Character.toChars(Character.MAX_CODE_POINT));
+    /**
+     * Self-signed certificate of the client every transaction is submitted by, so that a contract
+     * {@code Context} can build its client identity.
+     */
+    private static final String CREATOR_CERTIFICATE = "-----BEGIN CERTIFICATE-----\n"
+            + "MIIB6jCCAY+gAwIBAgIUJ7khj3ajfIUF+caK28Q75U93WbAwCgYIKoZIzj0EAwIw\n"
+            + "STELMAkGA1UEBhMCVVMxGTAXBgNVBAoMEG9yZzEuZXhhbXBsZS5jb20xHzAdBgNV\n"
+            + "BAMMFlVzZXIxQG9yZzEuZXhhbXBsZS5jb20wIBcNMjYxMDE4MDk0NTAxWhgPMjEy\n"
+            + "NjA5MjQwOTQ1MDFaMEkxCzAJBgNVBAYTAlVTMRkwFwYDVQQKDBBvcmcxLmV4YW1w\n"
+            + "bGUuY29tMR8wHQYDVQQDDBZVc2VyMUBvcmcxLmV4YW1wbGUuY29tMFkwEwYHKoZI\n"
+            + "zj0CAQYIKoZIzj0DAQcDQgAEVxxtvOMuGUo139f7nk1dzbD20/RHbV4ngYDQxaiA\n"
+            + "yBro1qpl739+hwOM+Z44aACn63S0fO3syTyHNw0Zf1oVoqNTMFEwHQYDVR0OBBYE\n"
+            + "FMHSZ4lHGJqv3yFd2FFacH4qU5xWMB8GA1UdIwQYMBaAFMHSZ4lHGJqv3yFd2FFa\n"
+            + "cH4qU5xWMA8GA1UdEwEB/wQFMAMBAf8wCgYIKoZIzj0EAwIDSQAwRgIhAM1IzS1W\n"
+            + "db33Kk+QhxYytPAoi+COYaF1apPlQoVZfZocAiEAwrxjlcLvorS+BE8Q/aQwRU+j\n"
+            + "fsx+BW+BWDbDljF/aPc=\n"
+            + "-----END CERTIFICATE-----\n";
+
+    private final InMemoryLedger ledger;
+    private final String txId;
+    private final Instant timestamp;
+    private final Map<String, Version> readSet = new LinkedHashMap<>();
+    private final List<RangeRead> rangeReads = new ArrayList<>();
+    private final Map<String, byte[]> writeSet = new LinkedHashMap<>();
+    private ChaincodeEvent event;
+    private long keysScanned;
+    private String function;
+
+    InMemoryChaincodeStub(InMemoryLedger ledger, String txId, Instant timestamp) {
+        this.ledger = ledger;
+        this.txId = txId;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Sets the function the transaction invokes, as a client would, for {@link #getFunction}.
+     */
+    InMemoryChaincodeStub invoking(String function) {
+        this.function = function;
+        return this;
+    }
+
+    /**
+     * The version of every key read, null for keys that did not exist.
+     */
+    Map<String, Version> getReadSet() {
+        return Collections.unmodifiableMap(readSet);
+    }
+
+    List<RangeRead> getRangeReads() {
+        return Collections.unmodifiableList(rangeReads);
+    }
+
+    /**
+     * The value written to every key, null for deleted keys.
+     */
+    Map<String, byte[]> getWriteSet() {
+        return Collections.unmodifiableMap(writeSet);
+    }
+
+    /**
+     * The number of entries returned by all scans and queries of this transaction.
+     */
+    long getKeysScanned() {
+        return keysScanned;
+    }
+
+    @Override
+    public String getTxId() {
+        return txId;
+    }
+
+    @Override
+    public Instant getTxTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String getChannelId() {
+        return "mychannel";
+    }
+
+    @Override
+    public String getMspId() {
+        return "Org1MSP";
+    }
+
+    @Override
+    public byte[] getState(String key) {
+        Version version = ledger.versionOf(key);
+        readSet.putIfAbsent(key, version);
+        byte[] value = ledger.get(key);
+        return value == null ? new byte[0] : value;
+    }
+
+    @Override
+    public void putState(String key, byte[] value) {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("key must not be empty");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        writeSet.put(key, value);
+    }
+
+    @Override
+    public void delState(String key) {
+        writeSet.put(key, null);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByRange(String startKey, String endKey) {
+        return scan(simpleStart(startKey, endKey), endKey == null || endKey.isEmpty() ? null : endKey, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(String startKey, String endKey, int pageSize,
+            String bookmark) {
+        String start = bookmark == null || bookmark.isEmpty() ? simpleStart(startKey, endKey) : bookmark;
+        return scan(start, endKey == null || endKey.isEmpty() ? null : endKey, pageSize);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String compositeKey) {
+        return getStateByPartialCompositeKey(compositeKey.startsWith(CompositeKey.NAMESPACE)
+                ? CompositeKey.parseCompositeKey(compositeKey) : new CompositeKey(compositeKey));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(String objectType, String... attributes) {
+        return getStateByPartialCompositeKey(new CompositeKey(objectType, attributes));
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(CompositeKey compositeKey) {
+        String prefix = compositeKey.toString();
+        return scan(prefix, prefix + MAX_UNICODE_RUNE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(CompositeKey compositeKey,
+            int pageSize, String bookmark) {
+        String prefix = compositeKey.toString();
+        return scan(bookmark == null || bookmark.isEmpty() ? prefix : bookmark, prefix + MAX_UNICODE_RUNE, pageSize);
+    }
+
+    @Override
+    public CompositeKey createCompositeKey(String objectType, String... attributes) {
+        return new CompositeKey(objectType, attributes);
+    }
+
+    @Override
+    public CompositeKey splitCompositeKey(String compositeKey) {
+        return CompositeKey.parseCompositeKey(compositeKey);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getQueryResult(String query) {
+        return (ListIterator) getQueryResultWithPagination(query, Integer.MAX_VALUE, "");
+    }
+
+    @Override
+    public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(String query, int pageSize, String bookmark) {
+        SelectorEvaluator selector = new SelectorEvaluator(query);
+        String start = bookmark == null || bookmark.isEmpty() ? "" : bookmark + "\u0000";
+        List<KeyValue> page = new ArrayList<>();
+        for (Map.Entry<String, Versioned> entry : ledger.range(start, null).entrySet()) {
+            if (page.size() == pageSize) {
+                break;
+            }
+            byte[] value = entry.getValue().getValue();
+            if (value.length > 0 && value[0] == '{' && selector.matches(new String(value, StandardCharsets.UTF_8))) {
+                page.add(new Entry(entry.getKey(), value));
+            }
+        }
+        keysScanned += page.size();
+        String nextBookmark = page.isEmpty() ? "" : page.get(page.size() - 1).getKey();
+        return new ListIterator(page, nextBookmark);
+    }
+
+    @Override
+    public QueryResultsIterator<KeyModification> getHistoryForKey(String key) {
+        List<KeyModification> history = ledger.historyOf(key);
+        return new QueryResultsIterator<KeyModification>() {
+            @Override
+            public Iterator<KeyModification> iterator() {
+                return history.iterator();
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    @Override
+    public void setEvent(String name, byte[] payload) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("event name can not be nil string");
+        }
+        event = ChaincodeEvent.newBuilder().setEventName(name).setTxId(txId)
+                .setPayload(payload == null ? ByteString.EMPTY : ByteString.copyFrom(payload)).build();
+    }
+
+    @Override
+    public ChaincodeEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public Map<String, byte[]> getTransient() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public List<byte[]> getArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getStringArgs() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public String getFunction() {
+        return function;
+    }
+
+    @Override
+    public List<String> getParameters() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public byte[] getCreator() {
+        return SerializedIdentity.newBuilder().setMspid(getMspId())
+                .setIdBytes(ByteString.copyFromUtf8(CREATOR_CERTIFICATE)).build().toByteArray();
+    }
+
+    @Override
+    public byte[] getBinding() {
+        return new byte[0];
+    }
+
+    @Override
+    public SignedProposal getSignedProposal() {
+        return SignedProposal.getDefaultInstance();
+    }
+
+    @Override
+    public Response invokeChaincode(String chaincodeName, List<byte[]> args, String channel) {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getStateValidationParameter(String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setStateValidationParameter(String key, byte[] value) {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getPrivateData(String collection, String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getPrivateDataHash(String collection, String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public byte[] getPrivateDataValidationParameter(String collection, String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public void putPrivateData(String collection, String key, byte[] value) {
+        throw unsupported();
+    }
+
+    @Override
+    public void setPrivateDataValidationParameter(String collection, String key, byte[] value) {
+        throw unsupported();
+    }
+
+    @Override
+    public void delPrivateData(String collection, String key) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByRange(String collection, String startKey, String endKey) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String compositeKey) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, CompositeKey compositeKey) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(String collection, String objectType,
+            String... attributes) {
+        throw unsupported();
+    }
+
+    @Override
+    public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(String collection, String query) {
+        throw unsupported();
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Not supported by the in-memory ledger");
+    }
+
+    private static String simpleStart(String startKey, String endKey) {
+        CompositeKey.validateSimpleKeys(startKey, endKey);
+        return startKey == null || startKey.isEmpty() ? UNSPECIFIED_START_KEY : startKey;
+    }
+
+    /**
+     * Scans the committed state from {@code startKey} up to but excluding {@code endKey}, or to the
+     * end for a null end key, recording what the scan sees as it is iterated.
+     */
+    private RangeIterator scan(String startKey, String endKey, int pageSize) {
+        RangeRead rangeRead = new RangeRead(startKey, endKey);
+        rangeReads.add(rangeRead);
+        return new RangeIterator(ledger.range(startKey, endKey).entrySet().iterator(), rangeRead, pageSize);
+    }
+
+    /**
+     * A range scan as recorded in the read set: its bounds, the keys and versions it returned, and
+     * whether it was iterated to the end. Validation repeats the scan over the part of the range
+     * that was read and requires the same keys at the same versions.
+     */
+    static final class RangeRead {
+        private final String startKey;
+        private final String endKey;
+        private final List<String> keys = new ArrayList<>();
+        private final List<Version> versions = new ArrayList<>();
+        private boolean exhausted;
+
+        RangeRead(String startKey, String endKey) {
+            this.startKey = startKey;
+            this.endKey = endKey;
+        }
+
+        boolean matches(InMemoryLedger ledger) {
+            int i = 0;
+            for (Map.Entry<String, Versioned> entry : ledger.range(startKey, endKey).entrySet()) {
+                if (!exhausted && i == keys.size()) {
+                    break;
+                }
+                if (i == keys.size() || !keys.get(i).equals(entry.getKey()) || !versions.get(i).equals(entry.getValue().getVersion())) {
+                    return false;
+                }
+                i++;
+            }
+            return i == keys.size();
+        }
+    }
+
+    private final class RangeIterator implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+        private final Iterator<Map.Entry<String, Versioned>> entries;
+        private final RangeRead rangeRead;
+        private final int pageSize;
+        private int fetched;
+        private boolean iterated;
+        private QueryResponseMetadata metadata;
+
+        RangeIterator(Iterator<Map.Entry<String, Versioned>> entries, RangeRead rangeRead, int pageSize) {
+            this.entries = entries;
+            this.rangeRead = rangeRead;
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * As on a peer, the metadata of a page is available once the page has been read; the
+         * bookmark is the key the next page starts at, or empty after the last page.
+         */
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            if (metadata == null) {
+                for (KeyValue ignored : this) {
+                    // read the rest of the page
+                }
+                String bookmark = entries.hasNext() ? entries.next().getKey() : "";
+                metadata = QueryResponseMetadata.newBuilder().setFetchedRecordsCount(fetched).setBookmark(bookmark).build();
+            }
+            return metadata;
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            if (iterated) {
+                return Collections.emptyIterator();
+            }
+            iterated = true;
+            return new Iterator<KeyValue>() {
+                @Override
+                public boolean hasNext() {
+                    if (fetched < pageSize && entries.hasNext()) {
+                        return true;
+                    }
+                    rangeRead.exhausted = !entries.hasNext();
+                    return false;
+                }
+
+                @Override
+                public KeyValue next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<String, Versioned> entry = entries.next();
+                    rangeRead.keys.add(entry.getKey());
+                    rangeRead.versions.add(entry.getValue().getVersion());
+                    fetched++;
+                    keysScanned++;
+                    return new Entry(entry.getKey(), entry.getValue().getValue());
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            // the scan holds no resources
+        }
+    }
+
+    private static final class ListIterator implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+        private final List<KeyValue> results;
+        private final String bookmark;
+
+        ListIterator(List<KeyValue> results, String bookmark) {
+            this.results = results;
+            this.bookmark = bookmark;
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder().setFetchedRecordsCount(results.size()).setBookmark(bookmark).build();
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        Entry(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * A world state held in memory for tests and benchmarks, standing in for a peer. Keys are sorted
+ * by code point as LevelDB sorts their UTF-8 bytes, and every value carries the version of the
+ * transaction that wrote it.
+ * <p>
+ * Transactions are simulated on an {@link InMemoryChaincodeStub} against the committed state,
+ * which records their read and write sets, and committed in blocks with {@link #commit}, which
+ * runs the same MVCC and phantom read checks as a peer. Simulating several transactions before
+ * committing them shows which of them a real network would invalidate.
+ */
+final class InMemoryLedger {
+    /**
+     * Orders strings by code point, which is the order of their UTF-8 encodings.
+     */
+    static final Comparator<String> CODE_POINT_ORDER = (a, b) -> {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int ca = a.codePointAt(i);
+            int cb = b.codePointAt(j);
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += Character.charCount(ca);
+            j += Character.charCount(cb);
+        }
+        return Boolean.compare(i < a.length(), j < b.length());
+    };
+
+    enum ValidationCode {
+        VALID,
+        MVCC_READ_CONFLICT,
+        PHANTOM_READ_CONFLICT
+    }
+
+    private static final Version GENESIS = new Version(0, 0);
+
+    private final NavigableMap<String, Versioned> state = new TreeMap<>(CODE_POINT_ORDER);
+    private final Map<String, List<Modification>> history = new HashMap<>();
+    private long blockNumber;
+    private int transactionCount;
+
+    /**
+     * Starts simulating a transaction against the current committed state.
+     */
+    InMemoryChaincodeStub newTransaction(String txId, Instant timestamp) {
+        return new InMemoryChaincodeStub(this, txId, timestamp);
+    }
+
+    /**
+     * Starts simulating a transaction with a generated ID and the current time.
+     */
+    InMemoryChaincodeStub newTransaction() {
+        return newTransaction("tx" + ++transactionCount, Instant.now());
+    }
+
+    /**
+     * Validates and commits the simulated transactions as one block, in order. A transaction whose
+     * reads no longer match the state, including writes by earlier transactions of the same block,
+     * is invalid and its writes are discarded.
+     *
+     * @return the validation code of each transaction
+     */
+    List<ValidationCode> commit(InMemoryChaincodeStub... transactions) {
+        blockNumber++;
+        List<ValidationCode> codes = new ArrayList<>(transactions.length);
+        for (int txNumber = 0; txNumber < transactions.length; txNumber++) {
+            InMemoryChaincodeStub transaction = transactions[txNumber];
+            ValidationCode code = validate(transaction);
+            if (code == ValidationCode.VALID) {
+                apply(transaction, new Version(blockNumber, txNumber));
+            }
+            codes.add(code);
+        }
+        return codes;
+    }
+
+    /**
+     * Commits a single transaction in its own block.
+     */
+    ValidationCode commit(InMemoryChaincodeStub transaction) {
+        return commit(new InMemoryChaincodeStub[] {transaction}).get(0);
+    }
+
+    /**
+     * Writes a value straight into the committed state, as if by the genesis block, for loading
+     * test data. Loaded values have no history.
+     */
+    void put(String key, byte[] value) {
+        state.put(key, new Versioned(value, GENESIS));
+    }
+
+    /**
+     * @return the committed value of a key, or null if it does not exist
+     */
+    byte[] get(String key) {
+        Versioned versioned = state.get(key);
+        return versioned == null ? null : versioned.value;
+    }
+
+    /**
+     * @return the version of the transaction that last wrote a key, or null if it does not exist
+     */
+    Version versionOf(String key) {
+        Versioned versioned = state.get(key);
+        return versioned == null ? null : versioned.version;
+    }
+
+    int size() {
+        return state.size();
+    }
+
+    long getBlockNumber() {
+        return blockNumber;
+    }
+
+    NavigableMap<String, Versioned> range(String startKey, String endKey) {
+        return endKey == null ? state.tailMap(startKey, true) : state.subMap(startKey, true, endKey, false);
+    }
+
+    List<KeyModification> historyOf(String key) {
+        List<KeyModification> modifications = new ArrayList<>(history.getOrDefault(key, Collections.emptyList()));
+        Collections.reverse(modifications);
+        return modifications;
+    }
+
+    private ValidationCode validate(InMemoryChaincodeStub transaction) {
+        for (Map.Entry<String, Version> read : transaction.getReadSet().entrySet()) {
+            if (!Objects.equals(read.getValue(), versionOf(read.getKey()))) {
+                return ValidationCode.MVCC_READ_CONFLICT;
+            }
+        }
+        for (InMemoryChaincodeStub.RangeRead rangeRead : transaction.getRangeReads()) {
+            if (!rangeRead.matches(this)) {
+                return ValidationCode.PHANTOM_READ_CONFLICT;
+            }
+        }
+        return ValidationCode.VALID;
+    }
+
+    private void apply(InMemoryChaincodeStub transaction, Version version) {
+        for (Map.Entry<String, byte[]> write : transaction.getWriteSet().entrySet()) {
+            String key = write.getKey();
+            byte[] value = write.getValue();
+            if (value == null) {
+                state.remove(key);
+            } else {
+                state.put(key, new Versioned(value, version));
+            }
+            history.computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(new Modification(transaction.getTxId(), value, transaction.getTxTimestamp()));
+        }
+    }
+
+    /**
+     * Position of a transaction in the chain: the block it was committed in and its index in that
+     * block.
+     */
+    static final class Version {
+        private final long blockNumber;
+        private final int txNumber;
+
+        Version(long blockNumber, int txNumber) {
+            this.blockNumber = blockNumber;
+            this.txNumber = txNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Version)) {
+                return false;
+            }
+            Version other = (Version) obj;
+            return blockNumber == other.blockNumber && txNumber == other.txNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(blockNumber, txNumber);
+        }
+
+        @Override
+        public String toString() {
+            return blockNumber + ":" + txNumber;
+        }
+    }
+
+    static final class Versioned {
+        private final byte[] value;
+        private final Version version;
+
+        Versioned(byte[] value, Version version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        byte[] getValue() {
+            return value;
+        }
+
+        Version getVersion() {
+            return version;
+        }
+    }
+
+    private static final class Modification implements KeyModification {
+        private final String txId;
+        private final byte[] value;
+        private final Instant timestamp;
+
+        Modification(String txId, byte[] value, Instant timestamp) {
+            this.txId = txId;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String getTxId() {
+            return txId;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value == null ? new byte[0] : value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(getValue(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean isDeleted() {
+            return value == null;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.samples.assettransfer.InMemoryLedger.ValidationCode;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryLedgerTest {
+    private final InMemoryLedger ledger = new InMemoryLedger();
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> keys(Iterable<KeyValue> results) {
+        List<String> keys = new ArrayList<>();
+        for (KeyValue result : results) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void readsSeeCommittedStateOnly() {
+        ledger.put("a", bytes("1"));
+        InMemoryChaincodeStub stub = ledger.newTransaction();
+
+        stub.putState("a", bytes("2"));
+
+        assertThat(stub.getStringState("a")).isEqualTo("1");
+        assertThat(ledger.commit(stub)).isEqualTo(ValidationCode.VALID);
+        assertThat(ledger.get("a")).isEqualTo(bytes("2"));
+    }
+
+    @Test
+    public void invalidatesStaleReads() {
+        ledger.put("a", bytes("1"));
+        InMemoryChaincodeStub first = ledger.newTransaction();
+        InMemoryChaincodeStub second = ledger.newTransaction();
+        first.putState("a", bytes(first.getStringState("a") + "+1"));
+        second.putState("a", bytes(second.getStringState("a") + "+2"));
+
+        List<ValidationCode> codes = ledger.commit(first, second);
+
+        assertThat(codes).containsExactly(ValidationCode.VALID, ValidationCode.MVCC_READ_CONFLICT);
+        assertThat(ledger.get("a")).isEqualTo(bytes("1+1"));
+        assertThat(ledger.versionOf("a").toString()).isEqualTo(ledger.getBlockNumber() + ":0");
+    }
+
+    @Test
+    public void invalidatesReadsOfKeysCreatedMeanwhile() {
+        InMemoryChaincodeStub first = ledger.newTransaction();
+        InMemoryChaincodeStub second = ledger.newTransaction();
+        first.getState("a");
+        first.putState("a", bytes("1"));
+        second.getState("a");
+        second.putState("a", bytes("2"));
+
+        assertThat(ledger.commit(first)).isEqualTo(ValidationCode.VALID);
+        assertThat(ledger.commit(second)).isEqualTo(ValidationCode.MVCC_READ_CONFLICT);
+    }
+
+    @Test
+    public void blindWritesDoNotConflict() {
+        InMemoryChaincodeStub first = ledger.newTransaction();
+        InMemoryChaincodeStub second = ledger.newTransaction();
+        first.putState("a", bytes("1"));
+        second.putState("a", bytes("2"));
+
+        assertThat(ledger.commit(first, second)).containsExactly(ValidationCode.VALID, ValidationCode.VALID);
+        assertThat(ledger.get("a")).isEqualTo(bytes("2"));
+    }
+
+    @Test
+    public void detectsPhantomsInScannedRange() {
+        ledger.put(new CompositeKey("item~id", "1").toString(), bytes("1"));
+        InMemoryChaincodeStub scanner = ledger.newTransaction();
+        InMemoryChaincodeStub inserter = ledger.newTransaction();
+        keys(scanner.getStateByPartialCompositeKey("item~id"));
+        scanner.putState("count", bytes("1"));
+        inserter.putState(new CompositeKey("item~id", "2").toString(), bytes("2"));
+
+        assertThat(ledger.commit(inserter, scanner)).containsExactly(ValidationCode.VALID, ValidationCode.PHANTOM_READ_CONFLICT);
+    }
+
+    @Test
+    public void checksOnlyThePartOfARangeThatWasRead() {
+        ledger.put("a", bytes("1"));
+        ledger.put("b", bytes("2"));
+        InMemoryChaincodeStub scanner = ledger.newTransaction();
+        InMemoryChaincodeStub writer = ledger.newTransaction();
+        for (KeyValue ignored : scanner.getStateByRange("", "")) {
+            break;
+        }
+        writer.putState("c", bytes("3"));
+
+        assertThat(ledger.commit(writer, scanner)).containsExactly(ValidationCode.VALID, ValidationCode.VALID);
+    }
+
+    @Test
+    public void simpleRangeSkipsCompositeKeys() {
+        ledger.put("a", bytes("1"));
+        ledger.put(new CompositeKey("item~id", "1").toString(), bytes("1"));
+
+        assertThat(keys(ledger.newTransaction().getStateByRange("", ""))).containsExactly("a");
+    }
+
+    @Test
+    public void sortsKeysByCodePoint() {
+        String supplementary = "\ud83d\ude00";
+        String privateUse = "\ue000";
+        ledger.put(new CompositeKey("item~id", supplementary).toString(), bytes("1"));
+        ledger.put(new CompositeKey("item~id", privateUse).toString(), bytes("2"));
+
+        assertThat(keys(ledger.newTransaction().getStateByPartialCompositeKey("item~id"))).containsExactly(
+                new CompositeKey("item~id", privateUse).toString(), new CompositeKey("item~id", supplementary).toString());
+    }
+
+    @Test
+    public void pagesWithBookmarks() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            ledger.put(new CompositeKey("item~id", "item" + i).toString(), bytes(Integer.toString(i)));
+        }
+        InMemoryChaincodeStub stub = ledger.newTransaction();
+        List<String> seen = new ArrayList<>();
+        String bookmark = "";
+        do {
+            try (QueryResultsIteratorWithMetadata<KeyValue> page = stub.getStateByPartialCompositeKeyWithPagination(
+                    new CompositeKey("item~id"), 2, bookmark)) {
+                seen.addAll(keys(page));
+                assertThat(page.getMetadata().getFetchedRecordsCount()).isBetween(1, 2);
+                bookmark = page.getMetadata().getBookmark();
+            }
+        } while (!bookmark.isEmpty());
+
+        assertThat(seen).hasSize(5).startsWith(new CompositeKey("item~id", "item0").toString());
+        assertThat(stub.getKeysScanned()).isEqualTo(5);
+    }
+
+    @Test
+    public void runsRichQueriesOverJsonValues() {
+        ledger.put("a", bytes("{\"color\":\"red\",\"size\":3}"));
+        ledger.put("b", bytes("{\"color\":\"blue\",\"size\":5}"));
+        ledger.put("c", new byte[] {1, 2});
+
+        assertThat(keys(ledger.newTransaction().getQueryResult("{\"selector\":{\"size\":{\"$gt\":4}}}"))).containsExactly("b");
+    }
+
+    @Test
+    public void keepsHistoryNewestFirst() {
+        InMemoryChaincodeStub create = ledger.newTransaction();
+        create.putState("a", bytes("1"));
+        ledger.commit(create);
+        InMemoryChaincodeStub delete = ledger.newTransaction();
+        delete.delState("a");
+        ledger.commit(delete);
+
+        List<KeyModification> history = new ArrayList<>();
+        ledger.newTransaction().getHistoryForKey("a").forEach(history::add);
+
+        assertThat(history).hasSize(2);
+        assertThat(history.get(0).getTxId()).isEqualTo(delete.getTxId());
+        assertThat(history.get(0).isDeleted()).isTrue();
+        assertThat(history.get(1).getStringValue()).isEqualTo("1");
+        assertThat(ledger.get("a")).isNull();
+    }
+}
@@ -0,0 +1,37 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogSamplerTest {
+    private final Logger logger = Logger.getAnonymousLogger();
+
+    @Test
+    public void samplesOneInEveryN() {
+        logger.setLevel(Level.FINE);
+        LogSampler sampler = new LogSampler(logger, Level.FINE, 3);
+
+        boolean[] sampled = new boolean[7];
+        for (int i = 0; i < sampled.length; i++) {
+            sampled[i] = sampler.sample();
+        }
+
+        assertThat(sampled).containsExactly(true, false, false, true, false, false, true);
+    }
+
+    @Test
+    public void samplesNothingWhileTheLevelIsDisabled() {
+        logger.setLevel(Level.INFO);
+        LogSampler sampler = new LogSampler(logger, Level.FINE, 1);
+
+        assertThat(sampler.sample()).isFalse();
+
+        logger.setLevel(Level.FINE);
+
+        assertThat(sampler.sample()).isTrue();
+    }
+}
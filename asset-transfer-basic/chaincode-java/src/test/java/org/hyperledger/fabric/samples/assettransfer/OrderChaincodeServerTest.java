@@ -0,0 +1,136 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.shim.ChaincodeServerProperties;
+import org.hyperledger.fabric.shim.impl.InvocationTaskExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class OrderChaincodeServerTest {
+
+    private static Map<String, String> env(String... nameValues) {
+        Map<String, String> env = new HashMap<>();
+        for (int i = 0; i < nameValues.length; i += 2) {
+            env.put(nameValues[i], nameValues[i + 1]);
+        }
+        return env;
+    }
+
+    @Test
+    public void listensOnServerAddressWithoutTlsByDefault() {
+        ChaincodeServerProperties properties = OrderChaincodeServer.serverProperties(env("CHAINCODE_SERVER_ADDRESS", "0.0.0.0:9999"));
+
+        assertThat(properties.getServerAddress()).isEqualTo(new InetSocketAddress("0.0.0.0", 9999));
+        assertThat(properties.isTlsEnabled()).isFalse();
+        assertThat(properties.getMaxInboundMessageSize()).isEqualTo(104857600);
+    }
+
+    @Test
+    public void configuresTlsAndMessageSize() {
+        ChaincodeServerProperties properties = OrderChaincodeServer.serverProperties(env("CHAINCODE_SERVER_ADDRESS", "basic.org1.example.com:9999",
+                "CHAINCODE_TLS_DISABLED", "false", "CHAINCODE_TLS_KEY", "/tls/key.pem", "CHAINCODE_TLS_CERT", "/tls/cert.pem",
+                "CHAINCODE_CLIENT_CA_CERT", "/tls/ca.pem", "CHAINCODE_MAX_INBOUND_MESSAGE_SIZE", "4194304"));
+
+        assertThat(properties.isTlsEnabled()).isTrue();
+        assertThat(properties.getKeyFile()).isEqualTo("/tls/key.pem");
+        assertThat(properties.getKeyCertChainFile()).isEqualTo("/tls/cert.pem");
+        assertThat(properties.getTrustCertCollectionFile()).isEqualTo("/tls/ca.pem");
+        assertThat(properties.getMaxInboundMessageSize()).isEqualTo(4194304);
+    }
+
+    @Test
+    public void rejectsIncompleteServerConfig() {
+        assertThatThrownBy(() -> OrderChaincodeServer.serverProperties(env()))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("CHAINCODE_SERVER_ADDRESS must be set");
+        assertThatThrownBy(() -> OrderChaincodeServer.serverProperties(env("CHAINCODE_SERVER_ADDRESS", "9999")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("CHAINCODE_SERVER_ADDRESS must be host:port, not 9999");
+        assertThatThrownBy(() -> OrderChaincodeServer.serverProperties(env("CHAINCODE_SERVER_ADDRESS", "0.0.0.0:99999")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("CHAINCODE_SERVER_ADDRESS has an invalid port 99999");
+        assertThatThrownBy(() -> OrderChaincodeServer.serverProperties(env("CHAINCODE_SERVER_ADDRESS", "0.0.0.0:9999",
+                "CHAINCODE_TLS_DISABLED", "false", "CHAINCODE_TLS_CERT", "/tls/cert.pem")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("CHAINCODE_TLS_KEY must be set");
+        assertThatThrownBy(() -> OrderChaincodeServer.serverProperties(env("CHAINCODE_SERVER_ADDRESS", "0.0.0.0:9999",
+                "CHAINCODE_MAX_INBOUND_MESSAGE_SIZE", "4MB")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("CHAINCODE_MAX_INBOUND_MESSAGE_SIZE must be a number, not 4MB");
+    }
+
+    @Test
+    public void passesExecutorSettingsToShim() {
+        Properties config = new Properties();
+        OrderChaincodeServer.configureExecutor(env("TP_CORE_POOL_SIZE", "32", "TP_MAX_POOL_SIZE", "64", "TP_QUEUE_SIZE", "1000",
+                "CHAINCODE_EXECUTOR", "virtual", "CHAINCODE_METRICS_ENABLED", "true"), config);
+
+        assertThat(config.getProperty("TP_CORE_POOL_SIZE")).isEqualTo("32");
+        assertThat(config.getProperty("TP_MAX_POOL_SIZE")).isEqualTo("64");
+        assertThat(config.getProperty("TP_QUEUE_SIZE")).isEqualTo("1000");
+        assertThat(config.getProperty("TP_KEEP_ALIVE_MS")).isNull();
+        assertThat(config.getProperty("CHAINCODE_EXECUTOR")).isEqualTo("virtual");
+        assertThat(config.getProperty("CHAINCODE_EXECUTOR_LOG_METRICS")).isEqualTo("true");
+        assertThat(config.getProperty("CHAINCODE_METRICS_ENABLED")).isEqualTo("true");
+        assertThat(config.getProperty("CHAINCODE_METRICS_PROVIDER")).isEqualTo(TransactionExecutorProvider.class.getName());
+    }
+
+    @Test
+    public void rejectsInvalidPoolSize() {
+        assertThatThrownBy(() -> OrderChaincodeServer.configureExecutor(env("TP_QUEUE_SIZE", "0"), new Properties()))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("TP_QUEUE_SIZE must be positive, not 0");
+    }
+
+    @Test
+    public void keepsShimThreadsOnPlatformExecutor() {
+        ThreadFactory shimThreads = Executors.defaultThreadFactory();
+        ThreadPoolExecutor executor = executor(shimThreads);
+        TransactionExecutorProvider provider = new TransactionExecutorProvider();
+        provider.initialize(new Properties());
+
+        provider.setTaskMetricsCollector((InvocationTaskExecutor) executor);
+
+        assertThat(executor.getThreadFactory()).isSameAs(shimThreads);
+    }
+
+    @Test
+    public void runsTransactionsOnVirtualThreads() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21);
+        ThreadPoolExecutor executor = executor(Executors.defaultThreadFactory());
+        TransactionExecutorProvider provider = new TransactionExecutorProvider();
+        Properties config = new Properties();
+        config.setProperty("CHAINCODE_EXECUTOR", "virtual");
+        provider.initialize(config);
+
+        provider.setTaskMetricsCollector((InvocationTaskExecutor) executor);
+
+        assertThat(executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())).get()).isEqualTo(true);
+        executor.shutdown();
+    }
+
+    @Test
+    public void rejectsVirtualThreadsBeforeJava21() {
+        assumeTrue(Runtime.version().feature() < 21);
+
+        assertThatThrownBy(() -> TransactionExecutorProvider.threadFactory("virtual"))
+                .isInstanceOf(IllegalStateException.class).hasMessageStartingWith("CHAINCODE_EXECUTOR=virtual needs Java 21 or later");
+    }
+
+    @Test
+    public void rejectsUnknownExecutor() {
+        assertThatThrownBy(() -> TransactionExecutorProvider.threadFactory("forkjoin"))
+                .isInstanceOf(IllegalArgumentException.class).hasMessage("CHAINCODE_EXECUTOR must be platform or virtual, not forkjoin");
+    }
+
+    private static ThreadPoolExecutor executor(ThreadFactory threadFactory) {
+        return new InvocationTaskExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+}
@@ -0,0 +1,125 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import com.owlike.genson.Genson;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OrderCodecTest {
+    private static final String[] STATUSES = {"ORDERED", "COLLECTING_MATERIALS", "MATERIALS_COLLECTED", "MATERIALS_DELIVERED", "PRODUCED"};
+
+    private final Genson genson = new Genson();
+
+    /**
+     * Orders shaped like the ones on our ledger: sequential IDs, one product, quantities in the
+     * hundreds to thousands and delivery dates spread over a year.
+     */
+    private static List<Order> realisticOrders(int count) {
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int quantity = 200 + (i * 37) % 4800;
+            String deliveryDate = EpochDays.format(19000 + i % 365);
+            orders.add(new Order(String.format("order%06d", i), "womanPurse", quantity, deliveryDate, STATUSES[i % STATUSES.length], 1000,
+                    (i * 13) % (quantity + 1), (i * 7) % (quantity + 1)));
+        }
+        return orders;
+    }
+
+    @Test
+    public void roundTripsOrders() {
+        for (Order order : realisticOrders(100)) {
+            assertThat(OrderCodec.decode(OrderCodec.encode(order))).isEqualTo(order);
+        }
+    }
+
+    @Test
+    public void roundTripsNullAndNegativeFields() {
+        Order order = new Order("order1", null, -5, "1969-12-31", null, Integer.MIN_VALUE, Integer.MAX_VALUE, -1);
+
+        Order decoded = OrderCodec.decode(OrderCodec.encode(order));
+
+        assertThat(decoded).isEqualTo(order);
+        assertThat(decoded.getDeliveryEpochDay()).isEqualTo(-1);
+    }
+
+    @Test
+    public void decodesSharedStatusAndProductNameInstances() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+        Order decoded = OrderCodec.decode(OrderCodec.encodeHeader(order), OrderCodec.encodeProgress(order));
+
+        assertThat(decoded.getStatus()).isSameAs(OrderContract.OrderStatuses.ORDERED.name());
+        assertThat(decoded.getProductName()).isSameAs(StatusTransitions.PRODUCT_NAME);
+    }
+
+    @Test
+    public void writesVersionHeader() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+        assertThat(OrderCodec.encode(order)[0]).isEqualTo(OrderCodec.VERSION_1);
+    }
+
+    @Test
+    public void readsLegacyJsonRecords() {
+        byte[] legacy = ("{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", "
+                + "\"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":10,\"metalCount\":20}").getBytes(StandardCharsets.UTF_8);
+
+        assertThat(OrderCodec.isJson(legacy)).isTrue();
+        assertThat(OrderCodec.decode(legacy)).isEqualTo(new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 10, 20));
+    }
+
+    @Test
+    public void roundTripsHeaderAndProgress() {
+        for (Order order : realisticOrders(100)) {
+            assertThat(OrderCodec.decode(OrderCodec.encodeHeader(order), OrderCodec.encodeProgress(order))).isEqualTo(order);
+        }
+    }
+
+    @Test
+    public void combinesSingleRecordWithProgress() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+        Order produced = new Order("order1", "womanPurse", 300, "2022-05-06", "PRODUCED", 1000, 300, 300);
+
+        assertThat(OrderCodec.decode(OrderCodec.encode(order), OrderCodec.encodeProgress(produced))).isEqualTo(produced);
+        assertThat(OrderCodec.decode(genson.serialize(order).getBytes(StandardCharsets.UTF_8), OrderCodec.encodeProgress(produced)))
+                .isEqualTo(produced);
+        assertThat(OrderCodec.decode(OrderCodec.encode(order), new byte[0])).isEqualTo(order);
+    }
+
+    @Test
+    public void keepsProgressSmall() {
+        Order order = new Order("order000001", "womanPurse", 4800, "2022-05-06", "COLLECTING_MATERIALS", 1000, 4800, 4800);
+
+        assertThat(OrderCodec.encodeProgress(order).length).isLessThan(OrderCodec.encode(order).length / 2);
+    }
+
+    @Test
+    public void rejectsUnknownVersion() {
+        assertThatThrownBy(() -> OrderCodec.decode(new byte[] {7, 0}))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Unsupported order encoding version 7");
+    }
+
+    @Nested
+    class ComparedToJson {
+        private final List<Order> orders = realisticOrders(10000);
+
+        @Test
+        public void isLessThanHalfTheSize() {
+            long jsonBytes = 0;
+            long binaryBytes = 0;
+            for (Order order : orders) {
+                jsonBytes += genson.serialize(order).getBytes(StandardCharsets.UTF_8).length;
+                binaryBytes += OrderCodec.encode(order).length;
+            }
+
+            assertThat(binaryBytes * 2).isLessThan(jsonBytes);
+        }
+    }
+}
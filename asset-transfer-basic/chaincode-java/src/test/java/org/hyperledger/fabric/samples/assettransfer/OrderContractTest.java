@@ -1,18 +1,34 @@
 package org.hyperledger.fabric.samples.assettransfer;
 
 import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.protos.peer.ChaincodeShim.QueryResponseMetadata;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
 import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.catchThrowable;
 import static org.assertj.core.api.Java6Assertions.assertThat;
@@ -57,11 +73,11 @@ class OrderContractTest {
 
             assetList = new ArrayList<>();
 
-            assetList.add(new OrderContractTest.MockKeyValue("order1",
+            assetList.add(new OrderContractTest.MockKeyValue(new CompositeKey(OrderContract.ORDER, "order1").toString(),
                     "{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":300,\"metalCount\":0}"));
-            assetList.add(new OrderContractTest.MockKeyValue("order2",
+            assetList.add(new OrderContractTest.MockKeyValue(new CompositeKey(OrderContract.ORDER, "order2").toString(),
                     "{\"iD\":\"order2\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":300,\"metalCount\":0}"));
-            assetList.add(new OrderContractTest.MockKeyValue("order3",
+            assetList.add(new OrderContractTest.MockKeyValue(new CompositeKey(OrderContract.ORDER, "order3").toString(),
                     "{\"iD\":\"order3\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":300,\"metalCount\":0}"));
         }
 
@@ -77,6 +93,138 @@ class OrderContractTest {
 
     }
 
+    private final class MockOrderPageIterator implements QueryResultsIterator<KeyValue>, QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final List<KeyValue> orderList;
+        private final String bookmark;
+
+        MockOrderPageIterator(final int size, final String bookmark) {
+            super();
+
+            orderList = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                orderList.add(new OrderContractTest.MockKeyValue(new CompositeKey(OrderContract.ORDER, "order" + i).toString(),
+                        "{\"iD\":\"order" + i + "\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":0,\"metalCount\":0}"));
+            }
+            this.bookmark = bookmark;
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder().setFetchedRecordsCount(orderList.size()).setBookmark(bookmark).build();
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return orderList.iterator();
+        }
+
+        @Override
+        public void close() throws Exception {
+            // do nothing
+        }
+
+    }
+
+    private final class MockRichQueryIterator implements QueryResultsIteratorWithMetadata<KeyValue> {
+
+        private final List<KeyValue> page = new ArrayList<>();
+        private final String bookmark;
+
+        /**
+         * Runs a query against documents in key order, resuming after the key in the bookmark.
+         */
+        MockRichQueryIterator(final LinkedHashMap<String, String> documents, final String query, final int pageSize, final String bookmark) {
+            super();
+
+            SelectorEvaluator selector = new SelectorEvaluator(query);
+            for (java.util.Map.Entry<String, String> document : documents.entrySet()) {
+                if (page.size() < pageSize && document.getKey().compareTo(bookmark) > 0 && selector.matches(document.getValue())) {
+                    page.add(new OrderContractTest.MockKeyValue(document.getKey(), document.getValue()));
+                }
+            }
+            this.bookmark = page.isEmpty() ? "" : page.get(page.size() - 1).getKey();
+        }
+
+        @Override
+        public QueryResponseMetadata getMetadata() {
+            return QueryResponseMetadata.newBuilder().setFetchedRecordsCount(page.size()).setBookmark(bookmark).build();
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return page.iterator();
+        }
+
+        @Override
+        public void close() throws Exception {
+            // do nothing
+        }
+
+    }
+
+    private final class MockIndexResultsIterator implements QueryResultsIterator<KeyValue> {
+
+        private final List<KeyValue> entryList;
+
+        MockIndexResultsIterator(final String index, final String value, final String... ids) {
+            super();
+
+            entryList = new ArrayList<>();
+            for (String id : ids) {
+                entryList.add(new OrderContractTest.MockKeyValue(new CompositeKey(index, value, id).toString(), "\u0000"));
+            }
+        }
+
+        MockIndexResultsIterator(final CompositeKey... keys) {
+            super();
+
+            entryList = new ArrayList<>();
+            for (CompositeKey key : keys) {
+                entryList.add(new OrderContractTest.MockKeyValue(key.toString(), "\u0000"));
+            }
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return entryList.iterator();
+        }
+
+        @Override
+        public void close() throws Exception {
+            // do nothing
+        }
+
+    }
+
+    private final class MockCountResultsIterator implements QueryResultsIterator<KeyValue> {
+
+        private final List<KeyValue> countList;
+
+        MockCountResultsIterator(final String type, final String... statusTxIdCount) {
+            super();
+
+            countList = new ArrayList<>();
+            for (int i = 0; i < statusTxIdCount.length; i += 3) {
+                CompositeKey key = statusTxIdCount[i + 1] == null
+                        ? new CompositeKey(type, statusTxIdCount[i])
+                        : new CompositeKey(type, statusTxIdCount[i], statusTxIdCount[i + 1]);
+                countList.add(new OrderContractTest.MockKeyValue(key.toString(), statusTxIdCount[i + 2]));
+            }
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return countList.iterator();
+        }
+
+        @Override
+        public void close() throws Exception {
+            // do nothing
+        }
+
+    }
+
     @Test
     public void invokeUnknownTransaction() {
         OrderContract contract = new OrderContract();
@@ -102,9 +250,11 @@ class OrderContractTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
             //TODO
-            when(stub.getStringState("order1"))
-                    .thenReturn("{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":0,\"metalCount\":0}");
+            when(stub.getState("order1"))
+                    .thenReturn("{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":0,\"metalCount\":0}".getBytes());
 
             Order order = contract.ReadOrder(ctx, "order1");
 
@@ -117,7 +267,7 @@ class OrderContractTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("order1")).thenReturn("");
+            when(stub.getState("order1")).thenReturn("".getBytes());
 
             Throwable thrown = catchThrowable(() -> {
                 contract.ReadOrder(ctx, "order1");
@@ -138,8 +288,8 @@ class OrderContractTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("order2"))
-                    .thenReturn("{\"iD\":\"order2, \"productName\":300,\"quantity\":\"300\", \"deliveryDate\":\"2022-05-06, \"status\":ORDERED,\"price\":\"1000\", \"leatherCount\":300,\"metalCount\":\"0\"}");
+            when(stub.getState("order2"))
+                    .thenReturn("{\"iD\":\"order2, \"productName\":300,\"quantity\":\"300\", \"deliveryDate\":\"2022-05-06, \"status\":ORDERED,\"price\":\"1000\", \"leatherCount\":300,\"metalCount\":\"0\"}".getBytes());
 
             Throwable thrown = catchThrowable(() -> {
                 contract.CreateOrder(ctx, "order2", "productName", 2, "2022-05-06", "status", 10,  0, 0);
@@ -156,7 +306,8 @@ class OrderContractTest {
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("order1")).thenReturn("");
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("order1")).thenReturn("".getBytes());
 
             Order asset = contract.CreateOrder(ctx, "order1", "productName", 2, "2022-05-06", "status", 10,  0, 0);
 
@@ -170,145 +321,1545 @@ class OrderContractTest {
         Context ctx = mock(Context.class);
         ChaincodeStub stub = mock(ChaincodeStub.class);
         when(ctx.getStub()).thenReturn(stub);
-        when(stub.getStateByRange("", "")).thenReturn(new MockAssetResultsIterator());
+        when(stub.getStateByPartialCompositeKey(OrderContract.ORDER)).thenReturn(new MockAssetResultsIterator());
+        when(stub.getStateByPartialCompositeKey(OrderContract.ORDER_PROGRESS)).thenReturn(new MockCountResultsIterator(OrderContract.ORDER_PROGRESS));
 
         String assets = contract.GetAllOrders(ctx);
 
+        assertThat(assets).isEqualTo("[" + canonical("order1") + "," + canonical("order2") + "," + canonical("order3") + "]");
 //        assertThat(assets).isEqualTo("[{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":ORDERED\",\"price\":1000, \"leatherCount\":300,\"metalCount\":0},"
 //                + "{\"iD\":\"order2\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":300,\"metalCount\":0},"
 //                + "{\"iD\":\"order3\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":300,\"metalCount\":0},");
     }
 
+    @Test
+    void invokeGetAllAssetsTransactionOverLimit() {
+        OrderContract contract = new OrderContract();
+        Context ctx = mock(Context.class);
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(ctx.getStub()).thenReturn(stub);
+        when(stub.getStateByPartialCompositeKey(OrderContract.ORDER)).thenReturn(new MockOrderPageIterator(OrderContract.MAX_QUERY_RESULTS + 1, ""));
+        when(stub.getStateByPartialCompositeKey(OrderContract.ORDER_PROGRESS)).thenReturn(new MockCountResultsIterator(OrderContract.ORDER_PROGRESS));
+
+        Throwable thrown = catchThrowable(() -> {
+            contract.GetAllOrders(ctx);
+        });
+
+        assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                .hasMessage("More than 1000 orders found, use GetOrdersWithPagination");
+        assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("TOO_MANY_RESULTS".getBytes());
+    }
+
     @Nested
-    class UpdateOrderTransaction {
+    class GetOrdersWithPaginationTransaction {
 
         @Test
-        public void whenAssetExists() {
+        public void returnsPageAndNextBookmark() {
             OrderContract contract = new OrderContract();
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("order1"))
-                    .thenReturn("{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-07-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":0,\"metalCount\":0}");
+            when(stub.getStateByPartialCompositeKeyWithPagination(argThat(key -> key.toString().equals(new CompositeKey(OrderContract.ORDER).toString())),
+                    eq(2), eq("order0"))).thenReturn(new MockOrderPageIterator(2, "order2"));
 
-            Order asset = contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000,  100, 0);
+            String page = contract.GetOrdersWithPagination(ctx, 2, "order0");
 
-            assertThat(asset).isEqualTo(new Order("order1", "womanPurse", 300, "2022-05-06", "COLLECTING_MATERIALS", 1000,  100, 0));
+            assertThat(page).contains("\"bookmark\":\"order2\"").contains("\"fetchedRecordsCount\":2")
+                    .contains("\"iD\":\"order0\"").contains("\"iD\":\"order1\"");
         }
 
         @Test
-        public void whenAssetDoesNotExist() {
+        public void whenPageSizeIsTooBig() {
             OrderContract contract = new OrderContract();
             Context ctx = mock(Context.class);
             ChaincodeStub stub = mock(ChaincodeStub.class);
             when(ctx.getStub()).thenReturn(stub);
-            when(stub.getStringState("order1")).thenReturn("");
 
             Throwable thrown = catchThrowable(() -> {
-                contract.UpdateOrder(ctx, "order1", "productName", 2, "2022-05-06", "status", 10,  0, 0);
+                contract.GetOrdersWithPagination(ctx, OrderContract.MAX_QUERY_RESULTS + 1, "");
             });
 
             assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
-                    .hasMessage("Order order1 does not exist");
-            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("ORDER_NOT_FOUND".getBytes());
+                    .hasMessage("Page size must be between 1 and 1000");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_PAGE_SIZE".getBytes());
+            verifyZeroInteractions(stub);
         }
     }
 
-    @Test
-    void getDeliveryDate() {
-        OrderContract orderContract = new OrderContract();
-        String stringDate = "2022-06-02";
-        LocalDate actual = orderContract.getDeliveryDate(stringDate);
-        LocalDate expected = LocalDate.of(2022, 6, 2);
-        assertEquals(expected, actual);
-    }
+    @Nested
+    class ProjectedQueries {
 
-    @Test
-    void testToString() {
-        Order order = new Order("order1", "productName", 2, "2022-05-06", "status", 10,0, 0);
-        String actual = order.toString();
-        String expected = "Order@ca5182ed" +
-                " [iD=" + "order1" +
-                ", productName=" + "productName" +
-                ", quantity=" + 2 +
-                ", deliveryDate=" + "2022-05-06" +
-                ", status=" + "status" +
-                ", price=" + 10 +
-                ", leatherCount=" + 0 +
-                ", metalCount=" + 0 +
-                "]";
-//        assertEquals(expected, actual);
-    }
+        @Test
+        public void returnsOnlyRequestedProperties() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(OrderContract.ORDER)).thenReturn(new MockOrderPageIterator(2, ""));
+            when(stub.getStateByPartialCompositeKey(OrderContract.ORDER_PROGRESS)).thenReturn(new MockCountResultsIterator(OrderContract.ORDER_PROGRESS));
 
-    @Test
-    void validateOrdered() throws InvalidOrderException {
-        OrderContract orderContract = new OrderContract();
-        Order order = new Order("testOrder", "womanPurse", 1000, "2022-06-07", "ORDERED", 1000, 0, 0);
-        boolean actual = orderContract.validateOrdered(order);
+            String orders = contract.GetAllOrdersProjected(ctx, "ID,status", "");
 
-        Assertions.assertEquals(true, actual);
-    }
+            assertThat(orders).isEqualTo("[{\"iD\":\"order0\",\"status\":\"ORDERED\"},{\"iD\":\"order1\",\"status\":\"ORDERED\"}]");
+        }
 
-    @Test
-    void validateInvalidProduct(){
-        OrderContract orderContract = new OrderContract();
-        InvalidOrderException thrown = Assertions.assertThrows(InvalidOrderException.class, () -> {
-            Order order = new Order("testOrder", "jacket", 1000, "2022-06-07", "ORDERED", 1000, 0, 0);
-           orderContract.validateOrdered(order);
-        });
-        Assertions.assertEquals("We do not have such product in our offer", thrown.getMessage());
-    }
+        @Test
+        public void compressesPagesOnRequest() throws Exception {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKeyWithPagination(any(CompositeKey.class), eq(2), eq(""))).thenReturn(new MockOrderPageIterator(2, "order2"));
 
-    @Test
-    void validateTooBigOrTooSoonOrder(){
-        OrderContract orderContract = new OrderContract();
-        Order order = new Order("testOrder", "womanPurse", 10000, "2022-06-07", "ORDERED", 1000, 0, 0);
-        InvalidOrderException thrown = Assertions.assertThrows(InvalidOrderException.class, () -> {
-            orderContract.validateOrdered(order);
-        });
-        Assertions.assertEquals("Quantity/days to delivery should be less than 100", thrown.getMessage());
-    }
+            String page = contract.GetOrdersWithPaginationProjected(ctx, 2, "", "ID", "gzip");
 
-    @Test
-    void validatePrice(){
-        OrderContract orderContract = new OrderContract();
-        Order order = new Order("testOrder", "womanPurse", 1000, "2022-06-07", "ORDERED", 800,  0, 0);
-        InvalidOrderException thrown = Assertions.assertThrows(InvalidOrderException.class, () -> {
-            orderContract.validateOrdered(order);
-        });
-        Assertions.assertEquals("Price per one product should be 1000$", thrown.getMessage());
-    }
+            assertThat(ResponseEncodingTest.gunzip(Base64.getDecoder().decode(page)))
+                    .isEqualTo("{\"records\":[{\"iD\":\"order0\"},{\"iD\":\"order1\"}],\"fetchedRecordsCount\":2,\"bookmark\":\"order2\"}");
+        }
 
-    @Test
-    void updateOrderedStatus() throws InvalidOrderException {
-        OrderContract orderContract = new OrderContract();
-        Order order = new Order("testOrder", "womanPurse", 1000, "2022-06-05", "ORDERED", 1000, 0, 0);
-        String actual = orderContract.updateStatus(order);
-        Assertions.assertEquals("COLLECTING_MATERIALS", actual);
-    }
+        @Test
+        public void whenPropertyIsUnknown() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
 
-    @Test
-    void updateLeatherCollectedStatus() throws InvalidOrderException {
-        OrderContract orderContract = new OrderContract();
-        //TODO add leather and metal counts conditions
-        Order order = new Order("testOrder", "womanPurse", 1000, "2022-06-05", "COLLECTING_MATERIALS", 1000, 1000, 1000);
-        String actual = orderContract.updateStatus(order);
-        Assertions.assertEquals("MATERIALS_COLLECTED", actual);
+            Throwable thrown = catchThrowable(() -> {
+                contract.QueryOrdersProjected(ctx, "{}", 10, "", "ID,owner", "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Unknown order property owner");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_QUERY".getBytes());
+            verifyZeroInteractions(stub);
+        }
+
+        @Test
+        public void whenEncodingIsUnknown() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.GetAllOrdersProjected(ctx, "", "br");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Unknown response encoding br");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_QUERY".getBytes());
+            verifyZeroInteractions(stub);
+        }
     }
 
-    @Test
-    void updateMaterialsCollectedStatus() throws InvalidOrderException {
-        OrderContract orderContract = new OrderContract();
-        Order order = new Order("testOrder", "womanPurse", 1000, "2022-06-05", "MATERIALS_COLLECTED", 1000,  0, 0);
-        String actual = orderContract.updateStatus(order);
-        Assertions.assertEquals("MATERIALS_DELIVERED", actual);
+    @Nested
+    class SplitOrderState {
+        private final Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+        @Test
+        public void createOrderWritesHeaderAndProgress() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+
+            contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+            verify(stub).putState(new CompositeKey(OrderContract.ORDER, "order1").toString(), OrderCodec.encodeHeader(order));
+            verify(stub).putState(new CompositeKey(OrderContract.ORDER_PROGRESS, "order1").toString(), OrderCodec.encodeProgress(order));
+        }
+
+        @Test
+        public void statusChangeWritesOnlyProgress() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            String orderKey = new CompositeKey(OrderContract.ORDER, "order1").toString();
+            String progressKey = new CompositeKey(OrderContract.ORDER_PROGRESS, "order1").toString();
+            when(stub.getState(orderKey)).thenReturn(OrderCodec.encodeHeader(order));
+            when(stub.getState(progressKey)).thenReturn(OrderCodec.encodeProgress(order));
+
+            Order updated = contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+            assertThat(updated.getStatus()).isEqualTo("COLLECTING_MATERIALS");
+            verify(stub, never()).putState(eq(orderKey), any());
+            verify(stub, never()).getState("order1");
+            verify(stub).putState(progressKey, OrderCodec.encodeProgress(updated));
+            verify(stub).putState(new CompositeKey(OrderContract.ORDER_VIEW, "order1").toString(), OrderJsonWriter.toQueryView(updated));
+        }
+
+        @Test
+        public void materialsOnlyUpdateLeavesQueryViewAlone() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            Order collecting = new Order("order1", "womanPurse", 300, "2022-05-06", "COLLECTING_MATERIALS", 1000, 0, 0);
+            String progressKey = new CompositeKey(OrderContract.ORDER_PROGRESS, "order1").toString();
+            when(stub.getState(new CompositeKey(OrderContract.ORDER, "order1").toString())).thenReturn(OrderCodec.encodeHeader(collecting));
+            when(stub.getState(progressKey)).thenReturn(OrderCodec.encodeProgress(collecting));
+
+            Order updated = contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "COLLECTING_MATERIALS", 1000, 10, 20);
+
+            assertThat(updated.getStatus()).isEqualTo("COLLECTING_MATERIALS");
+            verify(stub).putState(progressKey, OrderCodec.encodeProgress(updated));
+            verify(stub, never()).putState(eq(new CompositeKey(OrderContract.ORDER_VIEW, "order1").toString()), any());
+        }
+
+        @Test
+        public void readOrderAssemblesHeaderAndProgress() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            Order produced = new Order("order1", "womanPurse", 300, "2022-05-06", "PRODUCED", 1000, 300, 300);
+            when(stub.getState("order1")).thenReturn(OrderCodec.encodeHeader(order));
+            when(stub.getState(new CompositeKey(OrderContract.ORDER_PROGRESS, "order1").toString())).thenReturn(OrderCodec.encodeProgress(produced));
+
+            assertThat(contract.ReadOrder(ctx, "order1")).isEqualTo(produced);
+        }
+
+        @Test
+        public void getAllOrdersJoinsProgressInKeyOrder() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(OrderContract.ORDER)).thenReturn(new MockAssetResultsIterator());
+            String produced = new String(OrderCodec.encodeProgress(new Order("order2", null, 0, "2022-05-06", "PRODUCED", 0, 10, 20)),
+                    StandardCharsets.US_ASCII);
+            when(stub.getStateByPartialCompositeKey(OrderContract.ORDER_PROGRESS))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.ORDER_PROGRESS, "order0", null, produced, "order2", null, produced));
+
+            String orders = contract.GetAllOrders(ctx);
+
+            assertThat(orders).isEqualTo("[" + canonical("order1")
+                    + ",{\"deliveryDate\":\"2022-05-06\",\"iD\":\"order2\",\"leatherCount\":10,\"metalCount\":20,\"price\":1000,"
+                    + "\"productName\":\"womanPurse\",\"quantity\":300,\"status\":\"PRODUCED\"}," + canonical("order3") + "]");
+        }
     }
 
-    @Test
-    void updateMaterialsDeliveredStatus() throws InvalidOrderException {
-        OrderContract orderContract = new OrderContract();
-        Order order = new Order("testOrder", "womanPurse", 1000, "2022-06-05", "MATERIALS_DELIVERED", 1000,  0, 0);
-        String actual = orderContract.updateStatus(order);
-        Assertions.assertEquals("PRODUCED", actual);
+    @Nested
+    class OrderNamespace {
+
+        @Test
+        public void migrateOrdersMovesBareIdRecordsInBatches() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            List<KeyValue> bareRecords = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                bareRecords.add(new MockKeyValue("order" + i, "{\"iD\":\"order" + i + "\",\"deliveryDate\":\"2022-05-06\"}"));
+            }
+            QueryResultsIterator<KeyValue> bareIterator = mock(QueryResultsIterator.class);
+            when(bareIterator.iterator()).thenReturn(bareRecords.iterator());
+            when(stub.getStateByRange("", "")).thenReturn(bareIterator);
+
+            int migrated = contract.MigrateOrders(ctx, 2);
+
+            assertThat(migrated).isEqualTo(2);
+            verify(stub).putState(new CompositeKey(OrderContract.ORDER, "order0").toString(), bareRecords.get(0).getValue());
+            verify(stub).delState("order0");
+            verify(stub).putState(new CompositeKey(OrderContract.ORDER_VIEW, "order0").toString(),
+                    OrderJsonWriter.toQueryView(OrderCodec.decode(bareRecords.get(0).getValue())));
+            verify(stub).putState(new CompositeKey(OrderContract.ORDER, "order1").toString(), bareRecords.get(1).getValue());
+            verify(stub).delState("order1");
+            verify(stub, never()).delState("order2");
+        }
+
+        @Test
+        public void completedMigrationStopsBareIdLookups() {
+            InMemoryLedger ledger = new InMemoryLedger();
+            OrderContract contract = new OrderContract(null);
+            Order legacy = new Order("order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0);
+            ledger.put("order1", OrderJsonWriter.toJson(legacy));
+
+            InMemoryChaincodeStub migration = ledger.newTransaction("tx1", Instant.parse("2022-05-01T10:00:00Z"));
+            Context ctx = contract.createContext(migration);
+            assertThat(contract.MigrateOrders(ctx, 10)).isEqualTo(1);
+            contract.afterTransaction(ctx, 1);
+            ledger.commit(migration);
+
+            assertThat(ledger.get(OrderContract.ORDERS_MIGRATED)).isEqualTo("tx1".getBytes(StandardCharsets.UTF_8));
+            InMemoryChaincodeStub read = ledger.newTransaction("tx2", Instant.parse("2022-05-01T10:00:00Z"));
+            ctx = contract.createContext(read);
+            assertThat(contract.OrderExists(ctx, "order1")).isTrue();
+            assertThat(contract.OrderExists(ctx, "order2")).isFalse();
+            assertThat(read.getReadSet()).doesNotContainKey("order2");
+        }
+
+        @Test
+        public void migratedOrdersAreIndexed() {
+            InMemoryLedger ledger = new InMemoryLedger();
+            OrderContract contract = new OrderContract(null);
+            Order produced = new Order("order1", "womanPurse", 300, "2022-05-06", "PRODUCED", 1000, 300, 300);
+            Order ordered = new Order("order2", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0);
+            ledger.put("order1", OrderJsonWriter.toJson(produced));
+            ledger.put("order2", OrderJsonWriter.toJson(ordered));
+            java.util.function.Function<java.util.function.Function<Context, Object>, Object> submit = transaction -> {
+                InMemoryChaincodeStub stub = ledger.newTransaction("tx" + ledger.getBlockNumber(), Instant.parse("2022-05-01T10:00:00Z"));
+                Context ctx = contract.createContext(stub);
+                Object result = transaction.apply(ctx);
+                contract.afterTransaction(ctx, result);
+                ledger.commit(stub);
+                return result;
+            };
+
+            assertThat(submit.apply(ctx -> contract.MigrateOrders(ctx, 10))).isEqualTo(2);
+
+            assertThat((String) submit.apply(ctx -> contract.QueryOrdersByStatus(ctx, "PRODUCED")))
+                    .contains("\"iD\":\"order1\"").doesNotContain("\"iD\":\"order2\"");
+            assertThat((String) submit.apply(ctx -> contract.QueryOrdersDueBetween(ctx, "2022-07-01", "2022-07-31")))
+                    .contains("\"iD\":\"order2\"").doesNotContain("\"iD\":\"order1\"");
+            assertThat((String) submit.apply(ctx -> contract.ArchiveOrders(ctx, EpochDays.parse("2022-06-01"), 10)))
+                    .startsWith("{\"orderIds\":[\"order1\"],");
+            assertThat((String) submit.apply(ctx -> contract.GetOrderStats(ctx)))
+                    .isEqualTo("{\"ORDERED\":1,\"COLLECTING_MATERIALS\":0,\"MATERIALS_COLLECTED\":0,\"MATERIALS_DELIVERED\":0,\"PRODUCED\":0}");
+        }
+
+        @Test
+        public void updateOrderIndexesBareIdRecord() {
+            InMemoryLedger ledger = new InMemoryLedger();
+            OrderContract contract = new OrderContract(null);
+            ledger.put("order1", OrderJsonWriter.toJson(new Order("order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0)));
+            InMemoryChaincodeStub update = ledger.newTransaction("tx1", Instant.parse("2022-05-01T10:00:00Z"));
+            Context ctx = contract.createContext(update);
+
+            contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0);
+            contract.afterTransaction(ctx, null);
+            ledger.commit(update);
+
+            assertThat(ledger.get(new CompositeKey(OrderContract.STATUS_INDEX, "COLLECTING_MATERIALS", "20220706", "order1").toString())).isNotNull();
+            assertThat(ledger.get(new CompositeKey(OrderContract.DUE_INDEX, "20220706", "order1").toString())).isNotNull();
+        }
+
+        @Test
+        public void updateOrderMovesBareIdRecord() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+            when(stub.getState("order1")).thenReturn(OrderCodec.encode(order));
+
+            contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+            verify(stub).putState(new CompositeKey(OrderContract.ORDER, "order1").toString(), OrderCodec.encodeHeader(order));
+            verify(stub).delState("order1");
+        }
+
+        @Test
+        public void getAllOrdersScansOnlyOrders() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(OrderContract.ORDER)).thenReturn(new MockOrderPageIterator(2, ""));
+            when(stub.getStateByPartialCompositeKey(OrderContract.ORDER_PROGRESS)).thenReturn(new MockCountResultsIterator(OrderContract.ORDER_PROGRESS));
+
+            String orders = contract.GetAllOrders(ctx);
+
+            assertThat(orders).contains("\"iD\":\"order0\"").contains("\"iD\":\"order1\"");
+            verify(stub, never()).getStateByRange(anyString(), anyString());
+        }
+    }
+
+    @Nested
+    class ConcurrentTransactions {
+        private final InMemoryLedger ledger = new InMemoryLedger();
+        private final OrderContract contract = new OrderContract();
+        private int transactions;
+
+        private InMemoryChaincodeStub simulate(java.util.function.Consumer<Context> transaction) {
+            InMemoryChaincodeStub stub = ledger.newTransaction("tx" + ++transactions, Instant.parse("2022-05-01T10:00:00Z"));
+            Context ctx = contract.createContext(stub);
+            transaction.accept(ctx);
+            contract.afterTransaction(ctx, null);
+            return stub;
+        }
+
+        @Test
+        public void materialDeltasDoNotConflict() {
+            ledger.commit(simulate(ctx -> contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0)));
+
+            InMemoryChaincodeStub first = simulate(ctx -> contract.AddMaterials(ctx, "order1", 100, 50));
+            InMemoryChaincodeStub second = simulate(ctx -> contract.AddMaterials(ctx, "order1", 20, 10));
+
+            assertThat(ledger.commit(first, second))
+                    .containsExactly(InMemoryLedger.ValidationCode.VALID, InMemoryLedger.ValidationCode.VALID);
+            Order[] read = new Order[1];
+            simulate(ctx -> read[0] = contract.ReadOrder(ctx, "order1"));
+            assertThat(read[0].getLeatherCount()).isEqualTo(120);
+            assertThat(read[0].getMetalCount()).isEqualTo(60);
+        }
+
+        @Test
+        public void bulkUpdateFoldsEachMaterialDeltaOnce() {
+            ledger.commit(simulate(ctx -> contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0)));
+            ledger.commit(simulate(ctx -> contract.AddMaterials(ctx, "order1", 10, 10)));
+            String order = "{\"iD\":\"order1\",\"productName\":\"womanPurse\",\"quantity\":300,\"deliveryDate\":\"2022-07-06\","
+                    + "\"status\":\"ORDERED\",\"price\":1000,\"leatherCount\":10,\"metalCount\":10}";
+
+            String[] results = new String[1];
+            ledger.commit(simulate(ctx -> results[0] = contract.UpdateOrders(ctx, "[" + order + "," + order + "]", "ALL_OR_NOTHING")));
+
+            assertThat(results[0]).doesNotContain("\"leatherCount\":20");
+            Order[] read = new Order[1];
+            simulate(ctx -> read[0] = contract.ReadOrder(ctx, "order1"));
+            assertThat(read[0].getLeatherCount()).isEqualTo(10);
+            assertThat(read[0].getMetalCount()).isEqualTo(10);
+        }
+
+        @Test
+        public void concurrentUpdatesOfAnOrderConflict() {
+            ledger.commit(simulate(ctx -> contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0)));
+
+            InMemoryChaincodeStub first = simulate(ctx -> contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0));
+            InMemoryChaincodeStub second = simulate(ctx -> contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0));
+
+            assertThat(ledger.commit(first, second))
+                    .containsExactly(InMemoryLedger.ValidationCode.VALID, InMemoryLedger.ValidationCode.MVCC_READ_CONFLICT);
+        }
+
+        @Test
+        public void orderCountsStayConsistentAcrossCompaction() {
+            for (int i = 0; i < 3; i++) {
+                String id = "order" + i;
+                ledger.commit(simulate(ctx -> contract.CreateOrder(ctx, id, "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0)));
+            }
+            InMemoryChaincodeStub compaction = simulate(ctx -> contract.CompactOrderStats(ctx));
+            InMemoryChaincodeStub create = simulate(ctx -> contract.CreateOrder(ctx, "order3", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0));
+
+            assertThat(ledger.commit(create, compaction))
+                    .containsExactly(InMemoryLedger.ValidationCode.VALID, InMemoryLedger.ValidationCode.PHANTOM_READ_CONFLICT);
+            assertThat(ledger.commit(simulate(ctx -> contract.CompactOrderStats(ctx)))).isEqualTo(InMemoryLedger.ValidationCode.VALID);
+            String[] stats = new String[1];
+            simulate(ctx -> stats[0] = contract.GetOrderStats(ctx));
+            assertThat(stats[0]).startsWith("{\"ORDERED\":4,");
+        }
+    }
+
+    @Nested
+    class Metrics {
+        private final InMemoryLedger ledger = new InMemoryLedger();
+        private final ChaincodeMetrics metrics = new ChaincodeMetrics();
+        private final OrderContract contract = new OrderContract(metrics);
+
+        private <T> T submit(String function, java.util.function.Function<Context, T> transaction) {
+            InMemoryChaincodeStub stub = ledger.newTransaction().invoking("basic:" + function);
+            Context ctx = contract.createContext(stub);
+            T result = transaction.apply(ctx);
+            contract.afterTransaction(ctx, result);
+            ledger.commit(stub);
+            return result;
+        }
+
+        @Test
+        public void measuresTransactionsAndTheirStubCalls() {
+            for (int i = 0; i < 3; i++) {
+                String id = "order" + i;
+                submit("CreateOrder", ctx -> contract.CreateOrder(ctx, id, "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0));
+            }
+            String orders = submit("GetAllOrders", contract::GetAllOrders);
+
+            String scrape = metrics.scrape();
+            assertThat(scrape).contains("chaincode_transaction_duration_seconds_count{function=\"CreateOrder\",outcome=\"success\"} 3\n");
+            assertThat(scrape).contains("chaincode_transaction_duration_seconds_count{function=\"GetAllOrders\",outcome=\"success\"} 1\n");
+            // the order and progress ranges of three orders
+            assertThat(scrape).contains("chaincode_records_scanned_sum{function=\"GetAllOrders\"} 6.0\n");
+            assertThat(scrape).contains("chaincode_stub_calls_total{call=\"range\"} 2\n");
+            assertThat(scrape).contains("chaincode_serialization_duration_seconds_count{function=\"CreateOrder\"} 3\n");
+            long written = ledger.range("", null).values().stream().mapToLong(value -> value.getValue().length).sum();
+            assertThat(scrape).contains("chaincode_stub_written_bytes_total " + written + "\n");
+            assertThat(orders).contains("\"iD\":\"order2\"");
+        }
+
+        @Test
+        public void measuresFailedTransactionsOnce() {
+            submit("CreateOrder", ctx -> contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0));
+
+            Context create = contract.createContext(ledger.newTransaction().invoking("basic:CreateOrder"));
+            Throwable exists = catchThrowable(() -> {
+                contract.CreateOrder(create, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0);
+            });
+            Context read = contract.createContext(ledger.newTransaction().invoking("basic:ReadOrder"));
+            Throwable missing = catchThrowable(() -> {
+                contract.ReadOrder(read, "order2");
+            });
+
+            assertThat(exists).isInstanceOf(ChaincodeException.class);
+            assertThat(missing).isInstanceOf(ChaincodeException.class);
+
+            String scrape = metrics.scrape();
+            assertThat(scrape).contains("chaincode_transaction_failures_total{function=\"CreateOrder\",error=\"ORDER_ALREADY_EXISTS\"} 1\n");
+            assertThat(scrape).contains("chaincode_transaction_failures_total{function=\"ReadOrder\",error=\"ORDER_NOT_FOUND\"} 1\n");
+            assertThat(scrape).contains("chaincode_transaction_duration_seconds_count{function=\"CreateOrder\",outcome=\"success\"} 1\n");
+            assertThat(scrape).contains("chaincode_transaction_duration_seconds_count{function=\"CreateOrder\",outcome=\"failure\"} 1\n");
+            assertThat(scrape).doesNotContain("function=\"OrderExists\"");
+        }
+
+        @Test
+        public void leavesStubUnwrappedWithoutMetrics() {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+
+            assertThat(new OrderContract(null).createContext(stub).getStub()).isSameAs(stub);
+            assertThat(contract.createContext(stub).getStub()).isInstanceOf(MeteredChaincodeStub.class);
+        }
+    }
+
+    @Nested
+    class FlightRecorder {
+        private final InMemoryLedger ledger = new InMemoryLedger();
+        private final OrderContract contract = new OrderContract(null);
+
+        @Test
+        public void recordsTransactionsWithTheirStubCallsAndSerializations() throws Exception {
+            Path file = Files.createTempFile("chaincode", ".jfr");
+            InMemoryChaincodeStub stub = ledger.newTransaction().invoking("basic:CreateOrder");
+            try (Recording recording = new Recording()) {
+                recording.enable(ChaincodeEvents.TransactionEvent.class);
+                recording.enable(ChaincodeEvents.StubCallEvent.class);
+                recording.enable(ChaincodeEvents.SerializationEvent.class);
+                recording.start();
+                Context ctx = contract.createContext(stub);
+                Order order = contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0);
+                contract.afterTransaction(ctx, order);
+                recording.stop();
+                recording.dump(file);
+            } finally {
+                ledger.commit(stub);
+            }
+
+            List<RecordedEvent> events;
+            try {
+                events = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.delete(file);
+            }
+            RecordedEvent transaction = single(events, "org.hyperledger.fabric.samples.Transaction");
+            assertThat(transaction.getString("function")).isEqualTo("CreateOrder");
+            assertThat(transaction.getString("txId")).isEqualTo(stub.getTxId());
+            assertThat(transaction.getString("outcome")).isEqualTo("success");
+
+            String orderKey = new CompositeKey(OrderContract.ORDER, "order1").toString();
+            RecordedEvent put = events.stream()
+                    .filter(event -> event.getEventType().getName().equals("org.hyperledger.fabric.samples.StubCall"))
+                    .filter(event -> event.getString("call").equals("put_state") && event.getString("key").equals(orderKey))
+                    .findFirst().orElseThrow(AssertionError::new);
+            assertThat(put.getLong("bytes")).isEqualTo(ledger.range("", null).get(orderKey).getValue().length);
+            // within the transaction
+            assertThat(put.getStartTime().isBefore(transaction.getStartTime())).isFalse();
+            assertThat(put.getEndTime().isAfter(transaction.getEndTime())).isFalse();
+
+            assertThat(events.stream()
+                    .filter(event -> event.getEventType().getName().equals("org.hyperledger.fabric.samples.Serialization"))
+                    .map(event -> event.getString("operation"))
+                    .collect(Collectors.toList()))
+                    .contains("encode", "writeJson");
+        }
+
+        @Test
+        public void recordsFailedTransactionsWithTheirError() throws Exception {
+            Path file = Files.createTempFile("chaincode", ".jfr");
+            InMemoryChaincodeStub stub = ledger.newTransaction().invoking("basic:ReadOrder");
+            try (Recording recording = new Recording()) {
+                recording.enable(ChaincodeEvents.TransactionEvent.class);
+                recording.start();
+                Context ctx = contract.createContext(stub);
+                catchThrowable(() -> contract.ReadOrder(ctx, "missing"));
+                recording.stop();
+                recording.dump(file);
+            }
+
+            List<RecordedEvent> events;
+            try {
+                events = RecordingFile.readAllEvents(file);
+            } finally {
+                Files.delete(file);
+            }
+            RecordedEvent transaction = single(events, "org.hyperledger.fabric.samples.Transaction");
+            assertThat(transaction.getString("function")).isEqualTo("ReadOrder");
+            assertThat(transaction.getString("txId")).isEqualTo(stub.getTxId());
+            assertThat(transaction.getString("outcome")).isEqualTo("failure: ORDER_NOT_FOUND");
+        }
+
+        @Test
+        public void leavesStubUnwrappedWhenNotRecording() {
+            InMemoryChaincodeStub stub = ledger.newTransaction();
+
+            OrderContext ctx = (OrderContext) contract.createContext(stub);
+
+            assertThat(ctx.getStub()).isSameAs(stub);
+            assertThat(ctx.getEvent()).isNull();
+        }
+
+        private RecordedEvent single(List<RecordedEvent> events, String name) {
+            List<RecordedEvent> named = new ArrayList<>();
+            for (RecordedEvent event : events) {
+                if (event.getEventType().getName().equals(name)) {
+                    named.add(event);
+                }
+            }
+            assertThat(named).hasSize(1);
+            return named.get(0);
+        }
+    }
+
+    @Nested
+    class RichQueries {
+        private final LinkedHashMap<String, String> documents = new LinkedHashMap<>();
+
+        private ChaincodeStub couchDb(Context ctx) {
+            for (Order order : new Order[] {
+                    new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0),
+                    new Order("order2", "womanPurse", 300, "2022-07-01", "ORDERED", 1000, 0, 0),
+                    new Order("order3", "womanPurse", 300, "2022-05-01", "PRODUCED", 1000, 300, 300)}) {
+                documents.put(new CompositeKey(OrderContract.ORDER_VIEW, order.getID()).toString(),
+                        new String(OrderJsonWriter.toQueryView(order), StandardCharsets.UTF_8));
+            }
+            // a legacy record is a JSON document too, but not a query view
+            documents.put("order4", "{\"deliveryDate\":\"2022-05-02\",\"iD\":\"order4\",\"productName\":\"womanPurse\",\"status\":\"ORDERED\"}");
+
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getQueryResultWithPagination(anyString(), anyInt(), anyString())).thenAnswer(invocation ->
+                    new MockRichQueryIterator(documents, invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+            return stub;
+        }
+
+        @Test
+        public void matchesSelectorAgainstOrderViews() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            couchDb(ctx);
+
+            String page = contract.QueryOrders(ctx, "{\"status\":\"ORDERED\",\"deliveryDate\":{\"$lt\":\"2022-06-01\"}}", 10, "");
+
+            assertThat(page).isEqualTo("{\"records\":[" + new String(OrderJsonWriter.toJson(new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0)), StandardCharsets.UTF_8)
+                    + "],\"fetchedRecordsCount\":1,\"bookmark\":\"" + new CompositeKey(OrderContract.ORDER_VIEW, "order1").toString().replace("\u0000", "\\u0000") + "\"}");
+        }
+
+        @Test
+        public void cannotMatchOtherDocTypes() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            couchDb(ctx);
+
+            String page = contract.QueryOrders(ctx, "{\"$or\":[{\"docType\":{\"$exists\":false}},{\"iD\":\"order4\"}]}", 10, "");
+
+            assertThat(page).contains("\"fetchedRecordsCount\":0");
+        }
+
+        @Test
+        public void pagesThroughMatchesWithBookmark() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = couchDb(ctx);
+
+            String first = contract.QueryOrders(ctx, "{\"productName\":\"womanPurse\"}", 2, "");
+            String second = contract.QueryOrders(ctx, "{\"productName\":\"womanPurse\"}", 2, new CompositeKey(OrderContract.ORDER_VIEW, "order2").toString());
+
+            assertThat(first).contains("\"iD\":\"order1\"").contains("\"iD\":\"order2\"").contains("\"fetchedRecordsCount\":2")
+                    .doesNotContain("docType");
+            assertThat(second).contains("\"iD\":\"order3\"").contains("\"fetchedRecordsCount\":1");
+            verify(stub).getQueryResultWithPagination("{\"selector\":{\"docType\":\"order\",\"$and\":[{\"productName\":\"womanPurse\"}]}}", 2, "");
+        }
+
+        @Test
+        public void takesMaterialCountsFromProgressRecords() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = couchDb(ctx);
+            Order produced = new Order("order3", "womanPurse", 300, "2022-05-01", "PRODUCED", 1000, 300, 300);
+            when(stub.getState(new CompositeKey(OrderContract.ORDER_PROGRESS, "order3").toString())).thenReturn(OrderCodec.encodeProgress(produced));
+
+            String page = contract.QueryOrders(ctx, "{\"status\":\"PRODUCED\"}", 10, "");
+
+            assertThat(documents.get(new CompositeKey(OrderContract.ORDER_VIEW, "order3").toString())).doesNotContain("Count");
+            assertThat(page).startsWith("{\"records\":[" + new String(OrderJsonWriter.toJson(produced), StandardCharsets.UTF_8) + "]");
+        }
+
+        @Test
+        public void rejectsSelectorsOnMaterialCounts() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.QueryOrders(ctx, "{\"status\":\"ORDERED\",\"leatherCount\":{\"$gt\":0}}", 10, "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Selector cannot match material counts");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_QUERY".getBytes());
+            verifyZeroInteractions(stub);
+        }
+
+        @Test
+        public void whenSelectorIsNotAnObject() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.QueryOrders(ctx, "{\"status\":\"ORDERED\"}]},\"limit\":1,\"fields\":[{\"a\":1}", 10, "");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Selector must be a JSON object");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_QUERY".getBytes());
+            verifyZeroInteractions(stub);
+        }
+
+        @Test
+        public void createOrderWritesQueryView() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+
+            Order order = contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+            verify(stub).putState(new CompositeKey(OrderContract.ORDER_VIEW, "order1").toString(), OrderJsonWriter.toQueryView(order));
+        }
+    }
+
+    @Nested
+    class ArchiveOrdersTransaction {
+
+        @Test
+        public void archivesProducedOrdersDueBeforeDay() throws Exception {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getStateByPartialCompositeKey(OrderContract.STATUS_INDEX, "PRODUCED"))
+                    .thenReturn(new MockIndexResultsIterator(new CompositeKey(OrderContract.STATUS_INDEX, "PRODUCED", "20220506", "order1"),
+                            new CompositeKey(OrderContract.STATUS_INDEX, "PRODUCED", "20220606", "order2")));
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            Order old = new Order("order1", "womanPurse", 300, "2022-05-06", "PRODUCED", 1000, 300, 300);
+            Order recent = new Order("order2", "womanPurse", 300, "2022-06-06", "PRODUCED", 1000, 300, 300);
+            String oldKey = new CompositeKey(OrderContract.ORDER, "order1").toString();
+            when(stub.getState(oldKey)).thenReturn(OrderCodec.encodeHeader(old));
+            when(stub.getState(new CompositeKey(OrderContract.ORDER_PROGRESS, "order1").toString())).thenReturn(OrderCodec.encodeProgress(old));
+            when(stub.getState(new CompositeKey(OrderContract.ORDER, "order2").toString())).thenReturn(OrderCodec.encodeHeader(recent));
+            when(stub.getState(new CompositeKey(OrderContract.ORDER_PROGRESS, "order2").toString())).thenReturn(OrderCodec.encodeProgress(recent));
+
+            String digest = contract.ArchiveOrders(ctx, EpochDays.parse("2022-06-01"), 10);
+
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(OrderJsonWriter.toJson(old));
+            sha256.update((byte) '\n');
+            StringBuilder hash = new StringBuilder();
+            for (byte b : sha256.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            assertThat(digest).isEqualTo("{\"orderIds\":[\"order1\"],\"stateHash\":\"" + hash + "\"}");
+            verify(stub).putState(new CompositeKey(OrderContract.ARCHIVE, "tx1").toString(), digest.getBytes(StandardCharsets.UTF_8));
+            verify(stub).delState(oldKey);
+            verify(stub).delState(new CompositeKey(OrderContract.ORDER_PROGRESS, "order1").toString());
+            verify(stub).delState(new CompositeKey(OrderContract.STATUS_INDEX, "PRODUCED", "20220506", "order1").toString());
+            verify(stub).delState(new CompositeKey(OrderContract.DUE_INDEX, "20220506", "order1").toString());
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_COUNT_DELTA, "PRODUCED", "tx1").toString(), "-1".getBytes());
+            verify(stub, never()).delState(new CompositeKey(OrderContract.ORDER, "order2").toString());
+        }
+
+        @Test
+        public void archivesOrdersBehindMoreThanAPageOfRecentOnes() {
+            InMemoryLedger ledger = new InMemoryLedger();
+            OrderContract contract = new OrderContract(null);
+            InMemoryChaincodeStub create = ledger.newTransaction("tx1", Instant.parse("2022-05-01T10:00:00Z"));
+            Context ctx = contract.createContext(create);
+            for (int i = 0; i <= OrderContract.MAX_QUERY_RESULTS; i++) {
+                contract.CreateOrder(ctx, String.format("order%04d", i), "womanPurse", 300, "2022-07-06", "PRODUCED", 1000, 300, 300);
+            }
+            contract.CreateOrder(ctx, "order9999", "womanPurse", 300, "2022-05-06", "PRODUCED", 1000, 300, 300);
+            contract.afterTransaction(ctx, null);
+            ledger.commit(create);
+
+            InMemoryChaincodeStub archive = ledger.newTransaction("tx2", Instant.parse("2022-06-01T10:00:00Z"));
+            String digest = contract.ArchiveOrders(contract.createContext(archive), EpochDays.parse("2022-06-01"), 10);
+
+            assertThat(digest).startsWith("{\"orderIds\":[\"order9999\"],");
+            assertThat(archive.getReadSet().size()).isLessThan(10);
+        }
+
+        @Test
+        public void writesNoDigestWhenNothingIsArchived() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(OrderContract.STATUS_INDEX, "PRODUCED"))
+                    .thenReturn(new MockIndexResultsIterator(OrderContract.STATUS_INDEX, "PRODUCED"));
+
+            String digest = contract.ArchiveOrders(ctx, EpochDays.parse("2022-06-01"), 10);
+
+            assertThat(digest).isEqualTo("{\"orderIds\":[],\"stateHash\":null}");
+            verify(stub, never()).putState(anyString(), any());
+        }
+    }
+
+    @Nested
+    class OrderContextTransaction {
+
+        @Test
+        public void createOrderReadsKeyOnceAndWritesAfterTransaction() {
+            OrderContract contract = new OrderContract();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            OrderContext ctx = mock(OrderContext.class);
+            StateCache stateCache = new StateCache(stub);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            when(ctx.getStateCache()).thenReturn(stateCache);
+
+            Order order = contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+            assertThat(contract.ReadOrder(ctx, "order1")).isEqualTo(order);
+            verify(stub, times(1)).getState("order1");
+            verify(stub, never()).putState(anyString(), any());
+
+            contract.afterTransaction(ctx, order);
+
+            verify(stub).putState(eq(new CompositeKey(OrderContract.ORDER, "order1").toString()), any());
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_INDEX, "ORDERED", "20220506", "order1").toString(), new byte[] {0});
+        }
+    }
+
+    @Nested
+    class StatusIndex {
+
+        @Test
+        public void createOrderAddsIndexEntry() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("order1")).thenReturn("".getBytes());
+
+            contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_INDEX, "ORDERED", "20220506", "order1").toString(), new byte[] {0});
+        }
+
+        @Test
+        public void updateOrderMovesIndexEntry() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            Order stored = new Order("order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0);
+            when(stub.getState(new CompositeKey(OrderContract.ORDER, "order1").toString())).thenReturn(OrderCodec.encodeHeader(stored));
+            when(stub.getState(new CompositeKey(OrderContract.ORDER_PROGRESS, "order1").toString())).thenReturn(OrderCodec.encodeProgress(stored));
+
+            contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 100, 0);
+
+            verify(stub).delState(new CompositeKey(OrderContract.STATUS_INDEX, "ORDERED", "20220706", "order1").toString());
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_INDEX, "COLLECTING_MATERIALS", "20220506", "order1").toString(),
+                    new byte[] {0});
+        }
+
+        @Test
+        public void queryOrdersByStatusReadsIndexedOrders() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(OrderContract.STATUS_INDEX, "MATERIALS_DELIVERED"))
+                    .thenReturn(new MockIndexResultsIterator(new CompositeKey(OrderContract.STATUS_INDEX, "MATERIALS_DELIVERED", "20220506", "order2"),
+                            new CompositeKey(OrderContract.STATUS_INDEX, "MATERIALS_DELIVERED", "20220606", "order7")));
+            when(stub.getState("order2")).thenReturn(canonical("order2").getBytes(StandardCharsets.UTF_8));
+            when(stub.getState("order7")).thenReturn(canonical("order7").getBytes(StandardCharsets.UTF_8));
+
+            String orders = contract.QueryOrdersByStatus(ctx, "MATERIALS_DELIVERED");
+
+            assertThat(orders).isEqualTo("[" + canonical("order2") + "," + canonical("order7") + "]");
+            verify(stub, never()).getStateByRange(anyString(), anyString());
+        }
+    }
+
+    @Nested
+    class DueIndex {
+        private final String may6 = "20220506";
+        private final String july6 = "20220706";
+
+        @Test
+        public void createOrderAddsIndexEntry() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("order1")).thenReturn("".getBytes());
+
+            contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+            verify(stub).putState(new CompositeKey(OrderContract.DUE_INDEX, may6, "order1").toString(), new byte[] {0});
+        }
+
+        @Test
+        public void createOrderRejectsInvalidDate() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("order1")).thenReturn("".getBytes());
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-02-30", "ORDERED", 1000, 0, 0);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Invalid date 2022-02-30, expected yyyy-MM-dd");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_DELIVERY_DATE".getBytes());
+        }
+
+        @Test
+        public void updateOrderMovesIndexEntryWhenDateChanges() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            Order stored = new Order("order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0);
+            when(stub.getState(new CompositeKey(OrderContract.ORDER, "order1").toString())).thenReturn(OrderCodec.encodeHeader(stored));
+            when(stub.getState(new CompositeKey(OrderContract.ORDER_PROGRESS, "order1").toString())).thenReturn(OrderCodec.encodeProgress(stored));
+
+            contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 100, 0);
+
+            verify(stub).delState(new CompositeKey(OrderContract.DUE_INDEX, july6, "order1").toString());
+            verify(stub).putState(new CompositeKey(OrderContract.DUE_INDEX, may6, "order1").toString(), new byte[] {0});
+        }
+
+        @Test
+        public void queryOrdersDueBetweenScansTheIndexDayByDay() {
+            InMemoryLedger ledger = new InMemoryLedger();
+            OrderContract contract = new OrderContract(null);
+            String[][] orders = {{"order1", "2022-05-07"}, {"order2", "2022-05-06"}, {"order3", "2022-05-08"}, {"order4", "2021-05-06"},
+                    {"order5", "2023-05-06"}, {"order6", "2022-12-31"}};
+            InMemoryChaincodeStub create = ledger.newTransaction("tx1", Instant.parse("2022-05-01T10:00:00Z"));
+            Context ctx = contract.createContext(create);
+            for (String[] order : orders) {
+                contract.CreateOrder(ctx, order[0], "womanPurse", 300, order[1], "ORDERED", 1000, 0, 0);
+            }
+            contract.afterTransaction(ctx, null);
+            ledger.commit(create);
+
+            InMemoryChaincodeStub query = ledger.newTransaction("tx2", Instant.parse("2022-05-01T10:00:00Z"));
+            String due = contract.QueryOrdersDueBetween(contract.createContext(query), "2022-05-06", "2022-12-31");
+
+            assertThat(due.split("\"iD\":\"", -1)).hasSize(5);
+            assertThat(due.indexOf("\"order2\"")).isLessThan(due.indexOf("\"order1\""));
+            assertThat(due.indexOf("\"order1\"")).isLessThan(due.indexOf("\"order3\""));
+            assertThat(due.indexOf("\"order3\"")).isLessThan(due.indexOf("\"order6\""));
+            assertThat(query.getRangeReads()).hasSize(240);
+
+            InMemoryChaincodeStub fromEmptyDay = ledger.newTransaction("tx3", Instant.parse("2022-05-01T10:00:00Z"));
+            due = contract.QueryOrdersDueBetween(contract.createContext(fromEmptyDay), "2022-05-05", "2022-05-07");
+
+            assertThat(due.split("\"iD\":\"", -1)).hasSize(3);
+            assertThat(due.indexOf("\"order2\"")).isLessThan(due.indexOf("\"order1\""));
+            assertThat(fromEmptyDay.getRangeReads()).hasSize(3);
+        }
+
+        @Test
+        public void queryOrdersDueBetweenRejectsRangeOfMoreThanAYear() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.QueryOrdersDueBetween(ctx, "2022-01-01", "2023-01-02");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Date range 2022-01-01 to 2023-01-02 spans more than 366 days");
+            verifyZeroInteractions(stub);
+        }
+
+        @Test
+        public void queryOrdersDueBetweenRejectsReversedRange() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.QueryOrdersDueBetween(ctx, "2022-05-07", "2022-05-06");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Date range 2022-05-07 to 2022-05-06 must be ordered");
+            verifyZeroInteractions(stub);
+        }
+    }
+
+    @Nested
+    class UpdateOrderTransaction {
+
+        @Test
+        public void whenAssetExists() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getState("order1"))
+                    .thenReturn("{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-07-06\", \"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":0,\"metalCount\":0}".getBytes());
+
+            Order asset = contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000,  100, 0);
+
+            assertThat(asset).isEqualTo(new Order("order1", "womanPurse", 300, "2022-05-06", "COLLECTING_MATERIALS", 1000,  100, 0));
+        }
+
+        @Test
+        public void whenAssetDoesNotExist() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getState("order1")).thenReturn("".getBytes());
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateOrder(ctx, "order1", "productName", 2, "2022-05-06", "status", 10,  0, 0);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Order order1 does not exist");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("ORDER_NOT_FOUND".getBytes());
+        }
+
+        @Test
+        public void whenStatusCannotChange() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            when(stub.getState("order1"))
+                    .thenReturn("{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-07-06\", \"status\":\"PRODUCED\",\"price\":1000, \"leatherCount\":0,\"metalCount\":0}".getBytes());
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "PRODUCED", 1000,  300, 300);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Invalid status provided");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_ORDER".getBytes());
+            verify(stub, never()).putState(anyString(), any());
+        }
+        @Test
+        public void judgesDeliveryDateByTransactionTimestamp() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("order1"))
+                    .thenReturn("{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-15\", \"status\":\"MATERIALS_COLLECTED\",\"price\":1000, \"leatherCount\":300,\"metalCount\":300}".getBytes());
+
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T23:59:59Z"));
+            Order asset = contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-15", "MATERIALS_COLLECTED", 1000,  300, 300);
+
+            assertThat(asset.getStatus()).isEqualTo("MATERIALS_DELIVERED");
+
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-02T00:00:00Z"));
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-15", "MATERIALS_COLLECTED", 1000,  300, 300);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Delivery date too soon");
+        }
+    }
+
+    @Nested
+    class StatusCounts {
+
+        @Test
+        public void createOrderWritesDeltaKeyOfTransaction() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("order1")).thenReturn(new byte[0]);
+
+            contract.CreateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_COUNT_DELTA, "ORDERED", "tx1").toString(), "1".getBytes());
+            verify(stub, never()).getState(startsWith(new CompositeKey(OrderContract.STATUS_COUNT_DELTA).toString()));
+        }
+
+        @Test
+        public void transactionWritesOneNetDeltaPerStatus() {
+            OrderContract contract = new OrderContract();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            OrderContext ctx = mock(OrderContext.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            when(ctx.getStateCache()).thenReturn(new StateCache(stub));
+            when(ctx.getStatusCountDeltas()).thenReturn(new LinkedHashMap<>());
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            String order = "{\"iD\":\"%s\",\"productName\":\"womanPurse\",\"quantity\":300,\"deliveryDate\":\"2022-05-06\",\"status\":\"ORDERED\",\"price\":1000}";
+            for (String id : new String[] {"order1", "order2"}) {
+                Order stored = new Order(id, "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+                when(stub.getState(new CompositeKey(OrderContract.ORDER, id).toString())).thenReturn(OrderCodec.encodeHeader(stored));
+                when(stub.getState(new CompositeKey(OrderContract.ORDER_PROGRESS, id).toString())).thenReturn(OrderCodec.encodeProgress(stored));
+            }
+
+            contract.UpdateOrders(ctx, "[" + String.format(order, "order1") + "," + String.format(order, "order2") + "]", "ALL_OR_NOTHING");
+            contract.afterTransaction(ctx, null);
+
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_COUNT_DELTA, "ORDERED", "tx1").toString(), "-2".getBytes());
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_COUNT_DELTA, "COLLECTING_MATERIALS", "tx1").toString(), "2".getBytes());
+        }
+
+        @Test
+        public void ordersStoredUnderBareIdAreCountedWhenMoved() {
+            InMemoryLedger ledger = new InMemoryLedger();
+            OrderContract contract = new OrderContract(null);
+            for (int i = 1; i <= 3; i++) {
+                ledger.put("order" + i, OrderJsonWriter.toJson(new Order("order" + i, "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 0, 0)));
+            }
+            java.util.function.Consumer<java.util.function.Consumer<Context>> submit = transaction -> {
+                InMemoryChaincodeStub stub = ledger.newTransaction("tx" + ledger.getBlockNumber(), Instant.parse("2022-05-01T10:00:00Z"));
+                Context ctx = contract.createContext(stub);
+                transaction.accept(ctx);
+                contract.afterTransaction(ctx, null);
+                ledger.commit(stub);
+            };
+
+            submit.accept(ctx -> contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-07-06", "ORDERED", 1000, 100, 0));
+            submit.accept(ctx -> contract.MigrateOrders(ctx, 10));
+
+            String[] stats = new String[1];
+            submit.accept(ctx -> stats[0] = contract.GetOrderStats(ctx));
+            assertThat(stats[0]).isEqualTo("{\"ORDERED\":2,\"COLLECTING_MATERIALS\":1,\"MATERIALS_COLLECTED\":0,\"MATERIALS_DELIVERED\":0,\"PRODUCED\":0}");
+        }
+
+        @Test
+        public void getOrderStatsSumsCheckpointsAndDeltas() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(OrderContract.STATUS_COUNT))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.STATUS_COUNT, "ORDERED", null, "10", "PRODUCED", null, "4"));
+            when(stub.getStateByPartialCompositeKey(OrderContract.STATUS_COUNT_DELTA))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.STATUS_COUNT_DELTA,
+                            "ORDERED", "tx1", "-1", "COLLECTING_MATERIALS", "tx1", "1", "ORDERED", "tx2", "1"));
+
+            String stats = contract.GetOrderStats(ctx);
+
+            assertThat(stats).isEqualTo("{\"ORDERED\":10,\"COLLECTING_MATERIALS\":1,\"MATERIALS_COLLECTED\":0,\"MATERIALS_DELIVERED\":0,\"PRODUCED\":4}");
+        }
+
+        @Test
+        public void compactOrderStatsFoldsDeltasIntoCheckpoints() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getStateByPartialCompositeKey(OrderContract.STATUS_COUNT_DELTA))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.STATUS_COUNT_DELTA,
+                            "ORDERED", "tx1", "-1", "COLLECTING_MATERIALS", "tx1", "1", "ORDERED", "tx2", "3"));
+            when(stub.getState(new CompositeKey(OrderContract.STATUS_COUNT, "ORDERED").toString())).thenReturn("10".getBytes());
+            when(stub.getState(new CompositeKey(OrderContract.STATUS_COUNT, "COLLECTING_MATERIALS").toString())).thenReturn(new byte[0]);
+
+            int compacted = contract.CompactOrderStats(ctx);
+
+            assertThat(compacted).isEqualTo(3);
+            verify(stub).delState(new CompositeKey(OrderContract.STATUS_COUNT_DELTA, "ORDERED", "tx1").toString());
+            verify(stub).delState(new CompositeKey(OrderContract.STATUS_COUNT_DELTA, "COLLECTING_MATERIALS", "tx1").toString());
+            verify(stub).delState(new CompositeKey(OrderContract.STATUS_COUNT_DELTA, "ORDERED", "tx2").toString());
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_COUNT, "ORDERED").toString(), "12".getBytes());
+            verify(stub).putState(new CompositeKey(OrderContract.STATUS_COUNT, "COLLECTING_MATERIALS").toString(), "1".getBytes());
+        }
+    }
+
+    @Nested
+    class MaterialDeltas {
+        private final String order1 = "{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", "
+                + "\"status\":\"COLLECTING_MATERIALS\",\"price\":1000, \"leatherCount\":100,\"metalCount\":200}";
+
+        @Test
+        public void addMaterialsWritesDeltaKeyOnly() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("order1")).thenReturn(order1.getBytes());
+
+            contract.AddMaterials(ctx, "order1", 50, 0);
+
+            verify(stub).putState(new CompositeKey(OrderContract.MATERIALS_DELTA, "order1", "tx1").toString(), "50,0".getBytes());
+            verify(stub, never()).putState(eq(new CompositeKey(OrderContract.ORDER, "order1").toString()), any());
+            verify(stub, never()).getStateByPartialCompositeKey(anyString(), any());
+        }
+
+        @Test
+        public void addMaterialsRejectsNegativeCounts() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.AddMaterials(ctx, "order1", -1, 0);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Material counts -1 and 0 must not be negative");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_MATERIAL_COUNT".getBytes());
+        }
+
+        @Test
+        public void readOrderFoldsDeltas() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getState("order1")).thenReturn(order1.getBytes());
+            when(stub.getStateByPartialCompositeKey(OrderContract.MATERIALS_DELTA, "order1"))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA, "order1", "tx1", "50,0", "order1", "tx2", "150,100"));
+
+            Order order = contract.ReadOrder(ctx, "order1");
+
+            assertThat(order).isEqualTo(new Order("order1", "womanPurse", 300, "2022-05-06", "COLLECTING_MATERIALS", 1000, 300, 300));
+        }
+
+        @Test
+        public void updateOrderConsumesDeltas() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx3");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getState("order1")).thenReturn(order1.getBytes());
+            when(stub.getStateByPartialCompositeKey(OrderContract.MATERIALS_DELTA, "order1"))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA, "order1", "tx1", "50,0", "order1", "tx2", "150,100"));
+
+            Order order = contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "COLLECTING_MATERIALS", 1000, 300, 300);
+
+            assertThat(order.getStatus()).isEqualTo("MATERIALS_COLLECTED");
+            verify(stub).delState(new CompositeKey(OrderContract.MATERIALS_DELTA, "order1", "tx1").toString());
+            verify(stub).delState(new CompositeKey(OrderContract.MATERIALS_DELTA, "order1", "tx2").toString());
+        }
+
+        @Test
+        public void updateOrderRefusesCountsMissingReportedMaterials() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx3");
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getState("order1")).thenReturn(order1.getBytes());
+            when(stub.getStateByPartialCompositeKey(OrderContract.MATERIALS_DELTA, "order1"))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA, "order1", "tx1", "50,0", "order1", "tx2", "150,100"));
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateOrder(ctx, "order1", "womanPurse", 300, "2022-05-06", "COLLECTING_MATERIALS", 1000, 150, 200);
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Order order1 has 300 leather and 300 metal including materials reported since it was read, not 150 and 200");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("MATERIALS_CHANGED".getBytes());
+            verify(stub, never()).delState(anyString());
+            verify(stub, never()).putState(anyString(), any());
+        }
+    }
+
+    @Nested
+    class BulkTransactions {
+        private static final String ORDERS = "[{\"iD\":\"order1\",\"productName\":\"womanPurse\",\"quantity\":300,\"deliveryDate\":\"2022-05-06\","
+                + "\"status\":\"ORDERED\",\"price\":1000,\"leatherCount\":0,\"metalCount\":0},"
+                + "{\"iD\":\"order2\",\"productName\":\"womanPurse\",\"quantity\":300,\"deliveryDate\":\"2022-05-06\","
+                + "\"status\":\"ORDERED\",\"price\":1000,\"leatherCount\":0,\"metalCount\":0}]";
+
+        @Test
+        public void createOrdersBestEffortReportsEachOrder() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("order1")).thenReturn(new byte[0]);
+            when(stub.getState("order2")).thenReturn("{\"iD\":\"order2\"}".getBytes(StandardCharsets.UTF_8));
+
+            String results = contract.CreateOrders(ctx, ORDERS, "BEST_EFFORT");
+
+            assertThat(results).isEqualTo("[{\"iD\":\"order1\",\"order\":{\"deliveryDate\":\"2022-05-06\",\"iD\":\"order1\",\"leatherCount\":0,"
+                    + "\"metalCount\":0,\"price\":1000,\"productName\":\"womanPurse\",\"quantity\":300,\"status\":\"ORDERED\"}},"
+                    + "{\"iD\":\"order2\",\"error\":\"ORDER_ALREADY_EXISTS\",\"message\":\"Order order2 already exists\"}]");
+            verify(stub).putState(eq(new CompositeKey(OrderContract.ORDER, "order1").toString()), any());
+            verify(stub, never()).putState(eq(new CompositeKey(OrderContract.ORDER, "order2").toString()), any());
+        }
+
+        @Test
+        public void createOrdersAllOrNothingFailsOnFirstError() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getState("order1")).thenReturn(new byte[0]);
+            when(stub.getState("order2")).thenReturn("{\"iD\":\"order2\"}".getBytes(StandardCharsets.UTF_8));
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.CreateOrders(ctx, ORDERS, "ALL_OR_NOTHING");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Order order2 already exists");
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("ORDER_ALREADY_EXISTS".getBytes());
+        }
+
+        @Test
+        public void createOrdersDetectsDuplicatesWithinBatch() {
+            OrderContract contract = new OrderContract();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            OrderContext ctx = mock(OrderContext.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(ctx.getStateCache()).thenReturn(new StateCache(stub));
+            when(stub.getState("order1")).thenReturn(new byte[0]);
+
+            String results = contract.CreateOrders(ctx, ORDERS.replace("order2", "order1"), "BEST_EFFORT");
+
+            assertThat(results).endsWith("{\"iD\":\"order1\",\"error\":\"ORDER_ALREADY_EXISTS\",\"message\":\"Order order1 already exists\"}]");
+        }
+
+        @Test
+        public void updateOrdersReportsInvalidStatus() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+            when(stub.getTxTimestamp()).thenReturn(Instant.parse("2022-05-01T10:00:00Z"));
+            when(stub.getStateByPartialCompositeKey(eq(OrderContract.MATERIALS_DELTA), anyString()))
+                    .thenReturn(new MockCountResultsIterator(OrderContract.MATERIALS_DELTA));
+            when(stub.getState("order1")).thenReturn("{\"iD\":\"order1\",\"status\":\"ORDERED\",\"deliveryDate\":\"2022-05-06\"}".getBytes());
+            when(stub.getState("order2")).thenReturn(new byte[0]);
+            String orders = ORDERS.replaceFirst("\"status\":\"ORDERED\"", "\"status\":\"PRODUCED\"");
+
+            String results = contract.UpdateOrders(ctx, orders, "BEST_EFFORT");
+
+            assertThat(results).startsWith("[{\"iD\":\"order1\",\"error\":\"INVALID_ORDER\"")
+                    .endsWith("{\"iD\":\"order2\",\"error\":\"ORDER_NOT_FOUND\",\"message\":\"Order order2 does not exist\"}]");
+            verify(stub, never()).putState(anyString(), any());
+        }
+
+        @Test
+        public void updateOrdersBestEffortReportsOrderDueToday() {
+            InMemoryLedger ledger = new InMemoryLedger();
+            OrderContract contract = new OrderContract(null);
+            Instant today = Instant.parse("2022-05-01T10:00:00Z");
+            InMemoryChaincodeStub create = ledger.newTransaction("tx1", today);
+            Context createCtx = contract.createContext(create);
+            contract.CreateOrders(createCtx, ORDERS.replace("2022-05-06", "2022-07-06"), "ALL_OR_NOTHING");
+            contract.afterTransaction(createCtx, null);
+            ledger.commit(create);
+            InMemoryChaincodeStub update = ledger.newTransaction("tx2", today);
+            Context ctx = contract.createContext(update);
+            String orders = ORDERS.replaceFirst("2022-05-06", "2022-05-01").replace("2022-05-06", "2022-07-06");
+
+            String results = contract.UpdateOrders(ctx, orders, "BEST_EFFORT");
+
+            assertThat(results).startsWith("[{\"iD\":\"order1\",\"error\":\"INVALID_ORDER\",\"message\":\"Delivery date should be after today\"},"
+                    + "{\"iD\":\"order2\",\"order\":{")
+                    .contains("\"status\":\"COLLECTING_MATERIALS\"");
+            contract.afterTransaction(ctx, results);
+            ledger.commit(update);
+            Context readCtx = contract.createContext(ledger.newTransaction("tx3", today));
+            assertThat(contract.ReadOrder(readCtx, "order1").getStatus()).isEqualTo("ORDERED");
+            assertThat(contract.ReadOrder(readCtx, "order2").getStatus()).isEqualTo("COLLECTING_MATERIALS");
+        }
+
+        @Test
+        public void rejectsMalformedBatch() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.CreateOrders(ctx, "[{\"iD\":\"order1\"", "BEST_EFFORT");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class);
+            assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("INVALID_BULK_REQUEST".getBytes());
+            verifyZeroInteractions(stub);
+        }
+
+        @Test
+        public void rejectsUnknownMode() {
+            OrderContract contract = new OrderContract();
+            Context ctx = mock(Context.class);
+
+            Throwable thrown = catchThrowable(() -> {
+                contract.UpdateOrders(ctx, "[]", "SOMETIMES");
+            });
+
+            assertThat(thrown).isInstanceOf(ChaincodeException.class).hasNoCause()
+                    .hasMessage("Unknown bulk mode SOMETIMES");
+        }
+    }
+
+    @Test
+    void getDeliveryDate() {
+        OrderContract orderContract = new OrderContract();
+        String stringDate = "2022-06-02";
+        LocalDate actual = orderContract.getDeliveryDate(stringDate);
+        LocalDate expected = LocalDate.of(2022, 6, 2);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testToString() {
+        Order order = new Order("order1", "productName", 2, "2022-05-06", "status", 10,0, 0);
+        String actual = order.toString();
+        String expected = "Order@ca5182ed" +
+                " [iD=" + "order1" +
+                ", productName=" + "productName" +
+                ", quantity=" + 2 +
+                ", deliveryDate=" + "2022-05-06" +
+                ", status=" + "status" +
+                ", price=" + 10 +
+                ", leatherCount=" + 0 +
+                ", metalCount=" + 0 +
+                "]";
+//        assertEquals(expected, actual);
+    }
+
+    @Test
+    void validateOrdered() throws InvalidOrderException {
+        OrderContract orderContract = new OrderContract();
+        Order order = new Order("testOrder", "womanPurse", 1000, inDays(37), "ORDERED", 1000, 0, 0);
+        boolean actual = orderContract.validateOrdered(order);
+
+        Assertions.assertEquals(true, actual);
+    }
+
+    @Test
+    void validateInvalidProduct(){
+        OrderContract orderContract = new OrderContract();
+        InvalidOrderException thrown = Assertions.assertThrows(InvalidOrderException.class, () -> {
+            Order order = new Order("testOrder", "jacket", 1000, inDays(37), "ORDERED", 1000, 0, 0);
+           orderContract.validateOrdered(order);
+        });
+        Assertions.assertEquals("We do not have such product in our offer", thrown.getMessage());
+    }
+
+    @Test
+    void validateTooBigOrTooSoonOrder(){
+        OrderContract orderContract = new OrderContract();
+        Order order = new Order("testOrder", "womanPurse", 10000, inDays(37), "ORDERED", 1000, 0, 0);
+        InvalidOrderException thrown = Assertions.assertThrows(InvalidOrderException.class, () -> {
+            orderContract.validateOrdered(order);
+        });
+        Assertions.assertEquals("Quantity/days to delivery should be less than 100", thrown.getMessage());
+    }
+
+    @Test
+    void validatePrice(){
+        OrderContract orderContract = new OrderContract();
+        Order order = new Order("testOrder", "womanPurse", 1000, inDays(37), "ORDERED", 800,  0, 0);
+        InvalidOrderException thrown = Assertions.assertThrows(InvalidOrderException.class, () -> {
+            orderContract.validateOrdered(order);
+        });
+        Assertions.assertEquals("Price per one product should be 1000$", thrown.getMessage());
+    }
+
+    @Test
+    void updateOrderedStatus() throws InvalidOrderException {
+        OrderContract orderContract = new OrderContract();
+        Order order = new Order("testOrder", "womanPurse", 1000, inDays(35), "ORDERED", 1000, 0, 0);
+        String actual = orderContract.updateStatus(order);
+        Assertions.assertEquals("COLLECTING_MATERIALS", actual);
+    }
+
+    @Test
+    void updateLeatherCollectedStatus() throws InvalidOrderException {
+        OrderContract orderContract = new OrderContract();
+        //TODO add leather and metal counts conditions
+        Order order = new Order("testOrder", "womanPurse", 1000, inDays(35), "COLLECTING_MATERIALS", 1000, 1000, 1000);
+        String actual = orderContract.updateStatus(order);
+        Assertions.assertEquals("MATERIALS_COLLECTED", actual);
+    }
+
+    @Test
+    void updateMaterialsCollectedStatus() throws InvalidOrderException {
+        OrderContract orderContract = new OrderContract();
+        Order order = new Order("testOrder", "womanPurse", 1000, inDays(35), "MATERIALS_COLLECTED", 1000,  0, 0);
+        String actual = orderContract.updateStatus(order);
+        Assertions.assertEquals("MATERIALS_DELIVERED", actual);
+    }
+
+    @Test
+    void updateMaterialsDeliveredStatus() throws InvalidOrderException {
+        OrderContract orderContract = new OrderContract();
+        Order order = new Order("testOrder", "womanPurse", 1000, inDays(35), "MATERIALS_DELIVERED", 1000,  0, 0);
+        String actual = orderContract.updateStatus(order);
+        Assertions.assertEquals("PRODUCED", actual);
+    }
+
+    /**
+     * A delivery date the given number of days after today, for the checks that use the system clock.
+     */
+    private static String inDays(int days) {
+        return LocalDate.now(ZoneOffset.UTC).plusDays(days).toString();
+    }
+
+    /**
+     * An order of {@link MockAssetResultsIterator} as the queries write it, whatever the layout it was stored in.
+     */
+    private static String canonical(String id) {
+        return "{\"deliveryDate\":\"2022-05-06\",\"iD\":\"" + id + "\",\"leatherCount\":300,\"metalCount\":0,\"price\":1000,"
+                + "\"productName\":\"womanPurse\",\"quantity\":300,\"status\":\"ORDERED\"}";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,66 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import com.owlike.genson.Genson;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OrderJsonParserTest {
+    private final Genson genson = new Genson();
+
+    private static Order parse(String json) {
+        return OrderJsonParser.parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parsesCanonicalJson() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 10, 20);
+
+        assertThat(OrderJsonParser.parse(OrderJsonWriter.toJson(order))).isEqualTo(order);
+    }
+
+    @Test
+    public void parsesGensonJsonWithEscapes() {
+        Order order = new Order("o\"1\u00e9\n\u0001\ud83d\ude00", null, -3, "2022-05-06", null, Integer.MIN_VALUE, 0, Integer.MAX_VALUE);
+
+        assertThat(parse(genson.serialize(order))).isEqualTo(order);
+    }
+
+    @Test
+    public void parsesWhitespaceAndAnyPropertyOrder() {
+        Order order = parse(" { \"status\" : \"ORDERED\",\n\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, "
+                + "\"deliveryDate\":\"2022-05-06\",\"price\":1000, \"leatherCount\":0,\"metalCount\":0 } ");
+
+        assertThat(order).isEqualTo(new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0));
+    }
+
+    @Test
+    public void skipsUnknownProperties() {
+        Order order = parse("{\"iD\":\"order1\",\"owner\":{\"name\":\"store\",\"tags\":[1,\"}\",null]},\"deliveryDate\":\"2022-05-06\","
+                + "\"flag\":true,\"quantity\":3}");
+
+        assertThat(order).isEqualTo(new Order("order1", null, 3, "2022-05-06", null, 0, 0, 0));
+    }
+
+    @Test
+    public void rejectsMalformedJson() {
+        assertThatThrownBy(() -> parse("{\"iD\":\"order1\",\"quantity\":3.5}"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("Malformed order JSON at offset");
+        assertThatThrownBy(() -> parse("{\"iD\":\"order1\""))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void recognisesSingleObjects() {
+        assertThat(OrderJsonParser.isObject(" {\"status\":{\"$in\":[\"a\",\"}]\"]}} ".getBytes(StandardCharsets.UTF_8))).isTrue();
+        assertThat(OrderJsonParser.isObject("{}".getBytes(StandardCharsets.UTF_8))).isTrue();
+        assertThat(OrderJsonParser.isObject("{}]},{\"a\":1}".getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(OrderJsonParser.isObject("{\"a\":\"}".getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(OrderJsonParser.isObject("[{}]".getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(OrderJsonParser.isObject("".getBytes(StandardCharsets.UTF_8))).isFalse();
+    }
+}
@@ -0,0 +1,155 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import com.owlike.genson.Genson;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class OrderJsonWriterTest {
+    private final Genson genson = new Genson();
+
+    @Test
+    public void writesEmptyArray() {
+        OrderJsonWriter writer = new OrderJsonWriter().startArray().endArray();
+
+        assertThat(writer.toString()).isEqualTo("[]");
+        assertThat(writer.getRecordCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void copiesCanonicalRecordsThrough() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+        String json = genson.serialize(order);
+
+        OrderJsonWriter writer = new OrderJsonWriter().startArray();
+        writer.writeRecord(json.getBytes(StandardCharsets.UTF_8));
+        writer.writeRecord(json.getBytes(StandardCharsets.UTF_8));
+        writer.endArray();
+
+        assertThat(writer.toString()).isEqualTo("[" + json + "," + json + "]");
+        assertThat(writer.getRecordCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void reencodesNonCanonicalRecords() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+        String padded = "  " + genson.serialize(order) + "\n";
+
+        OrderJsonWriter writer = new OrderJsonWriter().startArray();
+        writer.writeRecord(padded.getBytes(StandardCharsets.UTF_8));
+        writer.endArray();
+
+        assertThat(writer.toString()).isEqualTo("[" + genson.serialize(order) + "]");
+    }
+
+    @Test
+    public void reencodesLegacyRecordsInAnyLayout() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 300, 0);
+        String legacy = "{\"iD\":\"order1\", \"productName\":\"womanPurse\",\"quantity\":300, \"deliveryDate\":\"2022-05-06\", "
+                + "\"status\":\"ORDERED\",\"price\":1000, \"leatherCount\":300,\"metalCount\":0}";
+
+        OrderJsonWriter writer = new OrderJsonWriter().startArray();
+        writer.writeRecord(legacy.getBytes(StandardCharsets.UTF_8));
+        writer.endArray();
+
+        assertThat(writer.toString()).isEqualTo("[" + genson.serialize(order) + "]");
+    }
+
+    @Test
+    public void rejectsRecordsThatAreNotOrders() {
+        OrderJsonWriter writer = new OrderJsonWriter().startArray();
+
+        Throwable thrown = catchThrowable(() -> writer.writeRecord("{\"iD\":\"order1\",}".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(thrown).isInstanceOf(IllegalStateException.class).hasMessageStartingWith("Malformed order JSON");
+    }
+
+    @Test
+    public void encodesBinaryRecordsAsJson() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+        OrderJsonWriter writer = new OrderJsonWriter().startArray();
+        writer.writeRecord(OrderCodec.encode(order));
+        writer.endArray();
+
+        assertThat(writer.toString()).isEqualTo("[" + genson.serialize(order) + "]");
+    }
+
+    @Test
+    public void writesSameBytesAsGenson() {
+        Order order = new Order("o\"1\u00e9\n\u0001\ud83d\ude00", null, -3, "2022-05-06", null, Integer.MIN_VALUE, 0, Integer.MAX_VALUE);
+
+        assertThat(OrderJsonWriter.toJson(order)).isEqualTo(genson.serialize(order).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+        byte[] json = genson.serialize(order).getBytes(StandardCharsets.UTF_8);
+
+        OrderJsonWriter writer = new OrderJsonWriter().startArray();
+        for (int i = 0; i < 1000; i++) {
+            writer.writeRecord(json);
+        }
+        writer.endArray();
+
+        assertThat(writer.toString()).hasSize(2 + 1000 * json.length + 999);
+    }
+
+    @Test
+    public void writesPageEnvelopeWithEscapedBookmark() {
+        OrderJsonWriter writer = new OrderJsonWriter().startPage();
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+        writer.writeRecord(OrderCodec.encode(order));
+        writer.endPage(1, "order\"2\u0000");
+
+        assertThat(writer.toString()).isEqualTo("{\"records\":[" + genson.serialize(order)
+                + "],\"fetchedRecordsCount\":1,\"bookmark\":\"order\\\"2\\u0000\"}");
+    }
+
+    @Test
+    public void writesQueryViewWithDocTypeAndNoMaterialCounts() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+        assertThat(new String(OrderJsonWriter.toQueryView(order), StandardCharsets.UTF_8))
+                .isEqualTo("{\"docType\":\"order\",\"deliveryDate\":\"2022-05-06\",\"iD\":\"order1\",\"price\":1000,\"productName\":\"womanPurse\","
+                        + "\"quantity\":300,\"status\":\"ORDERED\"}");
+    }
+
+    @Test
+    public void writesOnlyProjectedProperties() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0);
+
+        OrderJsonWriter writer = new OrderJsonWriter().project(OrderJsonWriter.projectionOf("status, ID")).startArray();
+        writer.writeRecord(genson.serialize(order).getBytes(StandardCharsets.UTF_8));
+        writer.writeRecord(OrderCodec.encodeHeader(order), OrderCodec.encodeProgress(order));
+        writer.endArray();
+
+        assertThat(writer.toString())
+                .isEqualTo("[{\"iD\":\"order1\",\"status\":\"ORDERED\"},{\"iD\":\"order1\",\"status\":\"ORDERED\"}]");
+    }
+
+    @Test
+    public void projectsEveryPropertyAsCanonicalJson() {
+        Order order = new Order("order1", "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 7, 9);
+        String all = String.join(",", OrderJsonWriter.PROPERTY_NAMES);
+
+        assertThat(OrderJsonWriter.projectionOf(all)).isEqualTo(OrderJsonWriter.ALL_PROPERTIES);
+        assertThat(OrderJsonWriter.projectionOf("")).isEqualTo(OrderJsonWriter.ALL_PROPERTIES);
+        assertThat(OrderJsonWriter.projectionOf(null)).isEqualTo(OrderJsonWriter.ALL_PROPERTIES);
+        // every property but the first, written by the projecting path
+        int allButDate = OrderJsonWriter.ALL_PROPERTIES & ~1;
+        assertThat(new String(OrderJsonWriter.toRecordJson(OrderCodec.encodeHeader(order), OrderCodec.encodeProgress(order), allButDate),
+                StandardCharsets.UTF_8)).isEqualTo("{" + genson.serialize(order).substring("{\"deliveryDate\":\"2022-05-06\",".length()));
+    }
+
+    @Test
+    public void rejectsUnknownProperties() {
+        Throwable thrown = catchThrowable(() -> OrderJsonWriter.projectionOf("ID,owner"));
+
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Unknown order property owner");
+    }
+}
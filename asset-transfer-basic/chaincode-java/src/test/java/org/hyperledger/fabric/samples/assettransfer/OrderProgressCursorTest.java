@@ -0,0 +1,47 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OrderProgressCursorTest {
+
+    private static List<KeyValue> progress(String... ids) {
+        List<KeyValue> records = new ArrayList<>();
+        for (String id : ids) {
+            KeyValue record = mock(KeyValue.class);
+            when(record.getKey()).thenReturn(new CompositeKey(OrderContract.ORDER_PROGRESS, id).toString());
+            when(record.getValue()).thenReturn(id.getBytes(StandardCharsets.UTF_8));
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void matchesOrdersWithAndWithoutProgress() {
+        OrderProgressCursor cursor = new OrderProgressCursor(progress("order0", "order2", "order4"));
+
+        assertThat(cursor.progressOf("order1")).isEmpty();
+        assertThat(cursor.progressOf("order2")).isEqualTo("order2".getBytes(StandardCharsets.UTF_8));
+        assertThat(cursor.progressOf("order3")).isEmpty();
+        assertThat(cursor.progressOf("order4")).isEqualTo("order4".getBytes(StandardCharsets.UTF_8));
+        assertThat(cursor.progressOf("order5")).isEmpty();
+    }
+
+    @Test
+    public void followsLedgerKeyOrder() {
+        String bmp = "order\uffff";
+        String supplementary = "order\ud83d\ude00";
+        OrderProgressCursor cursor = new OrderProgressCursor(progress(bmp, supplementary));
+
+        assertThat(cursor.progressOf(supplementary)).isEqualTo(supplementary.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -4,6 +4,8 @@ import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDate;
+
 public class OrderTest {
 
         @Nested
@@ -61,10 +63,25 @@ public class OrderTest {
             }
         }
 
+    @Test
+    public void keepsDeliveryDateAsEpochDay() {
+        Order order = new Order("id", "productName", 2, "2022-05-06", "status", 10,  0, 0);
+
+        Assertions.assertThat(order.getDeliveryEpochDay()).isEqualTo(LocalDate.of(2022, 5, 6).toEpochDay());
+        Assertions.assertThat(order.getDeliveryDate()).isEqualTo("2022-05-06");
+    }
+
+    @Test
+    public void rejectsMalformedDeliveryDate() {
+        Assertions.assertThatThrownBy(() -> new Order("id", "productName", 2, "2022-5-6", "status", 10,  0, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid date 2022-5-6, expected yyyy-MM-dd");
+    }
+
     @Test
     public void toStringIdentifiesOrder() {
         Order order = new Order("id", "productName", 2, "2022-05-06", "status", 10,  0, 0);
-        String expected = "Order@e38aa175" +
+        String expected = "Order" +
                 " [iD=" + "id" +
                 ", productName=" + "productName" +
                 ", quantity=" + 2 +
@@ -74,7 +91,35 @@ public class OrderTest {
                 ", leatherCount=" + 0 +
                 ", metalCount=" + 0 +
                 "]";
-//        Assertions.assertThat(order.toString()).isEqualTo(expected);
+        Assertions.assertThat(order.toString()).isEqualTo(expected);
+    }
+
+    @Test
+    public void hashCodeMatchesEquality() {
+        Order orderA = new Order("id", "productName", 2, "2022-05-06", "status", 10,  0, 0);
+        Order orderB = new Order("id", "productName", 2, (int) LocalDate.of(2022, 5, 6).toEpochDay(), "status", 10,  0, 0);
+
+        Assertions.assertThat(orderA).isEqualTo(orderB);
+        Assertions.assertThat(orderA.hashCode()).isEqualTo(orderB.hashCode()).isEqualTo(orderA.hashCode());
+    }
+
+    @Test
+    public void sharesStatusAndProductNameInstances() {
+        Order order = new Order("id", new String("womanPurse"), 2, "2022-05-06", new String("ORDERED"), 10,  0, 0);
+
+        Assertions.assertThat(order.getStatus()).isSameAs(OrderContract.OrderStatuses.ORDERED.name());
+        Assertions.assertThat(order.getProductName()).isSameAs(StatusTransitions.PRODUCT_NAME);
+    }
+
+    @Test
+    public void formatsDeliveryDateOfDecodedOrders() {
+        for (int epochDay = (int) LocalDate.of(0, 1, 1).toEpochDay(); epochDay <= LocalDate.of(9999, 12, 31).toEpochDay(); epochDay += 7) {
+            Order order = new Order("id", "productName", 2, epochDay, "status", 10,  0, 0);
+
+            Assertions.assertThat(order.getDeliveryDate()).isEqualTo(LocalDate.ofEpochDay(epochDay).toString());
+        }
+        Assertions.assertThat(new Order("id", "productName", 2, (int) LocalDate.of(10000, 1, 1).toEpochDay(), "status", 10,  0, 0)
+                .getDeliveryDate()).isEqualTo("+10000-01-01");
     }
 
 }
@@ -0,0 +1,152 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PrefetchingScanTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void returnsDecodedRecordsInScanOrder() {
+        List<String> decoded = new ArrayList<>();
+        PrefetchingScan<String, String> scan = new PrefetchingScan<>(records(100), KeyValue::getKey, key -> {
+            // records take different times to decode
+            sleepMillis(Math.floorMod(key.hashCode(), 3));
+            return key.toUpperCase();
+        }, executor, 7, 3);
+
+        while (scan.hasNext()) {
+            decoded.add(scan.next());
+        }
+
+        assertThat(decoded).hasSize(100);
+        for (int i = 0; i < decoded.size(); i++) {
+            assertThat(decoded.get(i)).isEqualTo(String.format("KEY%03d", i));
+        }
+        assertThat(catchThrowable(scan::next)).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    public void readsOnTheCallingThreadAndDecodesOnThePool() {
+        Thread caller = Thread.currentThread();
+        List<Thread> readers = new ArrayList<>();
+        List<Thread> decoders = new ArrayList<>();
+        PrefetchingScan<String, String> scan = new PrefetchingScan<>(records(10), result -> {
+            readers.add(Thread.currentThread());
+            return result.getKey();
+        }, key -> {
+            synchronized (decoders) {
+                decoders.add(Thread.currentThread());
+            }
+            return key;
+        }, executor, 2, 2);
+
+        while (scan.hasNext()) {
+            scan.next();
+        }
+
+        assertThat(readers).hasSize(10).containsOnly(caller);
+        assertThat(decoders).hasSize(10).doesNotContain(caller);
+    }
+
+    @Test
+    public void readsAtMostTheBatchesAheadOfTheCaller() {
+        AtomicInteger read = new AtomicInteger();
+        PrefetchingScan<String, String> scan = new PrefetchingScan<>(records(100), result -> {
+            read.incrementAndGet();
+            return result.getKey();
+        }, key -> key, executor, 4, 3);
+
+        scan.next();
+
+        assertThat(read.get()).isEqualTo(12);
+
+        for (int i = 1; i < 4; i++) {
+            scan.next();
+        }
+
+        assertThat(read.get()).isEqualTo(12);
+
+        scan.next();
+
+        assertThat(read.get()).isEqualTo(16);
+    }
+
+    @Test
+    public void rethrowsWhatDecodingThrew() {
+        PrefetchingScan<String, String> scan = new PrefetchingScan<>(records(10), KeyValue::getKey, key -> {
+            if (key.equals("key005")) {
+                throw new IllegalArgumentException("Cannot decode " + key);
+            }
+            return key;
+        }, executor, 4, 2);
+
+        for (int i = 0; i < 5; i++) {
+            scan.next();
+        }
+        Throwable thrown = catchThrowable(scan::next);
+
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class).hasMessage("Cannot decode key005");
+    }
+
+    @Test
+    public void overlapsReadingWithDecoding() {
+        int count = 64;
+        PrefetchingScan<String, String> scan = new PrefetchingScan<>(records(count), result -> {
+            sleepMillis(2);
+            return result.getKey();
+        }, key -> {
+            sleepMillis(2);
+            return key;
+        }, executor, 4, 4);
+
+        long started = System.nanoTime();
+        while (scan.hasNext()) {
+            scan.next();
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        // one after the other would take 4 ms a record
+        assertThat(millis).isLessThan(count * 3);
+    }
+
+    private static Iterable<KeyValue> records(int count) {
+        List<KeyValue> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            KeyValue record = mock(KeyValue.class);
+            String key = String.format("key%03d", i);
+            when(record.getKey()).thenReturn(key);
+            when(record.getValue()).thenReturn(key.getBytes(StandardCharsets.UTF_8));
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static void sleepMillis(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
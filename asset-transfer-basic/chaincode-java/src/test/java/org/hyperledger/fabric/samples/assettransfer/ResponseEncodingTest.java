@@ -0,0 +1,52 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseEncodingTest {
+
+    @Test
+    public void looksUpEncodingsByName() {
+        assertThat(ResponseEncoding.of("")).isEqualTo(ResponseEncoding.IDENTITY);
+        assertThat(ResponseEncoding.of(null)).isEqualTo(ResponseEncoding.IDENTITY);
+        assertThat(ResponseEncoding.of("identity")).isEqualTo(ResponseEncoding.IDENTITY);
+        assertThat(ResponseEncoding.of("gzip")).isEqualTo(ResponseEncoding.GZIP);
+        assertThat(ResponseEncoding.of("GZIP")).isEqualTo(ResponseEncoding.GZIP);
+        assertThat(ResponseEncoding.of("br")).isNull();
+    }
+
+    @Test
+    public void compressesResponses() throws IOException {
+        OrderJsonWriter writer = new OrderJsonWriter().startArray();
+        for (int i = 0; i < 1000; i++) {
+            writer.writeRecord(new Order("order" + i, "womanPurse", 300, "2022-05-06", "ORDERED", 1000, 0, 0));
+        }
+        writer.endArray();
+
+        String encoded = ResponseEncoding.GZIP.encode(writer);
+
+        assertThat(gunzip(Base64.getDecoder().decode(encoded))).isEqualTo(writer.toString());
+        assertThat(encoded.length()).isLessThan(writer.size() / 5);
+        assertThat(encoded).isEqualTo(ResponseEncoding.GZIP.encode(writer));
+    }
+
+    static String gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                json.write(buffer, 0, read);
+            }
+        }
+        return new String(json.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,118 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import com.owlike.genson.Genson;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Evaluates CouchDB Mango selectors against JSON documents in memory, standing in for CouchDB in
+ * tests. Supports implicit equality, {@code $eq}, {@code $ne}, {@code $gt}, {@code $gte},
+ * {@code $lt}, {@code $lte}, {@code $in}, {@code $exists}, {@code $and}, {@code $or} and
+ * {@code $not}.
+ */
+final class SelectorEvaluator {
+    private static final Genson GENSON = new Genson();
+
+    private final Map<String, Object> selector;
+
+    /**
+     * @param query a CouchDB query, {@code {"selector":{...}}}
+     */
+    @SuppressWarnings("unchecked")
+    SelectorEvaluator(String query) {
+        this.selector = (Map<String, Object>) GENSON.deserialize(query, Map.class).get("selector");
+    }
+
+    @SuppressWarnings("unchecked")
+    boolean matches(String document) {
+        return matches(selector, GENSON.deserialize(document, Map.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matches(Map<String, Object> selector, Map<String, Object> document) {
+        for (Map.Entry<String, Object> clause : selector.entrySet()) {
+            String name = clause.getKey();
+            Object argument = clause.getValue();
+            boolean matched;
+            switch (name) {
+                case "$and":
+                    matched = ((List<Map<String, Object>>) argument).stream().allMatch(s -> matches(s, document));
+                    break;
+                case "$or":
+                    matched = ((List<Map<String, Object>>) argument).stream().anyMatch(s -> matches(s, document));
+                    break;
+                case "$not":
+                    matched = !matches((Map<String, Object>) argument, document);
+                    break;
+                default:
+                    matched = matchesField(document.containsKey(name), document.get(name), argument);
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matchesField(boolean present, Object value, Object condition) {
+        if (!(condition instanceof Map)) {
+            return present && Objects.equals(normalize(value), normalize(condition));
+        }
+        for (Map.Entry<String, Object> operator : ((Map<String, Object>) condition).entrySet()) {
+            Object argument = normalize(operator.getValue());
+            boolean matched;
+            switch (operator.getKey()) {
+                case "$eq":
+                    matched = present && Objects.equals(normalize(value), argument);
+                    break;
+                case "$ne":
+                    matched = !Objects.equals(normalize(value), argument);
+                    break;
+                case "$gt":
+                    matched = present && comparable(value, argument) && compare(value, argument) > 0;
+                    break;
+                case "$gte":
+                    matched = present && comparable(value, argument) && compare(value, argument) >= 0;
+                    break;
+                case "$lt":
+                    matched = present && comparable(value, argument) && compare(value, argument) < 0;
+                    break;
+                case "$lte":
+                    matched = present && comparable(value, argument) && compare(value, argument) <= 0;
+                    break;
+                case "$in":
+                    matched = present && ((List<Object>) argument).stream().anyMatch(a -> Objects.equals(normalize(value), normalize(a)));
+                    break;
+                case "$exists":
+                    matched = present == (Boolean) argument;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported operator " + operator.getKey());
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a range operator applies; as in CouchDB, values of different types never match.
+     */
+    private static boolean comparable(Object value, Object argument) {
+        Object normalized = normalize(value);
+        return normalized != null && argument != null && normalized.getClass() == argument.getClass();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object value, Object argument) {
+        return ((Comparable<Object>) normalize(value)).compareTo(argument);
+    }
+
+    private static Object normalize(Object value) {
+        return value instanceof Number ? (Object) ((Number) value).doubleValue() : value;
+    }
+}
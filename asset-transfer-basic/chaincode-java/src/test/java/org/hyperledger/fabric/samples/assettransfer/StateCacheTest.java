@@ -0,0 +1,68 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class StateCacheTest {
+
+    @Test
+    public void readsEachKeyFromThePeerOnce() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getState("order1")).thenReturn("value".getBytes());
+        StateCache cache = new StateCache(stub);
+
+        assertThat(cache.getState("order1")).isEqualTo("value".getBytes());
+        assertThat(cache.getState("order1")).isEqualTo("value".getBytes());
+        assertThat(cache.getState("order2")).isEmpty();
+        assertThat(cache.getState("order2")).isEmpty();
+
+        verify(stub, times(1)).getState("order1");
+        verify(stub, times(1)).getState("order2");
+    }
+
+    @Test
+    public void readsItsOwnWrites() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        when(stub.getState("order1")).thenReturn("old".getBytes());
+        StateCache cache = new StateCache(stub);
+
+        cache.putState("order1", "new".getBytes());
+        assertThat(cache.getState("order1")).isEqualTo("new".getBytes());
+        assertThat(cache.isDeleted("order1")).isFalse();
+
+        cache.delState("order1");
+        assertThat(cache.getState("order1")).isEmpty();
+        assertThat(cache.isDeleted("order1")).isTrue();
+
+        verify(stub, never()).getState(anyString());
+    }
+
+    @Test
+    public void buffersWritesUntilFlushed() {
+        ChaincodeStub stub = mock(ChaincodeStub.class);
+        StateCache cache = new StateCache(stub);
+
+        cache.putState("order1", "first".getBytes());
+        cache.putState("order2", "value".getBytes());
+        cache.putState("order1", "second".getBytes());
+        cache.delState("order3");
+
+        verify(stub, never()).putState(anyString(), any());
+        verify(stub, never()).delState(anyString());
+
+        cache.flush();
+
+        InOrder inOrder = inOrder(stub);
+        inOrder.verify(stub).putState("order1", "second".getBytes());
+        inOrder.verify(stub).putState("order2", "value".getBytes());
+        inOrder.verify(stub).delState("order3");
+        verifyNoMoreInteractions(stub);
+        assertThat(cache.getState("order1")).isEqualTo("second".getBytes());
+    }
+}
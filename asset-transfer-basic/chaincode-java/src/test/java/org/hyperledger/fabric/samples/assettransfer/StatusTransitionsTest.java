@@ -0,0 +1,66 @@
+package org.hyperledger.fabric.samples.assettransfer;
+
+import org.hyperledger.fabric.samples.assettransfer.OrderContract.OrderStatuses;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StatusTransitionsTest {
+    private static final long TODAY = EpochDays.parse("2022-05-01");
+
+    @Test
+    public void movesThroughEveryStatus() throws InvalidOrderException {
+        assertThat(StatusTransitions.next(order("ORDERED", 300, 0, 0), TODAY)).isEqualTo(OrderStatuses.COLLECTING_MATERIALS);
+        assertThat(StatusTransitions.next(order("COLLECTING_MATERIALS", 300, 300, 300), TODAY)).isEqualTo(OrderStatuses.MATERIALS_COLLECTED);
+        assertThat(StatusTransitions.next(order("MATERIALS_COLLECTED", 300, 300, 300), TODAY)).isEqualTo(OrderStatuses.MATERIALS_DELIVERED);
+        assertThat(StatusTransitions.next(order("MATERIALS_DELIVERED", 300, 300, 300), TODAY)).isEqualTo(OrderStatuses.PRODUCED);
+    }
+
+    @Test
+    public void staysCollectingUntilAllMaterialsArrive() throws InvalidOrderException {
+        assertThat(StatusTransitions.next(order("COLLECTING_MATERIALS", 300, 300, 299), TODAY)).isEqualTo(OrderStatuses.COLLECTING_MATERIALS);
+    }
+
+    @Test
+    public void rejectsFinalAndUnknownStatuses() {
+        assertThatThrownBy(() -> StatusTransitions.next(order("PRODUCED", 300, 300, 300), TODAY))
+                .isInstanceOf(InvalidOrderException.class).hasMessage("Invalid status provided");
+        assertThatThrownBy(() -> StatusTransitions.next(order("status", 300, 0, 0), TODAY))
+                .isInstanceOf(InvalidOrderException.class).hasMessage("Invalid status provided");
+        assertThatThrownBy(() -> StatusTransitions.next(order(null, 300, 0, 0), TODAY))
+                .isInstanceOf(InvalidOrderException.class).hasMessage("Invalid status provided");
+    }
+
+    @Test
+    public void appliesRulesOfCurrentStatus() {
+        assertThatThrownBy(() -> StatusTransitions.next(order("COLLECTING_MATERIALS", 100, 100, 100), TODAY))
+                .isInstanceOf(InvalidOrderException.class).hasMessage("Too small order");
+        assertThatThrownBy(() -> StatusTransitions.next(order("MATERIALS_COLLECTED", 300, 300, 300), EpochDays.parse("2022-05-01") + 30))
+                .isInstanceOf(InvalidOrderException.class).hasMessage("Delivery date too soon");
+    }
+
+    @Test
+    public void rejectsOrdersDueTodayWithoutDividingByZero() {
+        long delivery = EpochDays.parse("2022-06-05");
+        for (String status : new String[] {"ORDERED", "COLLECTING_MATERIALS", "MATERIALS_DELIVERED"}) {
+            assertThatThrownBy(() -> StatusTransitions.next(order(status, 300, 300, 300), delivery))
+                    .isInstanceOf(InvalidOrderException.class).hasMessage("Delivery date should be after today");
+        }
+    }
+
+    @Test
+    public void rejectsOrdersPastTheirDeliveryDate() {
+        long afterDelivery = EpochDays.parse("2022-06-05") + 1;
+        for (String status : new String[] {"ORDERED", "COLLECTING_MATERIALS", "MATERIALS_DELIVERED"}) {
+            assertThatThrownBy(() -> StatusTransitions.next(order(status, 300, 300, 300), afterDelivery))
+                    .isInstanceOf(InvalidOrderException.class).hasMessage("Delivery date should be after today");
+        }
+        assertThatThrownBy(() -> StatusTransitions.check(order("ORDERED", 300, 0, 0), afterDelivery + 30, StatusTransitions.DAILY_QUANTITY))
+                .isInstanceOf(InvalidOrderException.class).hasMessage("Delivery date should be after today");
+    }
+
+    private static Order order(String status, int quantity, int leatherCount, int metalCount) {
+        return new Order("order1", "womanPurse", quantity, "2022-06-05", status, 1000, leatherCount, metalCount);
+    }
+}
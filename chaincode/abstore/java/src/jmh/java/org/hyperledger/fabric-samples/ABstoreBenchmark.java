@@ -0,0 +1,52 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric_samples;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the ABstore invoke transaction, a transfer of 1 from account a to account b, against a
+ * world state held in a {@link MapChaincodeStub}. The accounts are reset every iteration, so a
+ * never runs out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ABstoreBenchmark {
+
+    private final ABstore chaincode = new ABstore();
+    private final MapChaincodeStub ledger = new MapChaincodeStub();
+
+    @Setup(Level.Iteration)
+    public void resetAccounts() {
+        ledger.put("a", Integer.toString(Integer.MAX_VALUE));
+        ledger.put("b", "0");
+    }
+
+    @Benchmark
+    public Response invoke() {
+        ledger.startTransaction("invoke", "a", "b", "1");
+        Response response = chaincode.invoke(ledger.stub());
+        if (response.getStatus() != Response.Status.SUCCESS) {
+            throw new IllegalStateException(response.getMessage());
+        }
+        return response;
+    }
+}
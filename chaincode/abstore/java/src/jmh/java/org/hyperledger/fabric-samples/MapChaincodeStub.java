@@ -0,0 +1,79 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package org.hyperledger.fabric_samples;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * World state in a map behind a {@link ChaincodeStub}, for running transactions in benchmarks
+ * without a peer. Only the calls the chaincode makes are implemented; anything else throws
+ * {@link UnsupportedOperationException}. Writes go straight to the map, so every invocation sees
+ * the state the ones before it left.
+ */
+final class MapChaincodeStub implements InvocationHandler {
+
+    private final Map<String, String> state = new HashMap<>();
+    private final ChaincodeStub stub = (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(),
+            new Class<?>[] {ChaincodeStub.class}, this);
+    private String function = "";
+    private List<String> parameters = Arrays.asList();
+    private long transactions;
+
+    ChaincodeStub stub() {
+        return stub;
+    }
+
+    /**
+     * Starts the next transaction, which gets a new transaction ID.
+     */
+    void startTransaction(String name, String... args) {
+        function = name;
+        parameters = Arrays.asList(args);
+        transactions++;
+    }
+
+    void put(String key, String value) {
+        state.put(key, value);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getFunction":
+                return function;
+            case "getParameters":
+                return parameters;
+            case "getTxId":
+                return "tx" + transactions;
+            case "getStringState":
+                return state.get((String) args[0]);
+            case "getState":
+                String value = state.get((String) args[0]);
+                return value == null ? new byte[0] : value.getBytes(UTF_8);
+            case "putStringState":
+                state.put((String) args[0], (String) args[1]);
+                return null;
+            case "putState":
+                state.put((String) args[0], new String((byte[]) args[1], UTF_8));
+                return null;
+            case "delState":
+                state.remove((String) args[0]);
+                return null;
+            case "toString":
+                return "MapChaincodeStub";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
@@ -6,21 +6,37 @@ SPDX-License-Identifier: Apache-2.0
 package org.hyperledger.fabric_samples;
 
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.google.protobuf.ByteString;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import org.hyperledger.fabric.shim.ChaincodeBase;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric_samples.ChaincodeEvents.StubCallEvent;
+import org.hyperledger.fabric_samples.ChaincodeEvents.TransactionEvent;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class ABstore extends ChaincodeBase {
 
-    private static Log _logger = LogFactory.getLog(ABstore.class);
+    private static final Logger _logger = Logger.getLogger(ABstore.class.getName());
+
+    // null unless CHAINCODE_METRICS_PORT is set
+    private final ChaincodeMetrics metrics = ChaincodeMetrics.fromEnvironment(System.getenv());
 
     @Override
     public Response init(ChaincodeStub stub) {
+        TransactionEvent event = new TransactionEvent();
+        long started = System.nanoTime();
+        Response response = initAccounts(stub);
+        event.finish(stub, response);
+        if (metrics != null) {
+            metrics.observeTransaction("init", started, response);
+        }
+        return response;
+    }
+
+    private Response initAccounts(ChaincodeStub stub) {
         try {
             _logger.info("Init java simple chaincode");
             List<String> args = stub.getParameters();
@@ -33,9 +49,9 @@ public class ABstore extends ChaincodeBase {
             String account2Key = args.get(2);
             int account2Value = Integer.parseInt(args.get(3));
 
-            _logger.info(String.format("account %s, value = %s; account %s, value %s", account1Key, account1Value, account2Key, account2Value));
-            stub.putStringState(account1Key, args.get(1));
-            stub.putStringState(account2Key, args.get(3));
+            _logger.log(Level.INFO, "account {0}, value = {1,number,#}; account {2}, value {3,number,#}", new Object[] {account1Key, account1Value, account2Key, account2Value});
+            putState(stub, account1Key, args.get(1));
+            putState(stub, account2Key, args.get(3));
 
             return newSuccessResponse();
         } catch (Throwable e) {
@@ -45,8 +61,19 @@ public class ABstore extends ChaincodeBase {
 
     @Override
     public Response invoke(ChaincodeStub stub) {
+        TransactionEvent event = new TransactionEvent();
+        long started = System.nanoTime();
+        Response response = invokeFunction(stub);
+        event.finish(stub, response);
+        if (metrics != null) {
+            metrics.observeTransaction(stub.getFunction(), started, response);
+        }
+        return response;
+    }
+
+    private Response invokeFunction(ChaincodeStub stub) {
         try {
-            _logger.info("Invoke java simple chaincode");
+            _logger.fine("Invoke java simple chaincode");
             String func = stub.getFunction();
             List<String> params = stub.getParameters();
             if (func.equals("invoke")) {
@@ -71,13 +98,13 @@ public class ABstore extends ChaincodeBase {
         String accountFromKey = args.get(0);
         String accountToKey = args.get(1);
 
-        String accountFromValueStr = stub.getStringState(accountFromKey);
+        String accountFromValueStr = getState(stub, accountFromKey);
         if (accountFromValueStr == null) {
             return newErrorResponse(String.format("Entity %s not found", accountFromKey));
         }
         int accountFromValue = Integer.parseInt(accountFromValueStr);
 
-        String accountToValueStr = stub.getStringState(accountToKey);
+        String accountToValueStr = getState(stub, accountToKey);
         if (accountToValueStr == null) {
             return newErrorResponse(String.format("Entity %s not found", accountToKey));
         }
@@ -92,13 +119,15 @@ public class ABstore extends ChaincodeBase {
         accountFromValue -= amount;
         accountToValue += amount;
 
-        _logger.info(String.format("new value of A: %s", accountFromValue));
-        _logger.info(String.format("new value of B: %s", accountToValue));
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "new value of A: {0,number,#}", accountFromValue);
+            _logger.log(Level.FINE, "new value of B: {0,number,#}", accountToValue);
+        }
 
-        stub.putStringState(accountFromKey, Integer.toString(accountFromValue));
-        stub.putStringState(accountToKey, Integer.toString(accountToValue));
+        putState(stub, accountFromKey, Integer.toString(accountFromValue));
+        putState(stub, accountToKey, Integer.toString(accountToValue));
 
-        _logger.info("Transfer complete");
+        _logger.fine("Transfer complete");
 
         return newSuccessResponse("invoke finished successfully", ByteString.copyFrom(accountFromKey + ": " + accountFromValue + " " + accountToKey + ": " + accountToValue, UTF_8).toByteArray());
     }
@@ -110,7 +139,12 @@ public class ABstore extends ChaincodeBase {
         }
         String key = args.get(0);
         // Delete the key from the state in ledger
+        StubCallEvent event = new StubCallEvent();
         stub.delState(key);
+        event.finish("del_state", key, null);
+        if (metrics != null) {
+            metrics.countCall("del_state");
+        }
         return newSuccessResponse();
     }
 
@@ -121,15 +155,39 @@ public class ABstore extends ChaincodeBase {
         }
         String key = args.get(0);
         //byte[] stateBytes
-        String val	= stub.getStringState(key);
+        String val	= getState(stub, key);
         if (val == null) {
             return newErrorResponse(String.format("Error: state for %s is null", key));
         }
-        _logger.info(String.format("Query Response:\nName: %s, Amount: %s\n", key, val));
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "Query Response:\nName: {0}, Amount: {1}\n", new Object[] {key, val});
+        }
         return newSuccessResponse(val, ByteString.copyFrom(val, UTF_8).toByteArray());
     }
 
+    private String getState(ChaincodeStub stub, String key) {
+        StubCallEvent event = new StubCallEvent();
+        String value = stub.getStringState(key);
+        event.finish("get_state", key, value);
+        if (metrics != null) {
+            metrics.countCall("get_state");
+            metrics.countRead(value);
+        }
+        return value;
+    }
+
+    private void putState(ChaincodeStub stub, String key, String value) {
+        StubCallEvent event = new StubCallEvent();
+        stub.putStringState(key, value);
+        event.finish("put_state", key, value);
+        if (metrics != null) {
+            metrics.countCall("put_state");
+            metrics.countWritten(value);
+        }
+    }
+
     public static void main(String[] args) {
+        AsyncLogHandler.install();
         new ABstore().start(args);
     }
 
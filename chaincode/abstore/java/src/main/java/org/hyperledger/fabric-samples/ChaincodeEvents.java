@@ -0,0 +1,83 @@
+/*
+Copyright IBM Corp., DTCC All Rights Reserved.
+
+SPDX-License-Identifier: Apache-2.0
+*/
+package org.hyperledger.fabric_samples;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Java Flight Recorder events of the ABstore chaincode. Each event is begun when it is created
+ * and ended by its finish method; while no recording is running, finishing an event does nothing.
+ */
+final class ChaincodeEvents {
+
+    private ChaincodeEvents() {
+    }
+
+    @Name("org.hyperledger.fabric.samples.abstore.Transaction")
+    @Label("Chaincode Transaction")
+    @Category("Chaincode")
+    static final class TransactionEvent extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Transaction ID")
+        String txId;
+
+        @Label("Outcome")
+        String outcome;
+
+        TransactionEvent() {
+            begin();
+        }
+
+        void finish(ChaincodeStub stub, Response response) {
+            end();
+            if (shouldCommit()) {
+                function = stub.getFunction();
+                txId = stub.getTxId();
+                outcome = response.getStatus() == Response.Status.SUCCESS ? "success" : "failure: " + response.getMessage();
+                commit();
+            }
+        }
+    }
+
+    @Name("org.hyperledger.fabric.samples.abstore.StubCall")
+    @Label("Chaincode Stub Call")
+    @Category("Chaincode")
+    static final class StubCallEvent extends Event {
+        @Label("Call")
+        String call;
+
+        @Label("Key")
+        String key;
+
+        @Label("Value Size")
+        @DataAmount
+        long bytes;
+
+        StubCallEvent() {
+            begin();
+        }
+
+        void finish(String callName, String stateKey, String value) {
+            end();
+            if (shouldCommit()) {
+                call = callName;
+                key = stateKey;
+                bytes = value == null ? 0 : value.getBytes(UTF_8).length;
+                commit();
+            }
+        }
+    }
+}
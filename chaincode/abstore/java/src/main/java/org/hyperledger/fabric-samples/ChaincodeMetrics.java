@@ -0,0 +1,189 @@
+/*
+Copyright IBM Corp., DTCC All Rights Reserved.
+
+SPDX-License-Identifier: Apache-2.0
+*/
+package org.hyperledger.fabric_samples;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpServer;
+import org.hyperledger.fabric.shim.Chaincode.Response;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Metrics of the ABstore transactions executed by this chaincode process, served in the Prometheus
+ * text format on {@code /metrics} of the port set in {@code CHAINCODE_METRICS_PORT}, under the same
+ * names as those of the order chaincode. Without that variable nothing is measured.
+ * <ul>
+ *     <li>{@code chaincode_transaction_duration_seconds}, per function and outcome, {@code success}
+ *     or {@code failure}</li>
+ *     <li>{@code chaincode_transaction_failures_total}, per function and error. ABstore fails with
+ *     messages naming the accounts rather than with error codes, so the error is the status of the
+ *     response.</li>
+ *     <li>{@code chaincode_stub_calls_total}, per world state call, and
+ *     {@code chaincode_stub_read_bytes_total} and {@code chaincode_stub_written_bytes_total}</li>
+ * </ul>
+ * The function label is one of the functions ABstore answers, or {@code unknown} for any other name
+ * a client invokes, so that clients cannot add series of their own.
+ */
+final class ChaincodeMetrics {
+
+    static final String PORT = "CHAINCODE_METRICS_PORT";
+    static final String UNKNOWN_FUNCTION = "unknown";
+
+    private static final double[] DURATION_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5};
+    private static final Set<String> FUNCTIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("init", "invoke", "delete", "query")));
+
+    private final ConcurrentMap<String, Histogram> transactionSeconds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> stubCalls = new ConcurrentHashMap<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * @return metrics served on the port set in the environment, or null if none is set
+     */
+    static ChaincodeMetrics fromEnvironment(Map<String, String> environment) {
+        String port = environment.get(PORT);
+        if (port == null || port.isEmpty()) {
+            return null;
+        }
+        ChaincodeMetrics metrics = new ChaincodeMetrics();
+        metrics.serve(Integer.parseInt(port.trim()));
+        return metrics;
+    }
+
+    private void serve(int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = scrape().getBytes(UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot serve metrics on port " + port, e);
+        }
+    }
+
+    /**
+     * Observes a transaction, as failed unless its response is a success.
+     *
+     * @param function the function the client invoked, counted as {@link #UNKNOWN_FUNCTION} unless ABstore answers it
+     * @param startNanos {@link System#nanoTime()} when the transaction started
+     * @param response what the chaincode answered
+     */
+    void observeTransaction(String function, long startNanos, Response response) {
+        String labels = "function=\"" + (FUNCTIONS.contains(function) ? function : UNKNOWN_FUNCTION) + "\"";
+        boolean success = response.getStatus() == Response.Status.SUCCESS;
+        transactionSeconds.computeIfAbsent(labels + ",outcome=\"" + (success ? "success" : "failure") + "\"",
+                l -> new Histogram()).observe((System.nanoTime() - startNanos) / 1e9);
+        if (!success) {
+            failures.computeIfAbsent(labels + ",error=\"" + response.getStatusCode() + "\"", l -> new LongAdder())
+                    .increment();
+        }
+    }
+
+    /**
+     * @param call the world state call, such as {@code get_state}
+     */
+    void countCall(String call) {
+        stubCalls.computeIfAbsent(call, c -> new LongAdder()).increment();
+    }
+
+    void countRead(String value) {
+        if (value != null) {
+            bytesRead.add(value.getBytes(UTF_8).length);
+        }
+    }
+
+    void countWritten(String value) {
+        bytesWritten.add(value.getBytes(UTF_8).length);
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format
+     */
+    String scrape() {
+        StringBuilder out = new StringBuilder(2048);
+        writeHelp(out, "chaincode_transaction_duration_seconds", "Time from the call of init or invoke to its response.", "histogram");
+        for (Map.Entry<String, Histogram> entry : transactionSeconds.entrySet()) {
+            entry.getValue().writeTo(out, "chaincode_transaction_duration_seconds", entry.getKey());
+        }
+        writeHelp(out, "chaincode_transaction_failures_total", "Transactions answered with an error, per response status.", "counter");
+        writeCounters(out, "chaincode_transaction_failures_total", failures);
+        writeHelp(out, "chaincode_stub_calls_total", "World state calls made by the chaincode.", "counter");
+        for (Map.Entry<String, LongAdder> call : stubCalls.entrySet()) {
+            out.append("chaincode_stub_calls_total{call=\"").append(call.getKey()).append("\"} ")
+                    .append(call.getValue().sum()).append('\n');
+        }
+        writeHelp(out, "chaincode_stub_read_bytes_total", "Bytes of values read from the world state.", "counter");
+        out.append("chaincode_stub_read_bytes_total ").append(bytesRead.sum()).append('\n');
+        writeHelp(out, "chaincode_stub_written_bytes_total", "Bytes of values written to the world state.", "counter");
+        out.append("chaincode_stub_written_bytes_total ").append(bytesWritten.sum()).append('\n');
+        return out.toString();
+    }
+
+    private static void writeHelp(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void writeCounters(StringBuilder out, String name, Map<String, LongAdder> counters) {
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            out.append(name).append('{').append(counter.getKey()).append("} ").append(counter.getValue().sum()).append('\n');
+        }
+    }
+
+    private static final class Histogram {
+        private final LongAdder[] counts = new LongAdder[DURATION_BUCKETS.length + 1];
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram() {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            int bucket = 0;
+            while (bucket < DURATION_BUCKETS.length && value > DURATION_BUCKETS[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+            sum.add(value);
+        }
+
+        void writeTo(StringBuilder out, String name, String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i].sum();
+                String le = i < DURATION_BUCKETS.length
+                        ? BigDecimal.valueOf(DURATION_BUCKETS[i]).stripTrailingZeros().toPlainString() : "+Inf";
+                out.append(name).append("_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum{").append(labels).append("} ").append(sum.sum()).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+        }
+    }
+}
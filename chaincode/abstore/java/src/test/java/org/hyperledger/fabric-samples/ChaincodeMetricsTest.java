@@ -0,0 +1,79 @@
+/*
+Copyright IBM Corp., DTCC All Rights Reserved.
+
+SPDX-License-Identifier: Apache-2.0
+*/
+package org.hyperledger.fabric_samples;
+
+import java.util.Collections;
+
+import org.hyperledger.fabric.shim.Chaincode.Response;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChaincodeMetricsTest {
+
+    private final ChaincodeMetrics metrics = new ChaincodeMetrics();
+
+    @Test
+    public void measuresNothingWithoutPort() {
+        assertThat(ChaincodeMetrics.fromEnvironment(Collections.emptyMap())).isNull();
+        assertThat(ChaincodeMetrics.fromEnvironment(Collections.singletonMap(ChaincodeMetrics.PORT, ""))).isNull();
+    }
+
+    @Test
+    public void writesHistogramsPerFunctionAndOutcome() {
+        metrics.observeTransaction("init", System.nanoTime(), success());
+        metrics.observeTransaction("invoke", System.nanoTime(), success());
+        metrics.observeTransaction("invoke", System.nanoTime(), success());
+        metrics.observeTransaction("query", System.nanoTime(), failure());
+
+        String scrape = metrics.scrape();
+
+        assertThat(scrape).contains("# HELP chaincode_transaction_duration_seconds Time from the call of init or invoke to its response.\n",
+                "# TYPE chaincode_transaction_duration_seconds histogram\n",
+                "chaincode_transaction_duration_seconds_bucket{function=\"invoke\",outcome=\"success\",le=\"5\"} 2\n",
+                "chaincode_transaction_duration_seconds_bucket{function=\"invoke\",outcome=\"success\",le=\"+Inf\"} 2\n",
+                "chaincode_transaction_duration_seconds_count{function=\"invoke\",outcome=\"success\"} 2\n",
+                "chaincode_transaction_duration_seconds_count{function=\"init\",outcome=\"success\"} 1\n",
+                "chaincode_transaction_duration_seconds_count{function=\"query\",outcome=\"failure\"} 1\n",
+                "# TYPE chaincode_transaction_failures_total counter\n",
+                "chaincode_transaction_failures_total{function=\"query\",error=\"500\"} 1\n");
+        assertThat(scrape).doesNotContain("le=\"5.0\"", "function=\"init\",error");
+    }
+
+    @Test
+    public void labelsFunctionsABstoreDoesNotAnswerAsUnknown() {
+        metrics.observeTransaction("transfer\"s\\", System.nanoTime(), failure());
+        metrics.observeTransaction("noSuchFunction", System.nanoTime(), failure());
+
+        String scrape = metrics.scrape();
+
+        assertThat(scrape).contains("chaincode_transaction_duration_seconds_count{function=\"unknown\",outcome=\"failure\"} 2\n",
+                "chaincode_transaction_failures_total{function=\"unknown\",error=\"500\"} 2\n");
+        assertThat(scrape).doesNotContain("transfer", "noSuchFunction");
+    }
+
+    @Test
+    public void countsStubCallsAndBytes() {
+        metrics.countCall("get_state");
+        metrics.countCall("get_state");
+        metrics.countCall("put_state");
+        metrics.countRead("Siobhán");
+        metrics.countRead(null);
+        metrics.countWritten("100");
+
+        assertThat(metrics.scrape()).contains("# TYPE chaincode_stub_calls_total counter\n",
+                "chaincode_stub_calls_total{call=\"get_state\"} 2\n", "chaincode_stub_calls_total{call=\"put_state\"} 1\n",
+                "chaincode_stub_read_bytes_total 8\n", "chaincode_stub_written_bytes_total 3\n");
+    }
+
+    private static Response success() {
+        return new Response(Response.Status.SUCCESS, null, null);
+    }
+
+    private static Response failure() {
+        return new Response(Response.Status.INTERNAL_SERVER_ERROR, "Account B not found", null);
+    }
+}
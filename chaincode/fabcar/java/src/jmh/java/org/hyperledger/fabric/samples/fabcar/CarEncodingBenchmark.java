@@ -0,0 +1,46 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.owlike.genson.Genson;
+
+/**
+ * Genson encoding and decoding of a {@link Car}, which every FabCar transaction does for each car
+ * it reads or writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CarEncodingBenchmark {
+
+    private final Genson genson = new Genson();
+    private final Car car = new Car("Toyota", "Prius", "blue", "Tomoko");
+    private final String json = genson.serialize(car);
+
+    @Benchmark
+    public String gensonEncode() {
+        return genson.serialize(car);
+    }
+
+    @Benchmark
+    public Car gensonDecode() {
+        return genson.deserialize(json, Car.class);
+    }
+}
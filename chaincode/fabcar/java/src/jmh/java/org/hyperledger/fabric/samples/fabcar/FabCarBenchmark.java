@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.contract.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs FabCar transactions from beforeTransaction to afterTransaction against a world state of
+ * the given number of cars held in a {@link MapChaincodeStub}. The context is a mock, since a
+ * real one needs the certificate of a client identity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FabCarBenchmark {
+
+    /**
+     * Number of cars, keyed from CAR1 up. queryAllCars returns the ones in its range from CAR1 to
+     * CAR99, which at 1000 cars is all but CAR99 and CAR990 to CAR999.
+     */
+    @Param({"10", "1000"})
+    public int cars;
+
+    private final FabCar contract = new FabCar();
+    private final MapChaincodeStub ledger = new MapChaincodeStub();
+    private final Context ctx = mock(Context.class);
+    private long transactions;
+
+    @Setup(Level.Trial)
+    public void loadCars() {
+        when(ctx.getStub()).thenReturn(ledger.stub());
+        for (int i = 1; i <= cars; i++) {
+            ledger.put(String.format("CAR%d", i), String.format(
+                    "{\"color\":\"blue\",\"make\":\"Toyota\",\"model\":\"Prius\",\"owner\":\"Owner%d\"}", i));
+        }
+    }
+
+    @Benchmark
+    public String queryAllCars() {
+        ledger.startTransaction("queryAllCars");
+        contract.beforeTransaction(ctx);
+        String cars = contract.queryAllCars(ctx);
+        contract.afterTransaction(ctx, cars);
+        return cars;
+    }
+
+    @Benchmark
+    public Car changeCarOwner() {
+        ledger.startTransaction("changeCarOwner");
+        contract.beforeTransaction(ctx);
+        Car car = contract.changeCarOwner(ctx, "CAR1", "Owner" + ++transactions);
+        contract.afterTransaction(ctx, car);
+        return car;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/**
+ * World state in a sorted map behind a {@link ChaincodeStub}, for running transactions in
+ * benchmarks without a peer. Only the calls the contract makes are implemented; anything else
+ * throws {@link UnsupportedOperationException}. Writes go straight to the map, so every
+ * invocation sees the state the ones before it left.
+ */
+final class MapChaincodeStub implements InvocationHandler {
+
+    private static final byte[] MISSING = new byte[0];
+
+    private final NavigableMap<String, byte[]> state = new TreeMap<String, byte[]>();
+    private final ChaincodeStub stub = (ChaincodeStub) Proxy.newProxyInstance(ChaincodeStub.class.getClassLoader(),
+            new Class<?>[] {ChaincodeStub.class}, this);
+    private String function = "";
+    private long transactions;
+
+    /**
+     * @return the stub reading and writing the map
+     */
+    ChaincodeStub stub() {
+        return stub;
+    }
+
+    /**
+     * Starts the next transaction, which gets a new transaction ID.
+     *
+     * @param name the function the transaction invokes
+     */
+    void startTransaction(final String name) {
+        function = name;
+        transactions++;
+    }
+
+    void put(final String key, final String value) {
+        state.put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "getFunction":
+                return function;
+            case "getTxId":
+                return "tx" + transactions;
+            case "getState":
+                return state.getOrDefault((String) args[0], MISSING);
+            case "getStringState":
+                return new String(state.getOrDefault((String) args[0], MISSING), StandardCharsets.UTF_8);
+            case "putState":
+                state.put((String) args[0], (byte[]) args[1]);
+                return null;
+            case "putStringState":
+                put((String) args[0], (String) args[1]);
+                return null;
+            case "delState":
+                state.remove((String) args[0]);
+                return null;
+            case "getStateByRange":
+                return new RangeResults(state.subMap((String) args[0], true, (String) args[1], false));
+            case "toString":
+                return "MapChaincodeStub";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private static final class RangeResults implements QueryResultsIterator<KeyValue> {
+        private final List<KeyValue> results = new ArrayList<KeyValue>();
+
+        RangeResults(final Map<String, byte[]> range) {
+            for (Map.Entry<String, byte[]> entry : range.entrySet()) {
+                results.add(new Entry(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        @Override
+        public Iterator<KeyValue> iterator() {
+            return results.iterator();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Entry implements KeyValue {
+        private final String key;
+        private final byte[] value;
+
+        Entry(final String key, final byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return value;
+        }
+
+        @Override
+        public String getStringValue() {
+            return new String(value, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Handler that hands log records to a writer thread, which formats them and passes them on to the
+ * handler the shim set up, so transactions never wait on console I/O. The queue is bounded: when
+ * it is full, records are dropped rather than blocking the transaction, and the number dropped is
+ * logged once the writer catches up. A copy of the handler of the order chaincode.
+ */
+final class AsyncLogHandler extends Handler {
+
+    static final int CAPACITY = 8192;
+
+    private static final long POLL_MILLIS = 100;
+
+    private static boolean installed;
+
+    private final Handler handler;
+    private final BlockingQueue<LogRecord> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param handler the handler to write the records to
+     * @param capacity the number of records queued before new ones are dropped
+     */
+    AsyncLogHandler(final Handler handler, final int capacity) {
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<LogRecord>(capacity);
+        super.setLevel(handler.getLevel());
+        writer = new Thread(this::write, "chaincode-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Moves every handler of the root logger behind an {@code AsyncLogHandler}. The shim only
+     * changes the level and formatter of the handlers, which are passed on, so this can be called
+     * before or after it configures logging; later calls do nothing.
+     */
+    static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        Logger root = Logger.getLogger("");
+        for (Handler handler : root.getHandlers()) {
+            if (!(handler instanceof AsyncLogHandler)) {
+                root.removeHandler(handler);
+                root.addHandler(new AsyncLogHandler(handler, CAPACITY));
+            }
+        }
+        installed = true;
+    }
+
+    @Override
+    public void publish(final LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        // the caller is only known on this thread, so find it before the record is handed off
+        record.getSourceClassName();
+        if (!queue.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    private void write() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                LogRecord record = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (record != null) {
+                    handler.publish(record);
+                }
+                if (queue.isEmpty()) {
+                    reportDropped();
+                    handler.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void reportDropped() {
+        long count = dropped.sumThenReset();
+        if (count > 0) {
+            LogRecord record = new LogRecord(Level.WARNING, "{0} log records dropped, the log queue was full");
+            record.setParameters(new Object[] {count});
+            record.setLoggerName(AsyncLogHandler.class.getName());
+            handler.publish(record);
+        }
+    }
+
+    /**
+     * Waits for the queued records to be written.
+     */
+    @Override
+    public void flush() {
+        while (!queue.isEmpty() && writer.isAlive()) {
+            Thread.yield();
+        }
+        handler.flush();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reportDropped();
+        handler.close();
+    }
+
+    /**
+     * Also sets the level of the handler written to, as the shim does when it configures logging.
+     *
+     * @param level the level of both handlers
+     */
+    @Override
+    public synchronized void setLevel(final Level level) {
+        super.setLevel(level);
+        handler.setLevel(level);
+    }
+
+    @Override
+    public synchronized void setFormatter(final Formatter formatter) {
+        handler.setFormatter(formatter);
+    }
+
+    @Override
+    public Formatter getFormatter() {
+        return handler.getFormatter();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events of the FabCar contract, showing where the time of a
+ * transaction went in a recording of the chaincode process. Each event is begun
+ * when it is created and ended by its finish method; while no recording is running,
+ * finishing an event does nothing.
+ */
+final class ChaincodeEvents {
+
+    static final String CATEGORY = "Chaincode";
+
+    private ChaincodeEvents() {
+    }
+
+    private static long size(final String value) {
+        return value == null ? 0 : value.getBytes(UTF_8).length;
+    }
+
+    @Name("org.hyperledger.fabric.samples.fabcar.Transaction")
+    @Label("Chaincode Transaction")
+    @Description("A transaction of the FabCar contract, from beforeTransaction to afterTransaction, or to the "
+            + "exception of a transaction that failed, whose outcome then names the error.")
+    @Category(CATEGORY)
+    static final class TransactionEvent extends Event {
+        @Label("Function")
+        private String function;
+
+        @Label("Transaction ID")
+        private String txId;
+
+        @Label("Outcome")
+        private String outcome;
+
+        TransactionEvent() {
+            begin();
+        }
+
+        void finish(final String functionName, final String transactionId, final String result) {
+            end();
+            if (shouldCommit()) {
+                function = functionName;
+                txId = transactionId;
+                outcome = result;
+                commit();
+            }
+        }
+    }
+
+    @Name("org.hyperledger.fabric.samples.fabcar.StubCall")
+    @Label("Chaincode Stub Call")
+    @Description("A world state call that reached the peer. Range queries are recorded up to their first page.")
+    @Category(CATEGORY)
+    static final class StubCallEvent extends Event {
+        @Label("Call")
+        private String call;
+
+        @Label("Key")
+        private String key;
+
+        @Label("Value Size")
+        @DataAmount
+        private long bytes;
+
+        StubCallEvent() {
+            begin();
+        }
+
+        void finish(final String callName, final String stateKey, final String value) {
+            end();
+            if (shouldCommit()) {
+                call = callName;
+                key = stateKey;
+                bytes = size(value);
+                commit();
+            }
+        }
+    }
+
+    @Name("org.hyperledger.fabric.samples.fabcar.Serialization")
+    @Label("Chaincode Serialization")
+    @Description("A Genson serialization or deserialization of cars.")
+    @Category(CATEGORY)
+    static final class SerializationEvent extends Event {
+        @Label("Operation")
+        private String operation;
+
+        @Label("JSON Size")
+        @DataAmount
+        private long bytes;
+
+        SerializationEvent() {
+            begin();
+        }
+
+        void finish(final String operationName, final String json) {
+            end();
+            if (shouldCommit()) {
+                operation = operationName;
+                bytes = size(json);
+                commit();
+            }
+        }
+    }
+}
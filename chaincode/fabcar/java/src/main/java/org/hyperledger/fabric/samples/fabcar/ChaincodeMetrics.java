@@ -0,0 +1,309 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hyperledger.fabric.contract.annotation.Transaction;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Metrics of the FabCar transactions executed by this chaincode process, served in the
+ * Prometheus text format on {@code /metrics} of the port set in {@code CHAINCODE_METRICS_PORT},
+ * under the same names as those of the order chaincode. Without that variable nothing is measured.
+ * <ul>
+ *     <li>{@code chaincode_transaction_duration_seconds}, per transaction function and outcome,
+ *     {@code success} or {@code failure}</li>
+ *     <li>{@code chaincode_transaction_failures_total}, per transaction function and error: the
+ *     payload of a {@code ChaincodeException}, or the simple class name of any other exception</li>
+ *     <li>{@code chaincode_stub_calls_total}, per world state call, and
+ *     {@code chaincode_stub_read_bytes_total} and {@code chaincode_stub_written_bytes_total}</li>
+ *     <li>{@code chaincode_records_scanned}, cars returned by queryAllCars</li>
+ *     <li>{@code chaincode_serialization_duration_seconds}, time spent in Genson, per transaction
+ *     function</li>
+ * </ul>
+ * The function label is one of the transactions of {@link FabCar}, or {@code unknown} for any
+ * other name a client invokes, so that clients cannot add series of their own.
+ */
+final class ChaincodeMetrics {
+
+    static final String PORT = "CHAINCODE_METRICS_PORT";
+    static final String UNKNOWN_FUNCTION = "unknown";
+
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final int HTTP_OK = 200;
+    private static final int SCRAPE_SIZE = 4096;
+    private static final double[] DURATION_BUCKETS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5,
+            1, 2.5, 5};
+    private static final double[] SERIALIZATION_BUCKETS = {0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005, 0.001,
+            0.0025, 0.005, 0.01, 0.025, 0.05};
+    private static final double[] RECORD_BUCKETS = {1, 10, 100, 1000, 10000, 100000};
+    private static final Set<String> FUNCTIONS = transactionNames(FabCar.class);
+
+    /**
+     * Calls to the world state.
+     */
+    enum StubCall {
+        GET_STATE,
+        PUT_STATE,
+        RANGE;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final ConcurrentMap<String, Histogram> transactionSeconds = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> serializationSeconds = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Histogram> recordsScanned = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<String, LongAdder>();
+    private final LongAdder[] stubCalls = new LongAdder[StubCall.values().length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    ChaincodeMetrics() {
+        for (int i = 0; i < stubCalls.length; i++) {
+            stubCalls[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param environment the environment of the process
+     * @return metrics served on the port set in the environment, or null if none is set
+     */
+    static ChaincodeMetrics fromEnvironment(final Map<String, String> environment) {
+        String port = environment.get(PORT);
+        if (port == null || port.isEmpty()) {
+            return null;
+        }
+        ChaincodeMetrics metrics = new ChaincodeMetrics();
+        metrics.serve(Integer.parseInt(port.trim()));
+        return metrics;
+    }
+
+    /**
+     * Serves the metrics on {@code /metrics}.
+     *
+     * @param port the port to listen on, 0 for any free port
+     * @return the started server
+     */
+    HttpServer serve(final int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = scrape().getBytes(UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(HTTP_OK, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot serve metrics on port " + port, e);
+        }
+    }
+
+    /**
+     * @param contract a contract class
+     * @return the names clients invoke the transactions of the contract by
+     */
+    static Set<String> transactionNames(final Class<?> contract) {
+        Set<String> names = new HashSet<String>();
+        for (Method method : contract.getMethods()) {
+            Transaction transaction = method.getAnnotation(Transaction.class);
+            if (transaction != null) {
+                names.add(transaction.name().isEmpty() ? method.getName() : transaction.name());
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Starts measuring a transaction.
+     *
+     * @param function the function the client invoked, with or without the contract name
+     * @return what the transaction does, to pass to {@link #finishTransaction} or {@link #failTransaction}
+     */
+    TransactionMetrics startTransaction(final String function) {
+        String name = function.substring(function.indexOf(':') + 1);
+        return new TransactionMetrics(FUNCTIONS.contains(name) ? name : UNKNOWN_FUNCTION, System.nanoTime());
+    }
+
+    void finishTransaction(final TransactionMetrics transaction) {
+        observe(transaction, "success");
+    }
+
+    /**
+     * Observes a transaction whose function threw, counting it under the error it failed with.
+     *
+     * @param transaction the transaction
+     * @param error what the transaction failed with
+     */
+    void failTransaction(final TransactionMetrics transaction, final String error) {
+        observe(transaction, "failure");
+        String labels = "function=\"" + escape(transaction.function) + "\",error=\"" + escape(error) + "\"";
+        failures.computeIfAbsent(labels, l -> new LongAdder()).increment();
+    }
+
+    private void observe(final TransactionMetrics transaction, final String outcome) {
+        String function = "function=\"" + escape(transaction.function) + "\"";
+        histogram(transactionSeconds, function + ",outcome=\"" + outcome + "\"", DURATION_BUCKETS)
+                .observe((System.nanoTime() - transaction.startNanos) / NANOS_PER_SECOND);
+        histogram(serializationSeconds, function, SERIALIZATION_BUCKETS)
+                .observe(transaction.serializationNanos.sum() / NANOS_PER_SECOND);
+        if (transaction.scans > 0) {
+            histogram(recordsScanned, function, RECORD_BUCKETS).observe(transaction.recordsScanned);
+        }
+    }
+
+    void countCall(final StubCall call) {
+        stubCalls[call.ordinal()].increment();
+    }
+
+    void countRead(final String value) {
+        bytesRead.add(value.getBytes(UTF_8).length);
+    }
+
+    void countWritten(final String value) {
+        bytesWritten.add(value.getBytes(UTF_8).length);
+    }
+
+    private static Histogram histogram(final ConcurrentMap<String, Histogram> histograms, final String labels,
+            final double[] buckets) {
+        return histograms.computeIfAbsent(labels, l -> new Histogram(buckets));
+    }
+
+    /**
+     * @return all metrics in the Prometheus text exposition format
+     */
+    String scrape() {
+        StringBuilder out = new StringBuilder(SCRAPE_SIZE);
+        writeHelp(out, "chaincode_transaction_duration_seconds",
+                "Time from beforeTransaction to the end of afterTransaction, or to the failure of the function.",
+                "histogram");
+        writeHistograms(out, "chaincode_transaction_duration_seconds", transactionSeconds);
+        writeHelp(out, "chaincode_transaction_failures_total", "Transactions whose function threw, per error.",
+                "counter");
+        for (Map.Entry<String, LongAdder> failure : failures.entrySet()) {
+            out.append("chaincode_transaction_failures_total{").append(failure.getKey()).append("} ")
+                    .append(failure.getValue().sum()).append('\n');
+        }
+        writeHelp(out, "chaincode_stub_calls_total", "World state calls made by the chaincode.", "counter");
+        for (StubCall call : StubCall.values()) {
+            out.append("chaincode_stub_calls_total{call=\"").append(call.label).append("\"} ")
+                    .append(stubCalls[call.ordinal()].sum()).append('\n');
+        }
+        writeHelp(out, "chaincode_stub_read_bytes_total", "Bytes of values read from the world state.", "counter");
+        out.append("chaincode_stub_read_bytes_total ").append(bytesRead.sum()).append('\n');
+        writeHelp(out, "chaincode_stub_written_bytes_total", "Bytes of values written to the world state.", "counter");
+        out.append("chaincode_stub_written_bytes_total ").append(bytesWritten.sum()).append('\n');
+        writeHelp(out, "chaincode_records_scanned", "Records returned by range queries in one transaction.",
+                "histogram");
+        writeHistograms(out, "chaincode_records_scanned", recordsScanned);
+        writeHelp(out, "chaincode_serialization_duration_seconds", "Time spent in Genson in one transaction.",
+                "histogram");
+        writeHistograms(out, "chaincode_serialization_duration_seconds", serializationSeconds);
+        return out.toString();
+    }
+
+    private static void writeHelp(final StringBuilder out, final String name, final String help, final String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void writeHistograms(final StringBuilder out, final String name,
+            final Map<String, Histogram> histograms) {
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            entry.getValue().writeTo(out, name, entry.getKey());
+        }
+    }
+
+    private static String escape(final String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * What one transaction has done so far. Genson time is added from the decoder threads of
+     * queryAllCars as well as from the transaction thread.
+     */
+    static final class TransactionMetrics {
+        private final String function;
+        private final long startNanos;
+        private final LongAdder serializationNanos = new LongAdder();
+        private long recordsScanned;
+        private int scans;
+
+        private TransactionMetrics(final String function, final long startNanos) {
+            this.function = function;
+            this.startNanos = startNanos;
+        }
+
+        void addSerializationNanos(final long nanos) {
+            serializationNanos.add(nanos);
+        }
+
+        void addScan(final int records) {
+            scans++;
+            recordsScanned += records;
+        }
+    }
+
+    private static final class Histogram {
+        private final double[] buckets;
+        private final String[] bucketLabels;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram(final double[] buckets) {
+            this.buckets = buckets;
+            this.bucketLabels = new String[buckets.length + 1];
+            this.counts = new LongAdder[buckets.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketLabels[i] = BigDecimal.valueOf(buckets[i]).stripTrailingZeros().toPlainString();
+            }
+            bucketLabels[buckets.length] = "+Inf";
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void observe(final double value) {
+            int bucket = 0;
+            while (bucket < buckets.length && value > buckets[bucket]) {
+                bucket++;
+            }
+            counts[bucket].increment();
+            sum.add(value);
+        }
+
+        void writeTo(final StringBuilder out, final String name, final String labels) {
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i].sum();
+                out.append(name).append("_bucket{").append(labels).append(",le=\"").append(bucketLabels[i])
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum{").append(labels).append("} ").append(sum.sum()).append('\n');
+            out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+        }
+    }
+}
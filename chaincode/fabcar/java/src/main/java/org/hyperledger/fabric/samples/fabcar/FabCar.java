@@ -4,8 +4,12 @@
 
 package org.hyperledger.fabric.samples.fabcar;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
 
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
@@ -15,6 +19,11 @@ import org.hyperledger.fabric.contract.annotation.Default;
 import org.hyperledger.fabric.contract.annotation.Info;
 import org.hyperledger.fabric.contract.annotation.License;
 import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.samples.fabcar.ChaincodeEvents.SerializationEvent;
+import org.hyperledger.fabric.samples.fabcar.ChaincodeEvents.StubCallEvent;
+import org.hyperledger.fabric.samples.fabcar.ChaincodeEvents.TransactionEvent;
+import org.hyperledger.fabric.samples.fabcar.ChaincodeMetrics.StubCall;
+import org.hyperledger.fabric.samples.fabcar.ChaincodeMetrics.TransactionMetrics;
 import org.hyperledger.fabric.shim.ChaincodeException;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
@@ -42,13 +51,97 @@ import com.owlike.genson.Genson;
 @Default
 public final class FabCar implements ContractInterface {
 
+    private static final Logger LOGGER = Logger.getLogger(FabCar.class.getName());
+
     private final Genson genson = new Genson();
 
+    private final ChaincodeMetrics metrics;
+
     private enum FabCarErrors {
         CAR_NOT_FOUND,
         CAR_ALREADY_EXISTS
     }
 
+    /**
+     * Flight recorder event of the transaction running on each thread. A transaction runs on one
+     * thread from beforeTransaction to afterTransaction, or to the exception of its function.
+     */
+    private final ThreadLocal<TransactionEvent> transactionEvent = new ThreadLocal<TransactionEvent>();
+
+    /**
+     * Metrics of the transaction running on each thread, when metrics are enabled.
+     */
+    private final ThreadLocal<TransactionMetrics> transactionMetrics = new ThreadLocal<TransactionMetrics>();
+
+    public FabCar() {
+        this(ChaincodeMetrics.fromEnvironment(System.getenv()));
+    }
+
+    /**
+     * @param metrics where transactions are measured, or null to not measure them
+     */
+    FabCar(final ChaincodeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void beforeTransaction(final Context ctx) {
+        transactionEvent.set(new TransactionEvent());
+        if (metrics != null) {
+            transactionMetrics.set(metrics.startTransaction(ctx.getStub().getFunction()));
+        }
+    }
+
+    @Override
+    public void afterTransaction(final Context ctx, final Object result) {
+        finishEvent(ctx, "success");
+        TransactionMetrics transaction = transactionMetrics.get();
+        if (transaction != null) {
+            transactionMetrics.remove();
+            metrics.finishTransaction(transaction);
+        }
+    }
+
+    private void finishEvent(final Context ctx, final String outcome) {
+        TransactionEvent event = transactionEvent.get();
+        if (event != null) {
+            transactionEvent.remove();
+            ChaincodeStub stub = ctx.getStub();
+            String function = stub.getFunction();
+            event.finish(function.substring(function.indexOf(':') + 1), stub.getTxId(), outcome);
+        }
+    }
+
+    /**
+     * Runs the body of a transaction function, recording and measuring the transaction as failed
+     * if it throws, since the shim only calls afterTransaction for transactions that succeed.
+     */
+    private <T> T transaction(final Context ctx, final Supplier<T> body) {
+        try {
+            return body.get();
+        } catch (RuntimeException e) {
+            String error = failureOf(e);
+            finishEvent(ctx, "failure: " + error);
+            TransactionMetrics transaction = transactionMetrics.get();
+            if (transaction != null) {
+                transactionMetrics.remove();
+                metrics.failTransaction(transaction, error);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * What a transaction failed with: the error code of a ChaincodeException, or the class of
+     * any other exception.
+     */
+    private static String failureOf(final RuntimeException e) {
+        if (e instanceof ChaincodeException && ((ChaincodeException) e).getPayload() != null) {
+            return new String(((ChaincodeException) e).getPayload(), UTF_8);
+        }
+        return e.getClass().getSimpleName();
+    }
+
     /**
      * Retrieves a car with the specified key from the ledger.
      *
@@ -58,18 +151,20 @@ public final class FabCar implements ContractInterface {
      */
     @Transaction()
     public Car queryCar(final Context ctx, final String key) {
-        ChaincodeStub stub = ctx.getStub();
-        String carState = stub.getStringState(key);
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+            String carState = getState(stub, key);
 
-        if (carState.isEmpty()) {
-            String errorMessage = String.format("Car %s does not exist", key);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage, FabCarErrors.CAR_NOT_FOUND.toString());
-        }
+            if (carState.isEmpty()) {
+                String errorMessage = String.format("Car %s does not exist", key);
+                LOGGER.fine(errorMessage);
+                throw new ChaincodeException(errorMessage, FabCarErrors.CAR_NOT_FOUND.toString());
+            }
 
-        Car car = genson.deserialize(carState, Car.class);
+            Car car = deserialize(carState);
 
-        return car;
+            return car;
+        });
     }
 
     /**
@@ -79,28 +174,31 @@ public final class FabCar implements ContractInterface {
      */
     @Transaction()
     public void initLedger(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
-
-        String[] carData = {
-                "{ \"make\": \"Toyota\", \"model\": \"Prius\", \"color\": \"blue\", \"owner\": \"Tomoko\" }",
-                "{ \"make\": \"Ford\", \"model\": \"Mustang\", \"color\": \"red\", \"owner\": \"Brad\" }",
-                "{ \"make\": \"Hyundai\", \"model\": \"Tucson\", \"color\": \"green\", \"owner\": \"Jin Soo\" }",
-                "{ \"make\": \"Volkswagen\", \"model\": \"Passat\", \"color\": \"yellow\", \"owner\": \"Max\" }",
-                "{ \"make\": \"Tesla\", \"model\": \"S\", \"color\": \"black\", \"owner\": \"Adrian\" }",
-                "{ \"make\": \"Peugeot\", \"model\": \"205\", \"color\": \"purple\", \"owner\": \"Michel\" }",
-                "{ \"make\": \"Chery\", \"model\": \"S22L\", \"color\": \"white\", \"owner\": \"Aarav\" }",
-                "{ \"make\": \"Fiat\", \"model\": \"Punto\", \"color\": \"violet\", \"owner\": \"Pari\" }",
-                "{ \"make\": \"Tata\", \"model\": \"nano\", \"color\": \"indigo\", \"owner\": \"Valeria\" }",
-                "{ \"make\": \"Holden\", \"model\": \"Barina\", \"color\": \"brown\", \"owner\": \"Shotaro\" }"
-        };
-
-        for (int i = 0; i < carData.length; i++) {
-            String key = String.format("CAR%d", i);
-
-            Car car = genson.deserialize(carData[i], Car.class);
-            String carState = genson.serialize(car);
-            stub.putStringState(key, carState);
-        }
+        transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+
+            String[] carData = {
+                    "{ \"make\": \"Toyota\", \"model\": \"Prius\", \"color\": \"blue\", \"owner\": \"Tomoko\" }",
+                    "{ \"make\": \"Ford\", \"model\": \"Mustang\", \"color\": \"red\", \"owner\": \"Brad\" }",
+                    "{ \"make\": \"Hyundai\", \"model\": \"Tucson\", \"color\": \"green\", \"owner\": \"Jin Soo\" }",
+                    "{ \"make\": \"Volkswagen\", \"model\": \"Passat\", \"color\": \"yellow\", \"owner\": \"Max\" }",
+                    "{ \"make\": \"Tesla\", \"model\": \"S\", \"color\": \"black\", \"owner\": \"Adrian\" }",
+                    "{ \"make\": \"Peugeot\", \"model\": \"205\", \"color\": \"purple\", \"owner\": \"Michel\" }",
+                    "{ \"make\": \"Chery\", \"model\": \"S22L\", \"color\": \"white\", \"owner\": \"Aarav\" }",
+                    "{ \"make\": \"Fiat\", \"model\": \"Punto\", \"color\": \"violet\", \"owner\": \"Pari\" }",
+                    "{ \"make\": \"Tata\", \"model\": \"nano\", \"color\": \"indigo\", \"owner\": \"Valeria\" }",
+                    "{ \"make\": \"Holden\", \"model\": \"Barina\", \"color\": \"brown\", \"owner\": \"Shotaro\" }"
+            };
+
+            for (int i = 0; i < carData.length; i++) {
+                String key = String.format("CAR%d", i);
+
+                Car car = deserialize(carData[i]);
+                String carState = serialize(car);
+                putState(stub, key, carState);
+            }
+            return null;
+        });
     }
 
     /**
@@ -117,20 +215,22 @@ public final class FabCar implements ContractInterface {
     @Transaction()
     public Car createCar(final Context ctx, final String key, final String make, final String model,
             final String color, final String owner) {
-        ChaincodeStub stub = ctx.getStub();
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
 
-        String carState = stub.getStringState(key);
-        if (!carState.isEmpty()) {
-            String errorMessage = String.format("Car %s already exists", key);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage, FabCarErrors.CAR_ALREADY_EXISTS.toString());
-        }
+            String carState = getState(stub, key);
+            if (!carState.isEmpty()) {
+                String errorMessage = String.format("Car %s already exists", key);
+                LOGGER.fine(errorMessage);
+                throw new ChaincodeException(errorMessage, FabCarErrors.CAR_ALREADY_EXISTS.toString());
+            }
 
-        Car car = new Car(make, model, color, owner);
-        carState = genson.serialize(car);
-        stub.putStringState(key, carState);
+            Car car = new Car(make, model, color, owner);
+            carState = serialize(car);
+            putState(stub, key, carState);
 
-        return car;
+            return car;
+        });
     }
 
     /**
@@ -141,22 +241,35 @@ public final class FabCar implements ContractInterface {
      */
     @Transaction()
     public String queryAllCars(final Context ctx) {
-        ChaincodeStub stub = ctx.getStub();
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
 
-        final String startKey = "CAR1";
-        final String endKey = "CAR99";
-        List<CarQueryResult> queryResults = new ArrayList<CarQueryResult>();
+            final String startKey = "CAR1";
+            final String endKey = "CAR99";
+            List<CarQueryResult> queryResults = new ArrayList<CarQueryResult>();
 
-        QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+            StubCallEvent event = new StubCallEvent();
+            QueryResultsIterator<KeyValue> results = stub.getStateByRange(startKey, endKey);
+            event.finish("range", startKey, null);
+            if (metrics != null) {
+                metrics.countCall(StubCall.RANGE);
+            }
 
-        for (KeyValue result: results) {
-            Car car = genson.deserialize(result.getStringValue(), Car.class);
-            queryResults.add(new CarQueryResult(result.getKey(), car));
-        }
+            // the decoder threads cannot see the transaction of this thread
+            TransactionMetrics transaction = transactionMetrics.get();
+            PrefetchingScan<CarQueryResult> cars = new PrefetchingScan<CarQueryResult>(results,
+                    result -> new CarQueryResult(result.getKey(), deserialize(transaction, result.getStringValue())));
+            while (cars.hasNext()) {
+                queryResults.add(cars.next());
+            }
+            if (transaction != null) {
+                transaction.addScan(queryResults.size());
+            }
 
-        final String response = genson.serialize(queryResults);
+            final String response = serialize(queryResults);
 
-        return response;
+            return response;
+        });
     }
 
     /**
@@ -169,22 +282,75 @@ public final class FabCar implements ContractInterface {
      */
     @Transaction()
     public Car changeCarOwner(final Context ctx, final String key, final String newOwner) {
-        ChaincodeStub stub = ctx.getStub();
+        return transaction(ctx, () -> {
+            ChaincodeStub stub = ctx.getStub();
+
+            String carState = getState(stub, key);
+
+            if (carState.isEmpty()) {
+                String errorMessage = String.format("Car %s does not exist", key);
+                LOGGER.fine(errorMessage);
+                throw new ChaincodeException(errorMessage, FabCarErrors.CAR_NOT_FOUND.toString());
+            }
 
-        String carState = stub.getStringState(key);
+            Car car = deserialize(carState);
 
-        if (carState.isEmpty()) {
-            String errorMessage = String.format("Car %s does not exist", key);
-            System.out.println(errorMessage);
-            throw new ChaincodeException(errorMessage, FabCarErrors.CAR_NOT_FOUND.toString());
+            Car newCar = new Car(car.getMake(), car.getModel(), car.getColor(), newOwner);
+            String newCarState = serialize(newCar);
+            putState(stub, key, newCarState);
+
+            return newCar;
+        });
+    }
+
+    private String getState(final ChaincodeStub stub, final String key) {
+        StubCallEvent event = new StubCallEvent();
+        String state = stub.getStringState(key);
+        event.finish("get_state", key, state);
+        if (metrics != null) {
+            metrics.countCall(StubCall.GET_STATE);
+            metrics.countRead(state);
         }
+        return state;
+    }
+
+    private void putState(final ChaincodeStub stub, final String key, final String state) {
+        StubCallEvent event = new StubCallEvent();
+        stub.putStringState(key, state);
+        event.finish("put_state", key, state);
+        if (metrics != null) {
+            metrics.countCall(StubCall.PUT_STATE);
+            metrics.countWritten(state);
+        }
+    }
 
-        Car car = genson.deserialize(carState, Car.class);
+    private Car deserialize(final String json) {
+        return deserialize(transactionMetrics.get(), json);
+    }
 
-        Car newCar = new Car(car.getMake(), car.getModel(), car.getColor(), newOwner);
-        String newCarState = genson.serialize(newCar);
-        stub.putStringState(key, newCarState);
+    /**
+     * @param transaction metrics of the transaction decoding the car, or null if not measured
+     */
+    private Car deserialize(final TransactionMetrics transaction, final String json) {
+        SerializationEvent event = new SerializationEvent();
+        long started = transaction == null ? 0L : System.nanoTime();
+        Car car = genson.deserialize(json, Car.class);
+        if (transaction != null) {
+            transaction.addSerializationNanos(System.nanoTime() - started);
+        }
+        event.finish("deserialize", json);
+        return car;
+    }
 
-        return newCar;
+    private String serialize(final Object value) {
+        SerializationEvent event = new SerializationEvent();
+        TransactionMetrics transaction = transactionMetrics.get();
+        long started = transaction == null ? 0L : System.nanoTime();
+        String json = genson.serialize(value);
+        if (transaction != null) {
+            transaction.addSerializationNanos(System.nanoTime() - started);
+        }
+        event.finish("serialize", json);
+        return json;
     }
 }
@@ -0,0 +1,26 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import org.hyperledger.fabric.contract.ContractRouter;
+
+/**
+ * Starts the FabCar contract as the shim's {@link ContractRouter} does, with the log handlers
+ * behind an {@link AsyncLogHandler} so that transactions do not write to the console themselves.
+ */
+public final class FabCarChaincode {
+
+    private FabCarChaincode() {
+    }
+
+    /**
+     * @param args the command line options of {@link ContractRouter}
+     * @throws Exception if the chaincode cannot start
+     */
+    public static void main(final String[] args) throws Exception {
+        AsyncLogHandler.install();
+        ContractRouter.main(args);
+    }
+}
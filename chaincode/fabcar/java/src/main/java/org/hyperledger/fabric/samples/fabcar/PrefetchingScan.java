@@ -0,0 +1,144 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+
+/**
+ * Range scan that decodes records on a small shared pool while the transaction
+ * thread reads ahead, so that fetching the next page from the peer overlaps with
+ * decoding the records already fetched. Only the calling thread reads from the
+ * stub. Records are decoded in batches, and returned in the order of the scan.
+ *
+ * @param <T> what a record is decoded into
+ */
+final class PrefetchingScan<T> implements Iterator<T> {
+
+    static final int BATCH_SIZE = 32;
+    static final int BATCHES_AHEAD = 8;
+
+    private static final int MAX_DECODERS = 4;
+
+    private static final ExecutorService DECODERS = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(MAX_DECODERS, Runtime.getRuntime().availableProcessors())),
+            new DecoderThreadFactory());
+
+    private final Iterator<KeyValue> results;
+    private final Function<KeyValue, T> decode;
+    private final Executor executor;
+    private final int batchSize;
+    private final int batchesAhead;
+    private final Queue<CompletableFuture<Batch<T>>> pending = new ArrayDeque<CompletableFuture<Batch<T>>>();
+    private Batch<T> batch = new Batch<T>(Collections.<T>emptyList());
+    private int index;
+
+    /**
+     * @param results the records of the scan
+     * @param decode decodes a record on the decoder pool; must not use the stub
+     */
+    PrefetchingScan(final Iterable<KeyValue> results, final Function<KeyValue, T> decode) {
+        this(results, decode, DECODERS, BATCH_SIZE, BATCHES_AHEAD);
+    }
+
+    PrefetchingScan(final Iterable<KeyValue> results, final Function<KeyValue, T> decode, final Executor executor,
+            final int batchSize, final int batchesAhead) {
+        this.results = results.iterator();
+        this.decode = decode;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.batchesAhead = batchesAhead;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < batch.decoded.size() || batch.failure != null || !pending.isEmpty() || results.hasNext();
+    }
+
+    /**
+     * Returns the next decoded record, rethrowing what its decoding threw.
+     *
+     * @return the next decoded record
+     */
+    @Override
+    public T next() {
+        if (index == batch.decoded.size()) {
+            if (batch.failure != null) {
+                throw batch.failure;
+            }
+            readAhead();
+            CompletableFuture<Batch<T>> next = pending.poll();
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            batch = next.join();
+            index = 0;
+            if (batch.decoded.isEmpty()) {
+                throw batch.failure;
+            }
+        }
+        return batch.decoded.get(index++);
+    }
+
+    private void readAhead() {
+        while (pending.size() < batchesAhead && results.hasNext()) {
+            final List<KeyValue> records = new ArrayList<KeyValue>(batchSize);
+            while (records.size() < batchSize && results.hasNext()) {
+                records.add(results.next());
+            }
+            pending.add(CompletableFuture.supplyAsync(() -> decodeAll(records), executor));
+        }
+    }
+
+    /**
+     * Decodes a batch up to the first record that fails, so that the records
+     * before it are still returned before the failure is rethrown.
+     */
+    private Batch<T> decodeAll(final List<KeyValue> records) {
+        Batch<T> decoded = new Batch<T>(new ArrayList<T>(records.size()));
+        try {
+            for (KeyValue record : records) {
+                decoded.decoded.add(decode.apply(record));
+            }
+        } catch (RuntimeException e) {
+            decoded.failure = e;
+        }
+        return decoded;
+    }
+
+    private static final class Batch<T> {
+        private final List<T> decoded;
+        private RuntimeException failure;
+
+        Batch(final List<T> decoded) {
+            this.decoded = decoded;
+        }
+    }
+
+    private static final class DecoderThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable task) {
+            Thread thread = new Thread(task, "chaincode-decoder-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
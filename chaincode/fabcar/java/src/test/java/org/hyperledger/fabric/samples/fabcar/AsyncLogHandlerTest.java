@@ -0,0 +1,181 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+import org.junit.jupiter.api.Test;
+
+public final class AsyncLogHandlerTest {
+
+    @Test
+    public void writesRecordsInOrderOnItsOwnThread() {
+        RecordingHandler recording = new RecordingHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(recording, 16);
+
+        handler.publish(new LogRecord(Level.INFO, "first"));
+        handler.publish(new LogRecord(Level.INFO, "second"));
+        handler.flush();
+        handler.close();
+        handler.publish(new LogRecord(Level.INFO, "closed"));
+
+        assertThat(recording.records).extracting(LogRecord::getMessage).containsExactly("first", "second");
+        assertThat(recording.threads).containsOnly("chaincode-log");
+        assertThat(recording.closed).isTrue();
+    }
+
+    @Test
+    public void skipsRecordsBelowTheLevelOfTheHandlerWrittenTo() {
+        RecordingHandler recording = new RecordingHandler();
+        recording.setLevel(Level.INFO);
+        AsyncLogHandler handler = new AsyncLogHandler(recording, 16);
+
+        handler.publish(new LogRecord(Level.FINE, "debug"));
+        handler.setLevel(Level.FINE);
+        handler.publish(new LogRecord(Level.FINE, "debug again"));
+        handler.close();
+
+        assertThat(recording.getLevel()).isEqualTo(Level.FINE);
+        assertThat(recording.records).extracting(LogRecord::getMessage).containsExactly("debug again");
+    }
+
+    @Test
+    public void dropsRecordsWhenTheQueueIsFullAndReportsHowMany() throws Exception {
+        RecordingHandler recording = new RecordingHandler();
+        recording.blocked = new CountDownLatch(1);
+        AsyncLogHandler handler = new AsyncLogHandler(recording, 2);
+
+        handler.publish(new LogRecord(Level.INFO, "0"));
+        recording.publishing.await();
+        for (int i = 1; i <= 4; i++) {
+            handler.publish(new LogRecord(Level.INFO, Integer.toString(i)));
+        }
+
+        assertThat(handler.getDropped()).isEqualTo(2);
+
+        recording.blocked.countDown();
+        handler.close();
+
+        assertThat(recording.records).extracting(LogRecord::getMessage)
+                .containsExactly("0", "1", "2", "{0} log records dropped, the log queue was full");
+        LogRecord report = recording.records.get(3);
+        assertThat(report.getLevel()).isEqualTo(Level.WARNING);
+        assertThat(report.getParameters()).containsExactly(2L);
+    }
+
+    @Test
+    public void findsTheCallerBeforeHandingTheRecordOff() {
+        RecordingHandler recording = new RecordingHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(recording, 16);
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+
+        logger.info("from the test");
+        handler.close();
+
+        assertThat(recording.records.get(0).getSourceMethodName()).isEqualTo("findsTheCallerBeforeHandingTheRecordOff");
+    }
+
+    @Test
+    public void passesTheFormatterOn() {
+        RecordingHandler recording = new RecordingHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(recording, 16);
+        SimpleFormatter formatter = new SimpleFormatter();
+
+        handler.setFormatter(formatter);
+        handler.close();
+
+        assertThat(recording.getFormatter()).isSameAs(formatter);
+        assertThat(handler.getFormatter()).isSameAs(formatter);
+    }
+
+    @Test
+    public void stopsWritingWhenItsThreadIsInterrupted() {
+        RecordingHandler recording = new RecordingHandler();
+        recording.interrupting = true;
+        AsyncLogHandler handler = new AsyncLogHandler(recording, 16);
+
+        handler.publish(new LogRecord(Level.INFO, "last"));
+        handler.flush();
+        handler.publish(new LogRecord(Level.INFO, "never written"));
+        handler.flush();
+        handler.close();
+
+        assertThat(recording.records).extracting(LogRecord::getMessage).containsExactly("last");
+    }
+
+    @Test
+    public void keepsTheInterruptOfTheThreadClosingIt() {
+        RecordingHandler recording = new RecordingHandler();
+        AsyncLogHandler handler = new AsyncLogHandler(recording, 16);
+
+        Thread.currentThread().interrupt();
+        handler.close();
+
+        assertThat(Thread.interrupted()).isTrue();
+        assertThat(recording.closed).isTrue();
+    }
+
+    @Test
+    public void mainInstallsTheHandlerOnceBeforeStartingTheContract() {
+        Logger root = Logger.getLogger("");
+
+        Throwable thrown = catchThrowable(() -> {
+            FabCarChaincode.main(new String[0]);
+        });
+        AsyncLogHandler.install();
+
+        // without a chaincode ID the router does not start
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+        assertThat(root.getHandlers()).isNotEmpty().allMatch(h -> h instanceof AsyncLogHandler);
+    }
+
+    private static final class RecordingHandler extends Handler {
+        private final List<LogRecord> records = new CopyOnWriteArrayList<LogRecord>();
+        private final List<String> threads = new CopyOnWriteArrayList<String>();
+        private final CountDownLatch publishing = new CountDownLatch(1);
+        private CountDownLatch blocked;
+        private boolean interrupting;
+        private boolean closed;
+
+        @Override
+        public void publish(final LogRecord record) {
+            publishing.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            records.add(record);
+            threads.add(Thread.currentThread().getName());
+            if (interrupting) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
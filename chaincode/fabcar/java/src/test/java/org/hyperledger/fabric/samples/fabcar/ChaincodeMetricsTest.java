@@ -0,0 +1,163 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+
+import org.hyperledger.fabric.contract.annotation.Transaction;
+import org.hyperledger.fabric.samples.fabcar.ChaincodeMetrics.StubCall;
+import org.hyperledger.fabric.samples.fabcar.ChaincodeMetrics.TransactionMetrics;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public final class ChaincodeMetricsTest {
+
+    private final ChaincodeMetrics metrics = new ChaincodeMetrics();
+
+    @Test
+    public void measuresNothingWithoutPort() {
+        assertThat(ChaincodeMetrics.fromEnvironment(Collections.<String, String>emptyMap())).isNull();
+        assertThat(ChaincodeMetrics.fromEnvironment(Collections.singletonMap(ChaincodeMetrics.PORT, ""))).isNull();
+        assertThat(ChaincodeMetrics.fromEnvironment(Collections.singletonMap(ChaincodeMetrics.PORT, " 0 ")))
+                .isNotNull();
+    }
+
+    @Test
+    public void writesHistogramsPerFunctionWithoutContractName() {
+        TransactionMetrics transaction = metrics.startTransaction("FabCar:queryAllCars");
+        transaction.addScan(42);
+        transaction.addSerializationNanos(3000);
+        metrics.finishTransaction(transaction);
+        metrics.finishTransaction(metrics.startTransaction("createCar"));
+
+        String scrape = metrics.scrape();
+
+        assertThat(scrape).contains("# TYPE chaincode_transaction_duration_seconds histogram\n",
+                "chaincode_transaction_duration_seconds_bucket{function=\"queryAllCars\",outcome=\"success\","
+                        + "le=\"+Inf\"} 1\n",
+                "chaincode_transaction_duration_seconds_count{function=\"createCar\",outcome=\"success\"} 1\n",
+                "chaincode_records_scanned_bucket{function=\"queryAllCars\",le=\"10\"} 0\n",
+                "chaincode_records_scanned_bucket{function=\"queryAllCars\",le=\"100\"} 1\n",
+                "chaincode_records_scanned_sum{function=\"queryAllCars\"} 42.0\n",
+                "chaincode_serialization_duration_seconds_bucket{function=\"queryAllCars\",le=\"0.00001\"} 1\n",
+                "chaincode_serialization_duration_seconds_bucket{function=\"createCar\",le=\"0.00001\"} 1\n");
+        assertThat(scrape).doesNotContain("chaincode_records_scanned_count{function=\"createCar\"}");
+    }
+
+    @Test
+    public void timesAndCountsFailedTransactionsPerError() {
+        metrics.failTransaction(metrics.startTransaction("queryCar"), "CAR_NOT_FOUND");
+        metrics.failTransaction(metrics.startTransaction("queryCar"), "CAR_NOT_FOUND");
+        metrics.failTransaction(metrics.startTransaction("queryCar"), "NullPointerException");
+        metrics.finishTransaction(metrics.startTransaction("queryCar"));
+
+        String scrape = metrics.scrape();
+
+        assertThat(scrape).contains("# TYPE chaincode_transaction_failures_total counter\n",
+                "chaincode_transaction_failures_total{function=\"queryCar\",error=\"CAR_NOT_FOUND\"} 2\n",
+                "chaincode_transaction_failures_total{function=\"queryCar\",error=\"NullPointerException\"} 1\n",
+                "chaincode_transaction_duration_seconds_count{function=\"queryCar\",outcome=\"failure\"} 3\n",
+                "chaincode_transaction_duration_seconds_count{function=\"queryCar\",outcome=\"success\"} 1\n");
+    }
+
+    @Test
+    public void countsStubCallsAndBytes() {
+        metrics.countCall(StubCall.GET_STATE);
+        metrics.countCall(StubCall.GET_STATE);
+        metrics.countCall(StubCall.PUT_STATE);
+        metrics.countRead("Siobhán");
+        metrics.countWritten("car");
+
+        assertThat(metrics.scrape()).contains("chaincode_stub_calls_total{call=\"get_state\"} 2\n",
+                "chaincode_stub_calls_total{call=\"put_state\"} 1\n", "chaincode_stub_calls_total{call=\"range\"} 0\n",
+                "chaincode_stub_read_bytes_total 8\n", "chaincode_stub_written_bytes_total 3\n");
+    }
+
+    @Test
+    public void escapesLabels() {
+        metrics.failTransaction(metrics.startTransaction("queryCar"), "car\"s\\\ntwo lines");
+
+        assertThat(metrics.scrape()).contains(
+                "chaincode_transaction_failures_total{function=\"queryCar\",error=\"car\\\"s\\\\\\ntwo lines\"} 1\n");
+    }
+
+    @Test
+    public void labelsFunctionsTheContractDoesNotDeclareAsUnknown() {
+        metrics.finishTransaction(metrics.startTransaction("car\"s\\"));
+        metrics.finishTransaction(metrics.startTransaction("FabCar:noSuchTransaction"));
+        metrics.finishTransaction(metrics.startTransaction("FabCar:queryCar"));
+
+        String scrape = metrics.scrape();
+
+        assertThat(scrape).contains(
+                "chaincode_transaction_duration_seconds_count{function=\"unknown\",outcome=\"success\"} 2\n",
+                "chaincode_transaction_duration_seconds_count{function=\"queryCar\",outcome=\"success\"} 1\n");
+        assertThat(scrape).doesNotContain("car\\\"s", "noSuchTransaction");
+    }
+
+    @Test
+    public void namesTransactionsAsTheyAreInvoked() {
+        assertThat(ChaincodeMetrics.transactionNames(FabCar.class)).containsOnly("initLedger", "queryCar", "createCar",
+                "queryAllCars", "changeCarOwner");
+        assertThat(ChaincodeMetrics.transactionNames(RenamedContract.class)).containsOnly("renamed", "unnamed");
+    }
+
+    public static final class RenamedContract {
+        @Transaction(name = "renamed")
+        public void named() {
+        }
+
+        @Transaction()
+        public void unnamed() {
+        }
+
+        public void notATransaction() {
+        }
+    }
+
+    @Test
+    public void servesMetricsOverHttp() throws Exception {
+        metrics.countCall(StubCall.RANGE);
+        HttpServer server = metrics.serve(0);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:"
+                    + server.getAddress().getPort() + "/metrics").openConnection();
+
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            assertThat(connection.getContentType()).isEqualTo("text/plain; version=0.0.4; charset=utf-8");
+            assertThat(read(connection.getInputStream())).contains("chaincode_stub_calls_total{call=\"range\"} 1\n");
+
+            Throwable thrown = catchThrowable(() -> {
+                metrics.serve(server.getAddress().getPort());
+            });
+
+            assertThat(thrown).isInstanceOf(UncheckedIOException.class)
+                    .hasMessage("Cannot serve metrics on port " + server.getAddress().getPort());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String read(final InputStream in) throws Exception {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n = input.read(buffer); n > 0; n = input.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        }
+    }
+}
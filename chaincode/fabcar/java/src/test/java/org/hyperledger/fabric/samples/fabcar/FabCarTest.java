@@ -11,6 +11,8 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -24,6 +26,10 @@ import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 public final class FabCarTest {
 
     private final class MockKeyValue implements KeyValue {
@@ -261,4 +267,148 @@ public final class FabCarTest {
             assertThat(((ChaincodeException) thrown).getPayload()).isEqualTo("CAR_NOT_FOUND".getBytes());
         }
     }
+
+    @Nested
+    class MeasureTransactions {
+
+        private final ChaincodeMetrics metrics = new ChaincodeMetrics();
+        private final FabCar contract = new FabCar(metrics);
+        private final ChaincodeStub stub = mock(ChaincodeStub.class);
+        private final Context ctx = mock(Context.class);
+
+        MeasureTransactions() {
+            when(ctx.getStub()).thenReturn(stub);
+        }
+
+        @Test
+        public void whenTransactionSucceeds() {
+            when(stub.getFunction()).thenReturn("FabCar:changeCarOwner");
+            when(stub.getStringState("CAR0"))
+                    .thenReturn("{\"color\":\"blue\",\"make\":\"Toyota\",\"model\":\"Prius\",\"owner\":\"Tomoko\"}");
+            when(stub.getStateByRange("CAR1", "CAR99")).thenReturn(new MockCarResultsIterator());
+
+            contract.beforeTransaction(ctx);
+            Car car = contract.changeCarOwner(ctx, "CAR0", "Dr Evil");
+            contract.queryAllCars(ctx);
+            contract.afterTransaction(ctx, car);
+            // measured once, however often the shim calls back
+            contract.afterTransaction(ctx, car);
+
+            assertThat(metrics.scrape()).contains(
+                    "chaincode_transaction_duration_seconds_count{function=\"changeCarOwner\",outcome=\"success\"} 1\n",
+                    "chaincode_stub_calls_total{call=\"get_state\"} 1\n",
+                    "chaincode_stub_calls_total{call=\"put_state\"} 1\n",
+                    "chaincode_stub_calls_total{call=\"range\"} 1\n",
+                    "chaincode_stub_read_bytes_total 65\n", "chaincode_stub_written_bytes_total 66\n",
+                    "chaincode_records_scanned_sum{function=\"changeCarOwner\"} 5.0\n",
+                    "chaincode_serialization_duration_seconds_count{function=\"changeCarOwner\"} 1\n");
+        }
+
+        @Test
+        public void whenTransactionFails() {
+            when(stub.getFunction()).thenReturn("queryCar");
+            when(stub.getStringState("CAR0")).thenReturn("");
+            when(stub.getStringState("CAR1")).thenThrow(new IllegalStateException("peer gone"));
+            when(stub.getStringState("CAR2")).thenThrow(new ChaincodeException("peer gone"));
+
+            for (String key : new String[] {"CAR0", "CAR0", "CAR1", "CAR2"}) {
+                contract.beforeTransaction(ctx);
+                catchThrowable(() -> {
+                    contract.queryCar(ctx, key);
+                });
+            }
+
+            String scrape = metrics.scrape();
+            assertThat(scrape).contains(
+                    "chaincode_transaction_duration_seconds_count{function=\"queryCar\",outcome=\"failure\"} 4\n",
+                    "chaincode_transaction_failures_total{function=\"queryCar\",error=\"CAR_NOT_FOUND\"} 2\n",
+                    "chaincode_transaction_failures_total{function=\"queryCar\",error=\"IllegalStateException\"} 1\n",
+                    "chaincode_transaction_failures_total{function=\"queryCar\",error=\"ChaincodeException\"} 1\n");
+            assertThat(scrape).doesNotContain("outcome=\"success\"");
+        }
+    }
+
+    @Nested
+    class RecordFlightEvents {
+
+        @Test
+        public void whenRecording() throws Exception {
+            FabCar contract = new FabCar();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(stub.getFunction()).thenReturn("FabCar:changeCarOwner");
+            when(stub.getTxId()).thenReturn("tx1");
+            when(stub.getStringState("CAR0"))
+                    .thenReturn("{\"color\":\"blue\",\"make\":\"Toyota\",\"model\":\"Prius\",\"owner\":\"Tomoko\"}");
+            when(stub.getStateByRange("CAR1", "CAR99")).thenReturn(new MockCarResultsIterator());
+            Context ctx = mock(Context.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Path file = Files.createTempFile("fabcar", ".jfr");
+            try (Recording recording = new Recording()) {
+                recording.enable(ChaincodeEvents.TransactionEvent.class);
+                recording.enable(ChaincodeEvents.StubCallEvent.class);
+                recording.enable(ChaincodeEvents.SerializationEvent.class);
+                recording.start();
+                contract.beforeTransaction(ctx);
+                Car car = contract.changeCarOwner(ctx, "CAR0", "Dr Evil");
+                contract.queryAllCars(ctx);
+                contract.afterTransaction(ctx, car);
+                // no transaction event without beforeTransaction
+                contract.afterTransaction(ctx, car);
+                recording.stop();
+                recording.dump(file);
+            }
+
+            List<String> events = new ArrayList<String>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String name = event.getEventType().getName();
+                if (name.endsWith("Transaction")) {
+                    events.add(event.getString("function") + " " + event.getString("txId") + " "
+                            + event.getString("outcome"));
+                } else if (name.endsWith("StubCall")) {
+                    events.add(event.getString("call") + " " + event.getString("key") + " " + event.getLong("bytes"));
+                } else {
+                    events.add(event.getString("operation") + " " + event.getLong("bytes"));
+                }
+            }
+            Files.delete(file);
+
+            assertThat(events).contains("changeCarOwner tx1 success", "get_state CAR0 65", "deserialize 65",
+                    "serialize 66", "put_state CAR0 66", "range CAR1 0");
+        }
+
+        @Test
+        public void whenTransactionFails() throws Exception {
+            FabCar contract = new FabCar();
+            ChaincodeStub stub = mock(ChaincodeStub.class);
+            when(stub.getFunction()).thenReturn("FabCar:queryCar");
+            when(stub.getTxId()).thenReturn("tx2");
+            when(stub.getStringState("CAR0")).thenReturn("");
+            Context ctx = mock(Context.class);
+            when(ctx.getStub()).thenReturn(stub);
+
+            Path file = Files.createTempFile("fabcar", ".jfr");
+            try (Recording recording = new Recording()) {
+                recording.enable(ChaincodeEvents.TransactionEvent.class);
+                recording.start();
+                contract.beforeTransaction(ctx);
+                catchThrowable(() -> {
+                    contract.queryCar(ctx, "CAR0");
+                });
+                recording.stop();
+                recording.dump(file);
+            }
+
+            List<String> events = new ArrayList<String>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().endsWith("Transaction")) {
+                    events.add(event.getString("function") + " " + event.getString("txId") + " "
+                            + event.getString("outcome"));
+                }
+            }
+            Files.delete(file);
+
+            assertThat(events).containsExactly("queryCar tx2 failure: CAR_NOT_FOUND");
+        }
+    }
 }
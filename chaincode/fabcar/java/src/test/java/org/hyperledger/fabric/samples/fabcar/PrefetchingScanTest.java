@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package org.hyperledger.fabric.samples.fabcar;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public final class PrefetchingScanTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    public void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void returnsDecodedRecordsInScanOrder() {
+        List<String> decoded = new ArrayList<String>();
+        PrefetchingScan<String> scan = new PrefetchingScan<String>(records(50),
+                result -> result.getKey().toUpperCase(), executor, 7, 3);
+
+        while (scan.hasNext()) {
+            decoded.add(scan.next());
+        }
+
+        assertThat(decoded).hasSize(50);
+        for (int i = 0; i < decoded.size(); i++) {
+            assertThat(decoded.get(i)).isEqualTo("CAR" + i);
+        }
+        assertThat(catchThrowable(scan::next)).isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    public void decodesOffTheCallingThread() {
+        Thread caller = Thread.currentThread();
+        List<Thread> decoders = new ArrayList<Thread>();
+        PrefetchingScan<String> scan = new PrefetchingScan<String>(records(10), result -> {
+            synchronized (decoders) {
+                decoders.add(Thread.currentThread());
+            }
+            return result.getKey();
+        }, executor, 2, 2);
+
+        while (scan.hasNext()) {
+            scan.next();
+        }
+
+        assertThat(decoders).hasSize(10).doesNotContain(caller);
+    }
+
+    @Test
+    public void rethrowsWhatDecodingThrewAfterTheRecordsBeforeIt() {
+        PrefetchingScan<String> scan = new PrefetchingScan<String>(records(10), result -> {
+            if (result.getKey().equals("CAR5")) {
+                throw new IllegalArgumentException("Cannot decode " + result.getKey());
+            }
+            return result.getKey();
+        }, executor, 4, 2);
+
+        for (int i = 0; i < 5; i++) {
+            scan.next();
+        }
+
+        assertThat(scan.hasNext()).isTrue();
+        assertThat(catchThrowable(scan::next)).isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Cannot decode CAR5");
+    }
+
+    @Test
+    public void rethrowsWhenTheFirstRecordOfABatchFails() {
+        PrefetchingScan<String> scan = new PrefetchingScan<String>(records(8), result -> {
+            if (result.getKey().equals("CAR4")) {
+                throw new IllegalArgumentException("Cannot decode " + result.getKey());
+            }
+            return result.getKey();
+        }, executor, 4, 2);
+
+        for (int i = 0; i < 4; i++) {
+            scan.next();
+        }
+
+        assertThat(catchThrowable(scan::next)).hasMessage("Cannot decode CAR4");
+        assertThat(catchThrowable(scan::next)).hasMessage("Cannot decode CAR4");
+    }
+
+    private static Iterable<KeyValue> records(final int count) {
+        List<KeyValue> records = new ArrayList<KeyValue>();
+        for (int i = 0; i < count; i++) {
+            KeyValue record = mock(KeyValue.class);
+            when(record.getKey()).thenReturn("CAR" + i);
+            records.add(record);
+        }
+        return records;
+    }
+}
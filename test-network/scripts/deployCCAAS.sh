@@ -22,6 +22,8 @@ MAX_RETRY=${11:-"5"}
 VERBOSE=${12:-"false"}
 
 CCAAS_SERVER_PORT=9999
+# port the chaincode serves Prometheus metrics on, where it supports them
+CCAAS_METRICS_PORT=9000
 
 : ${CONTAINER_CLI:="docker"}
 : ${CONTAINER_CLI_COMPOSE:="${CONTAINER_CLI}-compose"}
@@ -134,12 +136,14 @@ startDockerContainer() {
                   --network fabric_test \
                   -e CHAINCODE_SERVER_ADDRESS=0.0.0.0:${CCAAS_SERVER_PORT} \
                   -e CHAINCODE_ID=$PACKAGE_ID -e CORE_CHAINCODE_ID_NAME=$PACKAGE_ID \
+                  -e CHAINCODE_METRICS_PORT=${CCAAS_METRICS_PORT} \
                     ${CC_NAME}_ccaas_image:latest
 
     ${CONTAINER_CLI} run  --rm -d --name peer0org2_${CC_NAME}_ccaas \
                   --network fabric_test \
                   -e CHAINCODE_SERVER_ADDRESS=0.0.0.0:${CCAAS_SERVER_PORT} \
                   -e CHAINCODE_ID=$PACKAGE_ID -e CORE_CHAINCODE_ID_NAME=$PACKAGE_ID \
+                  -e CHAINCODE_METRICS_PORT=${CCAAS_METRICS_PORT} \
                     ${CC_NAME}_ccaas_image:latest
     res=$?
     { set +x; } 2>/dev/null
@@ -153,6 +157,7 @@ startDockerContainer() {
                   --network fabric_test \
                   -e CHAINCODE_SERVER_ADDRESS=0.0.0.0:${CCAAS_SERVER_PORT} \
                   -e CHAINCODE_ID=$PACKAGE_ID -e CORE_CHAINCODE_ID_NAME=$PACKAGE_ID \
+                  -e CHAINCODE_METRICS_PORT=${CCAAS_METRICS_PORT} \
                     ${CC_NAME}_ccaas_image:latest"
 
   fi